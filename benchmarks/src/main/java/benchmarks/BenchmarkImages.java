@@ -0,0 +1,53 @@
+package benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * BenchmarkImages creates the images the benchmarks run on. The pixels are noisy gradients,
+ * so the encoders don't get an unrealistically easy image.
+ */
+class BenchmarkImages {
+
+	/**
+	 * Creates a 4:3 image with about the given number of pixels.
+	 *
+	 * @param megapixels The size of the image in millions of pixels.
+	 * @param type The name of a BufferedImage type without the TYPE_ prefix, for example INT_RGB.
+	 * @return The image.
+	 */
+	static BufferedImage create(double megapixels, String type) {
+		int width = (int) Math.sqrt(megapixels * 1e6 * 4 / 3);
+		int height = (int) (megapixels * 1e6 / width);
+		BufferedImage image = new BufferedImage(width, height, typeOf(type));
+		Random random = new Random(42);
+		int[] row = new int[width];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int red = (x * 255 / width + random.nextInt(8)) & 0xFF;
+				int green = (y * 255 / height + random.nextInt(8)) & 0xFF;
+				int blue = ((x + y) * 127 / (width + height) + random.nextInt(8)) & 0xFF;
+				row[x] = 0xC0000000 | (red << 16) | (green << 8) | blue;
+			}
+			image.setRGB(0, y, width, 1, row, 0, width);
+		}
+		return image;
+	}
+
+	private static int typeOf(String type) {
+		switch (type) {
+		case "INT_RGB":
+			return BufferedImage.TYPE_INT_RGB;
+		case "INT_ARGB":
+			return BufferedImage.TYPE_INT_ARGB;
+		case "3BYTE_BGR":
+			return BufferedImage.TYPE_3BYTE_BGR;
+		case "4BYTE_ABGR":
+			return BufferedImage.TYPE_4BYTE_ABGR;
+		case "BYTE_GRAY":
+			return BufferedImage.TYPE_BYTE_GRAY;
+		default:
+			throw new IllegalArgumentException("Unknown image type: " + type);
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package benchmarks;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the JMH command line options and always adds the GC profiler,
+ * so every result comes with the allocation rate (gc.alloc.rate.norm, in bytes per operation)
+ * next to the throughput.
+ */
+public class BenchmarkMain {
+
+	public static void main(String[] args) throws Exception {
+		List<String> informational = Arrays.asList("-h", "-l", "-lp", "-lprof", "-lrf");
+		if (Arrays.stream(args).anyMatch(informational::contains)) {
+			org.openjdk.jmh.Main.main(args);
+			return;
+		}
+		CommandLineOptions options = new CommandLineOptions(args);
+		new Runner(new OptionsBuilder().parent(options).addProfiler(GCProfiler.class).build()).run();
+	}
+}
@@ -0,0 +1,100 @@
+package benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Utility.ImageProcessorUtility;
+import Utility.Orientation;
+
+/**
+ * Measures every operation of ImageProcessorUtility over images of different sizes and types.
+ * The images are created once per trial and never modified, every operation returns a new image.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx6g", "-Djava.awt.headless=true" })
+public class ImageProcessorBenchmark {
+
+	@Param({ "1", "12", "50" })
+	public double megapixels;
+
+	@Param({ "INT_RGB", "INT_ARGB", "3BYTE_BGR", "BYTE_GRAY" })
+	public String type;
+
+	private BufferedImage image;
+
+	@Setup
+	public void setUp() {
+		image = BenchmarkImages.create(megapixels, type);
+	}
+
+	@Benchmark
+	public BufferedImage toGrayscale() {
+		return ImageProcessorUtility.toGrayscale(image);
+	}
+
+	@Benchmark
+	public BufferedImage toSepia() {
+		return ImageProcessorUtility.toSepia(image);
+	}
+
+	@Benchmark
+	public BufferedImage toNegative() {
+		return ImageProcessorUtility.toNegative(image);
+	}
+
+	@Benchmark
+	public BufferedImage rotateImageLeft() {
+		return ImageProcessorUtility.rotateImageLeft(image);
+	}
+
+	@Benchmark
+	public BufferedImage rotateImageRight() {
+		return ImageProcessorUtility.rotateImageRight(image);
+	}
+
+	@Benchmark
+	public BufferedImage flipImage() {
+		return ImageProcessorUtility.flipImage(image);
+	}
+
+	@Benchmark
+	public BufferedImage orientTransverse() {
+		return ImageProcessorUtility.orient(image, Orientation.TRANSVERSE);
+	}
+
+	@Benchmark
+	public BufferedImage adjustBrightness() {
+		return ImageProcessorUtility.adjustBrightness(image, 20);
+	}
+
+	@Benchmark
+	public BufferedImage adjustContrast() {
+		return ImageProcessorUtility.adjustContrast(image, 20);
+	}
+
+	@Benchmark
+	public BufferedImage zoomIn() {
+		return ImageProcessorUtility.zoomImage(image, 1.2);
+	}
+
+	@Benchmark
+	public BufferedImage zoomOut() {
+		return ImageProcessorUtility.zoomImage(image, 0.5);
+	}
+}
@@ -0,0 +1,139 @@
+package benchmarks;
+
+import java.awt.geom.AffineTransform;
+import java.awt.image.AffineTransformOp;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Utility.ImageProcessorUtility;
+import Utility.Orientation;
+
+/**
+ * Compares the block kernels of ImageProcessorUtility.orient with the implementations they replaced:
+ * rotations through getRGB/setRGB, the flip through an AffineTransformOp (previous), and the single pass
+ * that copied rows and columns through the raster (rows).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx6g", "-Djava.awt.headless=true" })
+public class OrientationBenchmark {
+
+	@Param({ "12" })
+	public double megapixels;
+
+	@Param({ "INT_RGB", "INT_ARGB", "3BYTE_BGR", "4BYTE_ABGR", "BYTE_GRAY" })
+	public String type;
+
+	@Param({ "ROTATE_RIGHT", "ROTATE_LEFT", "FLIP_HORIZONTAL", "TRANSVERSE" })
+	public Orientation orientation;
+
+	private BufferedImage image;
+
+	@Setup
+	public void setUp() {
+		image = BenchmarkImages.create(megapixels, type);
+	}
+
+	@Benchmark
+	public BufferedImage previous() {
+		switch (orientation) {
+		case ROTATE_RIGHT:
+			return setRgbRotateRight(image);
+		case ROTATE_LEFT:
+			return setRgbRotateLeft(image);
+		case FLIP_HORIZONTAL:
+			return affineFlip(image);
+		case TRANSVERSE:
+			return affineFlip(setRgbRotateRight(image));
+		default:
+			throw new IllegalArgumentException("No previous implementation for " + orientation);
+		}
+	}
+
+	@Benchmark
+	public BufferedImage rows() {
+		return orientRows(image, orientation);
+	}
+
+	@Benchmark
+	public BufferedImage blocks() {
+		return ImageProcessorUtility.orient(image, orientation);
+	}
+
+	private static BufferedImage setRgbRotateRight(BufferedImage image) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		BufferedImage rotated = new BufferedImage(height, width, image.getType());
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				rotated.setRGB(height - 1 - y, x, image.getRGB(x, y));
+			}
+		}
+		return rotated;
+	}
+
+	private static BufferedImage setRgbRotateLeft(BufferedImage image) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		BufferedImage rotated = new BufferedImage(height, width, image.getType());
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				rotated.setRGB(y, width - 1 - x, image.getRGB(x, y));
+			}
+		}
+		return rotated;
+	}
+
+	private static BufferedImage affineFlip(BufferedImage image) {
+		AffineTransform tx = AffineTransform.getScaleInstance(-1, 1);
+		tx.translate(-image.getWidth(null), 0);
+		AffineTransformOp op = new AffineTransformOp(tx, AffineTransformOp.TYPE_NEAREST_NEIGHBOR);
+		return op.filter(image, null);
+	}
+
+	private static BufferedImage orientRows(BufferedImage image, Orientation orientation) {
+		int width = orientation.transposes() ? image.getHeight() : image.getWidth();
+		int height = orientation.transposes() ? image.getWidth() : image.getHeight();
+		BufferedImage oriented = new BufferedImage(width, height, image.getType());
+		Raster src = image.getRaster();
+		WritableRaster dst = oriented.getRaster();
+		int bands = src.getNumBands();
+		int[] line = new int[width * bands];
+		for (int row = 0; row < height; row++) {
+			int source = orientation.mirrorsY() ? height - 1 - row : row;
+			if (orientation.transposes()) {
+				src.getPixels(source, 0, 1, width, line);
+			} else {
+				src.getPixels(0, source, width, 1, line);
+			}
+			if (orientation.mirrorsX()) {
+				for (int left = 0, right = width - 1; left < right; left++, right--) {
+					for (int band = 0; band < bands; band++) {
+						int sample = line[left * bands + band];
+						line[left * bands + band] = line[right * bands + band];
+						line[right * bands + band] = sample;
+					}
+				}
+			}
+			dst.setPixels(0, row, width, 1, line);
+		}
+		return oriented;
+	}
+}
@@ -0,0 +1,84 @@
+package benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Utility.ImageLoaderUtility;
+import Utility.ImageSaveUtility;
+import Utility.SaveOptions;
+import project.Project;
+
+/**
+ * Measures the save and load path: ImageSaveUtility encoding an image, without the cost of
+ * the disk, and a Project decoding its file, in full and as the subsampled preview.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx6g", "-Djava.awt.headless=true" })
+public class SaveLoadBenchmark {
+
+	@Param({ "1", "12", "50" })
+	public double megapixels;
+
+	@Param({ "png", "jpg" })
+	public String format;
+
+	private BufferedImage image;
+	private File file;
+
+	@Setup
+	public void setUp() throws IOException {
+		image = BenchmarkImages.create(megapixels, "INT_RGB");
+		file = File.createTempFile("photodite-benchmark", "." + format);
+		ImageIO.write(image, format, file);
+	}
+
+	@TearDown
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Benchmark
+	public void encode() throws IOException {
+		try (ImageOutputStream output = new MemoryCacheImageOutputStream(OutputStream.nullOutputStream())) {
+			ImageSaveUtility.encode(image, format, SaveOptions.DEFAULT, output, null);
+		}
+	}
+
+	@Benchmark
+	public BufferedImage decodeProject() {
+		Project project = new Project("benchmark", file.getPath(), format);
+		// the pyramid is generated in the background, it isn't part of the decoding
+		project.getPyramid().invalidate();
+		return project.getImage();
+	}
+
+	@Benchmark
+	public BufferedImage decodePreview() throws IOException {
+		int subsampling = ImageLoaderUtility.subsamplingFor(ImageLoaderUtility.readSize(file), Project.PREVIEW_SIZE);
+		return ImageLoaderUtility.readSubsampled(file, subsampling);
+	}
+}
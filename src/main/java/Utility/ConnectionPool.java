@@ -0,0 +1,328 @@
+package Utility;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ConnectionPool keeps a bounded number of JDBC connections open and lends them out,
+ * so that a database operation doesn't pay for a new connection (TCP and authentication)
+ * every time.
+ * The connections it returns are wrappers: closing one gives it back to the pool, and
+ * preparing a statement reuses the statement prepared earlier on the same connection for
+ * the same SQL, unless that statement is still open, in which case a new one is prepared
+ * for the duration of its use. A connection that stayed idle longer than the validation interval is
+ * checked before it is lent again, and replaced if the server dropped it.
+ */
+public class ConnectionPool {
+
+	public static final long DEFAULT_VALIDATION_INTERVAL = 30_000;
+	public static final int STATEMENT_CACHE_SIZE = 32;
+
+	private static final long BORROW_TIMEOUT = 30_000;
+	private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+	private final String url;
+	private final String user;
+	private final String password;
+	private final int maxSize;
+	private final long validationInterval;
+	private final Semaphore permits;
+	private final Deque<PooledConnection> idle = new ArrayDeque<>();
+	private final AtomicInteger created = new AtomicInteger();
+	private volatile boolean closed = false;
+
+	/**
+	 * Creates an empty pool. Connections are opened the first time they are needed.
+	 *
+	 * @param url The JDBC URL of the database.
+	 * @param user The user name.
+	 * @param password The password.
+	 * @param maxSize The maximum number of connections lent out at the same time.
+	 */
+	public ConnectionPool(String url, String user, String password, int maxSize) {
+		this(url, user, password, maxSize, DEFAULT_VALIDATION_INTERVAL);
+	}
+
+	/**
+	 * Creates an empty pool. Connections are opened the first time they are needed.
+	 *
+	 * @param url The JDBC URL of the database.
+	 * @param user The user name.
+	 * @param password The password.
+	 * @param maxSize The maximum number of connections lent out at the same time.
+	 * @param validationInterval The idle time in milliseconds after which a connection is validated.
+	 */
+	public ConnectionPool(String url, String user, String password, int maxSize, long validationInterval) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("Pool size must be at least 1: " + maxSize);
+		}
+		this.url = url;
+		this.user = user;
+		this.password = password;
+		this.maxSize = maxSize;
+		this.validationInterval = validationInterval;
+		this.permits = new Semaphore(maxSize, true);
+	}
+
+	/**
+	 * Borrows a connection, waiting if all of them are in use. The connection must be
+	 * closed to give it back.
+	 *
+	 * @return A pooled connection.
+	 * @throws SQLException If no connection could be opened, or none was given back in time.
+	 */
+	public Connection getConnection() throws SQLException {
+		if (closed) {
+			throw new SQLException("The connection pool is closed");
+		}
+		try {
+			if (!permits.tryAcquire(BORROW_TIMEOUT, TimeUnit.MILLISECONDS)) {
+				throw new SQLException("Timed out waiting for a connection from the pool");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a connection", e);
+		}
+		try {
+			return borrow().lease();
+		} catch (SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Closes every idle connection. Connections that are lent out are closed when given back.
+	 */
+	public void close() {
+		closed = true;
+		synchronized (idle) {
+			for (PooledConnection pooled : idle) {
+				pooled.closePhysical();
+			}
+			idle.clear();
+		}
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Returns the number of physical connections opened since the pool was created.
+	 *
+	 * @return The number of connections opened.
+	 */
+	public int getCreatedCount() {
+		return created.get();
+	}
+
+	/**
+	 * Returns the number of open connections waiting to be borrowed.
+	 *
+	 * @return The number of idle connections.
+	 */
+	public int getIdleCount() {
+		synchronized (idle) {
+			return idle.size();
+		}
+	}
+
+	private PooledConnection borrow() throws SQLException {
+		while (true) {
+			PooledConnection pooled;
+			synchronized (idle) {
+				pooled = idle.pollFirst();
+			}
+			if (pooled == null) {
+				created.incrementAndGet();
+				return new PooledConnection(DriverManager.getConnection(url, user, password));
+			}
+			if (System.currentTimeMillis() - pooled.lastUsed < validationInterval || pooled.isValid()) {
+				return pooled;
+			}
+			pooled.closePhysical();
+		}
+	}
+
+	private void giveBack(PooledConnection pooled) {
+		try {
+			if (closed || pooled.connection.isClosed()) {
+				pooled.closePhysical();
+				return;
+			}
+			if (!pooled.connection.getAutoCommit()) {
+				pooled.connection.rollback();
+				pooled.connection.setAutoCommit(true);
+			}
+			pooled.lastUsed = System.currentTimeMillis();
+			synchronized (idle) {
+				idle.addFirst(pooled);
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+			pooled.closePhysical();
+		} finally {
+			permits.release();
+		}
+	}
+
+	private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * A physical connection together with its cache of prepared statements.
+	 */
+	private class PooledConnection {
+		final Connection connection;
+		final Map<String, PreparedStatement> statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+				if (size() > STATEMENT_CACHE_SIZE) {
+					try {
+						eldest.getValue().close();
+					} catch (SQLException e) {
+						e.printStackTrace();
+					}
+					return true;
+				}
+				return false;
+			}
+		};
+		final Set<PreparedStatement> inUse = Collections.newSetFromMap(new IdentityHashMap<>());
+		long lastUsed = System.currentTimeMillis();
+
+		PooledConnection(Connection connection) {
+			this.connection = connection;
+		}
+
+		boolean isValid() {
+			try {
+				return connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+			} catch (SQLException e) {
+				return false;
+			}
+		}
+
+		void closePhysical() {
+			try {
+				statements.clear();
+				connection.close();
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+		}
+
+		/**
+		 * Wraps the connection for one borrower. Closing the wrapper gives the connection back,
+		 * and the wrapper can't be used afterwards.
+		 */
+		Connection lease() {
+			InvocationHandler handler = new InvocationHandler() {
+				private boolean released = false;
+
+				@Override
+				public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+					switch (method.getName()) {
+					case "equals":
+						return proxy == args[0];
+					case "hashCode":
+						return System.identityHashCode(proxy);
+					case "close":
+						if (!released) {
+							released = true;
+							inUse.clear();
+							giveBack(PooledConnection.this);
+						}
+						return null;
+					case "isClosed":
+						return released || connection.isClosed();
+					default:
+						break;
+					}
+					if (released) {
+						throw new SQLException("The connection was given back to the pool");
+					}
+					if (method.getName().equals("prepareStatement") && args.length == 1) {
+						return prepare((String) args[0], (Connection) proxy);
+					}
+					return ConnectionPool.invoke(connection, method, args);
+				}
+			};
+			return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, handler);
+		}
+
+		/**
+		 * Returns the cached statement for the SQL, preparing it the first time. The wrapper
+		 * returned clears the parameters when closed instead of closing the statement.
+		 * If the cached statement is still open through another wrapper, for example while a
+		 * result of the same query is read, a new statement is prepared and closed with its wrapper,
+		 * so the two don't share parameters or results.
+		 */
+		PreparedStatement prepare(String sql, Connection owner) throws SQLException {
+			PreparedStatement statement = statements.get(sql);
+			if (statement == null || statement.isClosed()) {
+				statement = connection.prepareStatement(sql);
+				statements.put(sql, statement);
+			}
+			boolean cached = inUse.add(statement);
+			PreparedStatement target = cached ? statement : connection.prepareStatement(sql);
+			InvocationHandler handler = new InvocationHandler() {
+				private boolean closed = false;
+
+				@Override
+				public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+					switch (method.getName()) {
+					case "equals":
+						return proxy == args[0];
+					case "hashCode":
+						return System.identityHashCode(proxy);
+					case "close":
+						if (!closed) {
+							closed = true;
+							if (!cached) {
+								target.close();
+							} else {
+								inUse.remove(target);
+								if (!target.isClosed()) {
+									target.clearParameters();
+								}
+							}
+						}
+						return null;
+					case "isClosed":
+						return closed || target.isClosed();
+					case "getConnection":
+						return owner;
+					default:
+						return ConnectionPool.invoke(target, method, args);
+					}
+				}
+			};
+			return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(), new Class<?>[] { PreparedStatement.class }, handler);
+		}
+	}
+}
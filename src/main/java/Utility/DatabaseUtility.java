@@ -1,32 +1,89 @@
 package Utility;
 
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import javax.swing.DefaultListModel;
 import javax.swing.JList;
 import javax.swing.JOptionPane;
 
+import Utility.MetricsRegistry.Area;
+import Utility.MetricsRegistry.Timing;
 import project.Project;
 
 /**
  * DatabaseUtility is a utility class that provides static methods
  * to manipulate data in the database, create the table or connect to it.
+ * Connections come from a ConnectionPool, so the operations reuse open connections and
+ * prepared statements. The database and the pool size can be set with the photodite.db.url,
+ * photodite.db.user, photodite.db.password and photodite.db.poolSize system properties.
  */
 public class DatabaseUtility {
-    private static final String URL = "jdbc:mysql://localhost:3306/PhotoAppDB";
-    private static final String USER = "root";
-    private static final String PASSWORD = "root";
-    private static Statement statement;
+    private static final String URL = System.getProperty("photodite.db.url", "jdbc:mysql://localhost:3306/PhotoAppDB");
+    private static final String USER = System.getProperty("photodite.db.user", "root");
+    private static final String PASSWORD = System.getProperty("photodite.db.password", "root");
+    private static final int POOL_SIZE = Integer.getInteger("photodite.db.poolSize", 4);
+    /** The number of projects read at once from the catalog, by this class and by the project list. */
+    public static final int PAGE_SIZE = 200;
+    private static ConnectionPool pool;
 
+    /**
+     * Borrows a connection from the pool. Closing it gives it back to the pool.
+     * 
+     * @return A pooled Connection to the database.
+     * @throws SQLException If no connection could be opened.
+     */
     public static Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(URL, USER, PASSWORD);
+        return getPool().getConnection();
+    }
+
+    /**
+     * Returns the connection pool, creating it from the system properties the first time.
+     * 
+     * @return The connection pool.
+     */
+    public static synchronized ConnectionPool getPool() {
+        if (pool == null) {
+            pool = new ConnectionPool(URL, USER, PASSWORD, POOL_SIZE);
+        }
+        return pool;
+    }
+
+    /**
+     * Connects to another database, closing the connections to the previous one.
+     * 
+     * @param url The JDBC URL of the database.
+     * @param user The user name.
+     * @param password The password.
+     * @param poolSize The maximum number of open connections.
+     */
+    public static synchronized void configure(String url, String user, String password, int poolSize) {
+        shutdown();
+        pool = new ConnectionPool(url, user, password, poolSize);
+    }
+
+    /**
+     * Closes the idle connections of the pool. The next operation opens a new pool.
+     */
+    public static synchronized void shutdown() {
+        if (pool != null) {
+            pool.close();
+            pool = null;
+        }
     }
 
     /**
-     * Verifies the existence of the table in the database.
+     * Verifies the existence of the table in the database, together with its indexes:
+     * a unique index on the path, used to find a project when it is deleted, and an index
+     * on the name. Indexes missing from a table created by an older version are added.
+     * The connection is left open, closing it is up to the caller.
      * 
      * @param con The Connection to the database.
      */
+    @SuppressWarnings("try")
     public static void verifyTableExistance(Connection con) {
     	String createTableSQL = "CREATE TABLE IF NOT EXISTS Projects (" +
                 "id INT AUTO_INCREMENT PRIMARY KEY, " +
@@ -34,46 +91,77 @@ public class DatabaseUtility {
                 "path VARCHAR(255) NOT NULL," +
                 "file_type VARCHAR(255) NOT NULL" +
                 ")";
-		try {
-			statement = con.createStatement();
+		try (Timing timing = MetricsRegistry.time(Area.DATABASE, "verifyTableExistance", createTableSQL);
+				Statement statement = con.createStatement()) {
 			statement.executeUpdate(createTableSQL);
+			Set<String> indexes = indexesOf(con);
+			if (!indexes.contains("projects_path")) {
+				try {
+					statement.executeUpdate("CREATE UNIQUE INDEX projects_path ON Projects (path)");
+				} catch (SQLException e) {
+					if (!isDuplicateKey(e)) {
+						throw e;
+					}
+					// an older table can hold the same path twice, index it without the constraint
+					statement.executeUpdate("CREATE INDEX projects_path ON Projects (path)");
+				}
+			}
+			if (!indexes.contains("projects_name")) {
+				statement.executeUpdate("CREATE INDEX projects_name ON Projects (name)");
+			}
 		} catch (SQLException e) {
+			MetricsRegistry.counter("db.errors").increment();
 			e.printStackTrace();
-		} finally {
-			 try {
-	                if (statement != null) {
-	                    statement.close();
-	                }
-	                if (con != null) {
-	                    con.close();
-	                }
-	            } catch (Exception e) {
-	                e.printStackTrace();
-	         }
 		}
-		
+    }
+    
+    /**
+     * Helper method that tells whether an exception reports rows with the same key,
+     * by its SQLState (23000 for MySQL, 23505 for the standard) or the MySQL error code 1062.
+     */
+    private static boolean isDuplicateKey(SQLException e) {
+    	return "23000".equals(e.getSQLState()) || "23505".equals(e.getSQLState()) || e.getErrorCode() == 1062;
+    }
+    
+    /**
+     * Helper method that returns the names of the indexes of the table, in lower case.
+     */
+    private static Set<String> indexesOf(Connection con) throws SQLException {
+    	Set<String> indexes = new HashSet<>();
+    	DatabaseMetaData metaData = con.getMetaData();
+    	for (String table : new String[] {"Projects", "PROJECTS", "projects"}) {
+    		try (ResultSet resultSet = metaData.getIndexInfo(con.getCatalog(), null, table, false, false)) {
+    			while (resultSet.next()) {
+    				String name = resultSet.getString("INDEX_NAME");
+    				if (name != null) {
+    					indexes.add(name.toLowerCase());
+    				}
+    			}
+    		}
+    	}
+    	return indexes;
     }
     
     /**
      * Loads all saved projects from the database and adds them to the project list.
+     * The projects are read in pages of PAGE_SIZE, see loadProjectsPage.
      *
      * @param projectListModel The model for the JList to populate with project names.
      * @param projectList The component from the frame.
      */
     public static void loadProjectsFromDatabase(DefaultListModel<String> projectListModel, JList<String> projectList) {
-        String query = "SELECT name, path, file_type FROM projects";
         boolean isEmpty = true;
-        try (Connection connection = DatabaseUtility.getConnection();
-             PreparedStatement statement = connection.prepareStatement(query);
-             ResultSet resultSet = statement.executeQuery()) {
-
-            while (resultSet.next()) {
-                isEmpty = false;
-                String name = resultSet.getString("name");
-                String path = resultSet.getString("path");
-                String type = resultSet.getString("file_type");
-                projectListModel.addElement(name + " - " + path + " - " + type);
-            }
+        try {
+            List<String> page = new ArrayList<>();
+            long lastId = 0;
+            do {
+                page.clear();
+                lastId = loadProjectsPage(lastId, PAGE_SIZE, page);
+                for (String entry : page) {
+                    isEmpty = false;
+                    projectListModel.addElement(entry);
+                }
+            } while (page.size() == PAGE_SIZE);
              
             if (isEmpty) {
                 projectListModel.addElement("No projects found. Create a new project to get started!");
@@ -85,22 +173,61 @@ public class DatabaseUtility {
         }
     }
     
+    /**
+     * Loads one page of projects, in the order they were added, as "name - path - type" entries.
+     * Pages are selected by the id of the last project of the previous page (keyset pagination),
+     * so every page is a range scan of the primary key no matter how deep it is.
+     * 
+     * @param afterId The id of the last project of the previous page, 0 for the first page.
+     * @param limit The maximum number of projects in the page.
+     * @param entries The list the entries are added to.
+     * @return The id of the last project of the page, or afterId if the page is empty.
+     * @throws SQLException If the projects can't be read.
+     */
+    @SuppressWarnings("try")
+    public static long loadProjectsPage(long afterId, int limit, List<String> entries) throws SQLException {
+        String query = "SELECT id, name, path, file_type FROM Projects WHERE id > ? ORDER BY id LIMIT ?";
+        long lastId = afterId;
+        try (Timing timing = MetricsRegistry.time(Area.DATABASE, "loadProjectsPage", query);
+             Connection connection = getConnection();
+             PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setLong(1, afterId);
+            statement.setInt(2, limit);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    lastId = resultSet.getLong("id");
+                    String name = resultSet.getString("name");
+                    String path = resultSet.getString("path");
+                    String type = resultSet.getString("file_type");
+                    entries.add(name + " - " + path + " - " + type);
+                }
+            }
+        } catch (SQLException e) {
+            MetricsRegistry.counter("db.errors").increment();
+            throw e;
+        }
+        return lastId;
+    }
+    
     /**
      * Adds a project's name, path and type to the database.
+     * A project that already exists at the same path is updated instead.
      * 
      * @param p The current project that contains all the information needed.
      */
+    @SuppressWarnings("try")
     public static void addProject(Project p) {
-        String query = "INSERT INTO Projects (name, path, file_type) VALUES (?, ?, ?)";
-        try (Connection connection = getConnection();
+        String query = "INSERT INTO Projects (name, path, file_type) VALUES (?, ?, ?) " +
+                "ON DUPLICATE KEY UPDATE name = VALUES(name), file_type = VALUES(file_type)";
+        try (Timing timing = MetricsRegistry.time(Area.DATABASE, "addProject", query);
+             Connection connection = getConnection();
              PreparedStatement preparedStatement = connection.prepareStatement(query)) {
             preparedStatement.setString(1, p.getName());
             preparedStatement.setString(2, p.getPath());
             preparedStatement.setString(3, p.getType());
             preparedStatement.executeUpdate();
-            preparedStatement.close();
-            connection.close();
         } catch (SQLException e) {
+            MetricsRegistry.counter("db.errors").increment();
             e.printStackTrace();
         }
     }
@@ -110,15 +237,16 @@ public class DatabaseUtility {
      * 
      * @param p The current project's path to the project's image.
      */
+    @SuppressWarnings("try")
     public static void deleteProject(String p) {
     	String query = "DELETE FROM Projects WHERE path = (?)";
-    	try (Connection connection = getConnection();
+    	try (Timing timing = MetricsRegistry.time(Area.DATABASE, "deleteProject", query);
+    		 Connection connection = getConnection();
     		 PreparedStatement preparedStatement = connection.prepareStatement(query)) {
     		preparedStatement.setString(1, p);
     		preparedStatement.executeUpdate();
-    		preparedStatement.close();
-    		connection.close();
     	} catch (SQLException e) {
+    		MetricsRegistry.counter("db.errors").increment();
     		e.printStackTrace();
     	}
     }
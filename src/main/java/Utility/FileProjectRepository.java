@@ -0,0 +1,266 @@
+package Utility;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import project.Project;
+
+/**
+ * FileProjectRepository stores the projects in a local append-only file, so the application
+ * can start without a database server.
+ * Every change is appended as one line: "+ id name path type" when a project is added or
+ * updated and "- path" when it is removed, with the fields separated by tabs. The file is
+ * replayed once into an in-memory index ordered by id, and every query is answered from
+ * the index. When most of the lines are outdated, the file is rewritten with only the
+ * current projects.
+ */
+public class FileProjectRepository implements ProjectRepository {
+
+	private static final int COMPACTION_THRESHOLD = 1000;
+
+	/**
+	 * A project of the catalog.
+	 */
+	private static class Entry {
+		final long id;
+		final String name;
+		final String path;
+		final String type;
+
+		Entry(long id, String name, String path, String type) {
+			this.id = id;
+			this.name = name;
+			this.path = path;
+			this.type = type;
+		}
+
+		@Override
+		public String toString() {
+			return name + " - " + path + " - " + type;
+		}
+	}
+
+	private final File file;
+	private final TreeMap<Long, Entry> byId = new TreeMap<>();
+	private final Map<String, Entry> byPath = new HashMap<>();
+	private long nextId = 1;
+	private int records = 0;
+	private Writer writer;
+
+	/**
+	 * Creates a repository over a file. Nothing is read until it is initialized.
+	 *
+	 * @param file The file of the catalog, created if it doesn't exist.
+	 */
+	public FileProjectRepository(File file) {
+		this.file = file;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	@Override
+	public synchronized void initialize() throws IOException {
+		if (writer != null) {
+			return;
+		}
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (!parent.isDirectory() && !parent.mkdirs()) {
+			throw new IOException("Can't create the directory of the project catalog: " + parent);
+		}
+		if (file.isFile()) {
+			replay();
+		}
+		if (records > COMPACTION_THRESHOLD && records > 2 * byId.size()) {
+			compact();
+		}
+		if (file.length() > 0 && !endsWithNewLine()) {
+			dropTornLine();
+		}
+		writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+	}
+
+	@Override
+	public synchronized void addProject(Project project) throws IOException {
+		initialize();
+		Entry existing = byPath.get(project.getPath());
+		Entry entry = new Entry(existing != null ? existing.id : nextId++, project.getName(), project.getPath(), project.getType());
+		append("+\t" + entry.id + "\t" + escape(entry.name) + "\t" + escape(entry.path) + "\t" + escape(entry.type));
+		put(entry);
+	}
+
+	@Override
+	public synchronized void deleteProject(String path) throws IOException {
+		initialize();
+		if (!byPath.containsKey(path)) {
+			return;
+		}
+		append("-\t" + escape(path));
+		remove(path);
+	}
+
+	@Override
+	public synchronized long loadProjectsPage(long afterId, int limit, List<String> entries) throws IOException {
+		initialize();
+		long lastId = afterId;
+		for (Entry entry : byId.tailMap(afterId, false).values()) {
+			if (limit-- <= 0) {
+				break;
+			}
+			entries.add(entry.toString());
+			lastId = entry.id;
+		}
+		return lastId;
+	}
+
+	/**
+	 * Returns the number of projects in the catalog.
+	 *
+	 * @return The number of projects.
+	 */
+	public synchronized int size() {
+		return byId.size();
+	}
+
+	/**
+	 * Closes the file. The repository is opened again by the next operation.
+	 *
+	 * @throws IOException If the file can't be closed.
+	 */
+	public synchronized void close() throws IOException {
+		if (writer != null) {
+			writer.close();
+			writer = null;
+		}
+	}
+
+	private void replay() throws IOException {
+		boolean torn = file.length() > 0 && !endsWithNewLine();
+		try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+			String line;
+			String next = reader.readLine();
+			while ((line = next) != null) {
+				next = reader.readLine();
+				if (next == null && torn) {
+					// the last line has no new line, it was cut short by a crash even if its fields look complete
+					break;
+				}
+				String[] fields = line.split("\t", -1);
+				if (fields[0].equals("+") && fields.length == 5 && fields[1].matches("\\d+")) {
+					Entry entry = new Entry(Long.parseLong(fields[1]), unescape(fields[2]), unescape(fields[3]), unescape(fields[4]));
+					put(entry);
+					nextId = Math.max(nextId, entry.id + 1);
+					records++;
+				} else if (fields[0].equals("-") && fields.length == 2) {
+					remove(unescape(fields[1]));
+					records++;
+				}
+				// any other line was cut short by a crash while it was appended
+			}
+		}
+	}
+
+	/**
+	 * Helper method that rewrites the file with one line per project, into a temporary file
+	 * that then replaces the catalog, so a crash never leaves it half written.
+	 */
+	private void compact() throws IOException {
+		File temp = new File(file.getPath() + ".tmp");
+		try (BufferedWriter out = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8)) {
+			for (Entry entry : byId.values()) {
+				out.write("+\t" + entry.id + "\t" + escape(entry.name) + "\t" + escape(entry.path) + "\t" + escape(entry.type));
+				out.write('\n');
+			}
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		records = byId.size();
+	}
+
+	private boolean endsWithNewLine() throws IOException {
+		try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+			in.seek(in.length() - 1);
+			return in.read() == '\n';
+		}
+	}
+
+	/**
+	 * Helper method that cuts the file after its last new line, removing a line that a crash
+	 * left half written, so that the next append doesn't complete it.
+	 */
+	private void dropTornLine() throws IOException {
+		try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+			long end = out.length() - 1;
+			while (end >= 0) {
+				out.seek(end);
+				if (out.read() == '\n') {
+					break;
+				}
+				end--;
+			}
+			out.setLength(end + 1);
+		}
+	}
+
+	private void append(String line) throws IOException {
+		writer.write(line);
+		writer.write('\n');
+		writer.flush();
+		records++;
+	}
+
+	private void put(Entry entry) {
+		Entry previous = byPath.put(entry.path, entry);
+		if (previous != null && previous.id != entry.id) {
+			byId.remove(previous.id);
+		}
+		byId.put(entry.id, entry);
+	}
+
+	private void remove(String path) {
+		Entry removed = byPath.remove(path);
+		if (removed != null) {
+			byId.remove(removed.id);
+		}
+	}
+
+	private static String escape(String value) {
+		StringBuilder escaped = new StringBuilder(value.length());
+		for (char c : value.toCharArray()) {
+			switch (c) {
+			case '\\': escaped.append("\\\\"); break;
+			case '\t': escaped.append("\\t"); break;
+			case '\n': escaped.append("\\n"); break;
+			case '\r': escaped.append("\\r"); break;
+			default: escaped.append(c);
+			}
+		}
+		return escaped.toString();
+	}
+
+	private static String unescape(String value) {
+		StringBuilder unescaped = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '\\' && i + 1 < value.length()) {
+				char next = value.charAt(++i);
+				unescaped.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+			} else {
+				unescaped.append(c);
+			}
+		}
+		return unescaped.toString();
+	}
+}
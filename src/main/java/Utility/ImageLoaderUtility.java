@@ -0,0 +1,224 @@
+package Utility;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import javax.imageio.IIOException;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * ImageLoaderUtility is a utility class for reading images from disk.
+ * Besides full decoding, it can read only the size of an image from its header, read the
+ * thumbnail a camera embedded in a JPEG file, and decode a subsampled copy of an image, which
+ * saves memory but not much time: the readers still decode every row of the file.
+ */
+public class ImageLoaderUtility {
+
+	/**
+	 * Reads the width and height of an image without decoding its pixels.
+	 *
+	 * @param file The image file.
+	 * @return The size of the image, or null if the format isn't supported.
+	 * @throws IOException If the file can't be read.
+	 */
+	public static Dimension readSize(File file) throws IOException {
+		try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+			ImageReader reader = readerFor(input);
+			if (reader == null) {
+				return null;
+			}
+			try {
+				return new Dimension(reader.getWidth(0), reader.getHeight(0));
+			} finally {
+				reader.dispose();
+			}
+		}
+	}
+
+	/**
+	 * Returns the smallest subsampling factor that makes an image fit in a square.
+	 *
+	 * @param size The size of the image.
+	 * @param maxSize The maximum width and height of the subsampled image.
+	 * @return The subsampling factor, 1 if the image already fits.
+	 */
+	public static int subsamplingFor(Dimension size, int maxSize) {
+		int largest = Math.max(size.width, size.height);
+		return Math.max(1, (largest + maxSize - 1) / maxSize);
+	}
+
+	/**
+	 * Decodes an image keeping only every n-th pixel of every n-th row.
+	 *
+	 * @param file The image file.
+	 * @param subsampling The subsampling factor n, 1 decodes the full image.
+	 * @return The subsampled image, or null if the format isn't supported.
+	 * @throws IOException If the file can't be read or decoded.
+	 */
+	public static BufferedImage readSubsampled(File file, int subsampling) throws IOException {
+		try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+			ImageReader reader = readerFor(input);
+			if (reader == null) {
+				return null;
+			}
+			try {
+				ImageReadParam param = reader.getDefaultReadParam();
+				param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+				return reader.read(0, param);
+			} finally {
+				reader.dispose();
+			}
+		}
+	}
+
+	/**
+	 * Reads the thumbnail embedded in an image file, which costs a fraction of decoding the image:
+	 * a JFIF thumbnail, through the ImageReader, or the JPEG thumbnail of the EXIF data that cameras
+	 * write in their files.
+	 *
+	 * @param file The image file.
+	 * @return The thumbnail, or null if the file has none.
+	 * @throws IOException If the file can't be read.
+	 */
+	public static BufferedImage readThumbnail(File file) throws IOException {
+		try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+			ImageReader reader = readerFor(input);
+			if (reader == null) {
+				return null;
+			}
+			try {
+				if (reader.getFormatName().equalsIgnoreCase("jpeg")) {
+					byte[] thumbnail = readExifThumbnail(file);
+					if (thumbnail != null) {
+						return ImageIO.read(new ByteArrayInputStream(thumbnail));
+					}
+				}
+				if (reader.readerSupportsThumbnails() && reader.getNumThumbnails(0) > 0) {
+					return reader.readThumbnail(0, 0);
+				}
+				return null;
+			} catch (IIOException e) {
+				// the metadata of the thumbnails is stricter than the decoder, e.g. about APP0 following APP1
+				return null;
+			} finally {
+				reader.dispose();
+			}
+		}
+	}
+
+	/**
+	 * Decodes the full image.
+	 *
+	 * @param file The image file.
+	 * @return The image, or null if the format isn't supported.
+	 * @throws IOException If the file can't be read or decoded.
+	 */
+	public static BufferedImage read(File file) throws IOException {
+		return ImageIO.read(file);
+	}
+
+	/**
+	 * Helper method that returns the bytes of the JPEG thumbnail of the EXIF segment (APP1) of a JPEG file.
+	 * Only the segments before the image data are read.
+	 */
+	private static byte[] readExifThumbnail(File file) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readUnsignedShort() != 0xFFD8) {
+				return null;
+			}
+			while (true) {
+				int marker = in.readUnsignedShort();
+				// the image data starts at SOS, no EXIF segment comes after it
+				if ((marker & 0xFF00) != 0xFF00 || marker == 0xFFDA || marker == 0xFFD9) {
+					return null;
+				}
+				int length = in.readUnsignedShort() - 2;
+				if (length < 0) {
+					return null;
+				}
+				if (marker != 0xFFE1) {
+					in.skipNBytes(length);
+					continue;
+				}
+				byte[] segment = new byte[length];
+				in.readFully(segment);
+				byte[] thumbnail = exifThumbnail(segment);
+				if (thumbnail != null) {
+					return thumbnail;
+				}
+			}
+		} catch (EOFException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Helper method that finds the thumbnail of an APP1 segment: its offset and length are the
+	 * JPEGInterchangeFormat (0x0201) and JPEGInterchangeFormatLength (0x0202) tags of the second
+	 * image file directory (IFD1) of the TIFF structure that follows the "Exif" header.
+	 */
+	private static byte[] exifThumbnail(byte[] segment) {
+		if (segment.length < 14 || !new String(segment, 0, 6, StandardCharsets.ISO_8859_1).equals("Exif\0\0")) {
+			return null;
+		}
+		ByteBuffer tiff = ByteBuffer.wrap(segment, 6, segment.length - 6).slice();
+		if (tiff.getShort(0) == 0x4949) {
+			tiff.order(ByteOrder.LITTLE_ENDIAN);
+		} else if (tiff.getShort(0) != 0x4D4D) {
+			return null;
+		}
+		try {
+			int ifd0 = tiff.getInt(4);
+			int ifd1 = tiff.getInt(ifd0 + 2 + (tiff.getShort(ifd0) & 0xFFFF) * 12);
+			if (ifd1 <= 0) {
+				return null;
+			}
+			int offset = -1;
+			int length = -1;
+			int entries = tiff.getShort(ifd1) & 0xFFFF;
+			for (int i = 0; i < entries; i++) {
+				int entry = ifd1 + 2 + i * 12;
+				int tag = tiff.getShort(entry) & 0xFFFF;
+				if (tag == 0x0201) {
+					offset = tiff.getInt(entry + 8);
+				} else if (tag == 0x0202) {
+					length = tiff.getInt(entry + 8);
+				}
+			}
+			if (offset <= 0 || length <= 0 || offset > tiff.limit() - length) {
+				return null;
+			}
+			return Arrays.copyOfRange(segment, 6 + offset, 6 + offset + length);
+		} catch (IndexOutOfBoundsException e) {
+			return null;
+		}
+	}
+
+	private static ImageReader readerFor(ImageInputStream input) {
+		if (input == null) {
+			return null;
+		}
+		Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+		if (!readers.hasNext()) {
+			return null;
+		}
+		ImageReader reader = readers.next();
+		reader.setInput(input, true, true);
+		return reader;
+	}
+}
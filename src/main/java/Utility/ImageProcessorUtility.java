@@ -1,31 +1,36 @@
 package Utility;
 
 import java.awt.*;
-import java.awt.geom.AffineTransform;
-import java.awt.image.AffineTransformOp;
 import java.awt.image.BufferedImage;
-import java.awt.image.RescaleOp;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.function.IntUnaryOperator;
+
+import Utility.MetricsRegistry.Area;
+import Utility.MetricsRegistry.Timing;
 
 
 /**
  * ImageProcessor is a utility class that provides static methods for various image manipulation operations,
  * including grayscale conversion, image rotation, brightness adjustment, image zooming, and flipping.
+ * The per-pixel operations run in parallel bands of rows through ParallelProcessingUtility.
+ * Every operation is timed in MetricsRegistry.
  */
 public class ImageProcessorUtility {
 
 	/**
      * Converts a given BufferedImage to grayscale.
-     * The grayscale image is created using the BYTE_GRAY color model.
+     * Every pixel is replaced by its luminance, the alpha channel is preserved.
      * 
      * @param image The BufferedImage to be converted to grayscale.
      * @return A new BufferedImage in grayscale.
      */
+    @SuppressWarnings("try")
     public static BufferedImage toGrayscale(BufferedImage image) {
-        BufferedImage grayscale = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
-        Graphics g = grayscale.getGraphics();
-        g.drawImage(image, 0, 0, null);
-        g.dispose();
-        return grayscale;
+        try (Timing timing = MetricsRegistry.time(Area.IMAGE, "toGrayscale", image)) {
+            return applyKernel(image, PixelKernelUtility.LUMINANCE);
+        }
     }
 
     /**
@@ -35,31 +40,11 @@ public class ImageProcessorUtility {
      * @param image The BufferedImage to apply the sepia filter to.
      * @return A new BufferedImage with the sepia filter applied.
      */
+    @SuppressWarnings("try")
     public static BufferedImage toSepia(BufferedImage image) {
-        int width = image.getWidth();
-        int height = image.getHeight();
-        BufferedImage sepiaImage = new BufferedImage(width, height, image.getType());
-
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                Color color = new Color(image.getRGB(x, y));
-
-                int red = color.getRed();
-                int green = color.getGreen();
-                int blue = color.getBlue();
-
-                int tr = (int) (0.393 * red + 0.769 * green + 0.189 * blue);
-                int tg = (int) (0.349 * red + 0.686 * green + 0.168 * blue);
-                int tb = (int) (0.272 * red + 0.534 * green + 0.131 * blue);
-
-                tr = clamp(tr);
-                tg = clamp(tg);
-                tb = clamp(tb);
-
-                sepiaImage.setRGB(x, y, new Color(tr, tg, tb).getRGB());
-            }
+        try (Timing timing = MetricsRegistry.time(Area.IMAGE, "toSepia", image)) {
+            return applyKernel(image, PixelKernelUtility.SEPIA);
         }
-        return sepiaImage;
     }
 
     /**
@@ -69,23 +54,11 @@ public class ImageProcessorUtility {
      * @param image The BufferedImage to apply the negative filter to.
      * @return A new BufferedImage with the negative filter applied.
      */
+    @SuppressWarnings("try")
     public static BufferedImage toNegative(BufferedImage image) {
-        int width = image.getWidth();
-        int height = image.getHeight();
-        BufferedImage negativeImage = new BufferedImage(width, height, image.getType());
-
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                Color color = new Color(image.getRGB(x, y));
-
-                int red = 255 - color.getRed();
-                int green = 255 - color.getGreen();
-                int blue = 255 - color.getBlue();
-
-                negativeImage.setRGB(x, y, new Color(clamp(red), clamp(green), clamp(blue)).getRGB());
-            }
+        try (Timing timing = MetricsRegistry.time(Area.IMAGE, "toNegative", image)) {
+            return applyKernel(image, PixelKernelUtility.NEGATIVE);
         }
-        return negativeImage;
     }
     
     /**
@@ -96,16 +69,11 @@ public class ImageProcessorUtility {
      * @param image The BufferedImage to be rotated.
      * @return A new BufferedImage that is rotated 90 degrees clockwise.
      */
+    @SuppressWarnings("try")
     public static BufferedImage rotateImageLeft(BufferedImage image) {
-        int width = image.getWidth();
-        int height = image.getHeight();
-        BufferedImage rotated = new BufferedImage(height, width, image.getType());
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                rotated.setRGB(y, width - 1 - x, image.getRGB(x, y));
-            }
+        try (Timing timing = MetricsRegistry.time(Area.IMAGE, "rotateImageLeft", image)) {
+            return orientImage(image, Orientation.ROTATE_LEFT);
         }
-        return rotated;
     }
 
     /**
@@ -116,33 +84,86 @@ public class ImageProcessorUtility {
      * @param image The BufferedImage to be rotated.
      * @return A new BufferedImage that is rotated 90 degrees clockwise.
      */
+    @SuppressWarnings("try")
     public static BufferedImage rotateImageRight(BufferedImage image) {
-        int width = image.getWidth();
-        int height = image.getHeight();
-        BufferedImage rotated = new BufferedImage(height, width, image.getType());
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                rotated.setRGB(height - 1 - y, x, image.getRGB(x, y));
-            }
+        try (Timing timing = MetricsRegistry.time(Area.IMAGE, "rotateImageRight", image)) {
+            return orientImage(image, Orientation.ROTATE_RIGHT);
+        }
+    }
+    
+    /**
+     * Rotates and flips the given image by any of the eight orientations in a single pass.
+     * Every row of the result is a row or a column of the original, read in order or reversed,
+     * so a sequence of rotations and flips composed into one orientation costs one copy.
+     * The copy is done on the pixel arrays, in cache-sized blocks, by OrientationKernelUtility.
+     * 
+     * @param image The BufferedImage to be oriented.
+     * @param orientation The orientation to apply.
+     * @return A new BufferedImage, or the image itself for Orientation.NORMAL.
+     */
+    @SuppressWarnings("try")
+    public static BufferedImage orient(BufferedImage image, Orientation orientation) {
+        if (orientation == Orientation.NORMAL) {
+            return image;
+        }
+        try (Timing timing = MetricsRegistry.time(Area.IMAGE, "orient", image)) {
+            return orientImage(image, orientation);
+        }
+    }
+    
+    /**
+     * Helper method that orients an image without timing it, for the operations that time themselves.
+     */
+    private static BufferedImage orientImage(BufferedImage image, Orientation orientation) {
+        if (orientation == Orientation.NORMAL) {
+            return image;
+        }
+        int width = orientation.transposes() ? image.getHeight() : image.getWidth();
+        int height = orientation.transposes() ? image.getWidth() : image.getHeight();
+        BufferedImage oriented = createImage(image, width, height);
+        if (OrientationKernelUtility.isSupported(image, oriented)) {
+            ParallelProcessingUtility.forEachRowBand(width, height,
+                    (fromRow, toRow) -> OrientationKernelUtility.orient(image, oriented, orientation, fromRow, toRow));
+            return oriented;
         }
-        return rotated;
+        
+        // rasters with several pixels per byte or one array per band go through the samples
+        Raster src = image.getRaster();
+        WritableRaster dst = oriented.getRaster();
+        int bands = src.getNumBands();
+        ParallelProcessingUtility.forEachRowBand(width, height, (fromRow, toRow) -> {
+            int[] line = new int[width * bands];
+            for (int row = fromRow; row < toRow; row++) {
+                int source = orientation.mirrorsY() ? height - 1 - row : row;
+                if (orientation.transposes()) {
+                    src.getPixels(source, 0, 1, width, line);
+                } else {
+                    src.getPixels(0, source, width, 1, line);
+                }
+                if (orientation.mirrorsX()) {
+                    reversePixels(line, width, bands);
+                }
+                dst.setPixels(0, row, width, 1, line);
+            }
+        });
+        return oriented;
     }
     
     /**
      * Adjusts the brightness of an image based on a given adjustment value.
      * A positive adjustment value brightens the image, and a negative value darkens it.
-     * The adjustment is applied using a RescaleOp operation.
+     * The adjustment is a linear rescale of the color channels, applied through a lookup table.
      * 
      * @param image The BufferedImage whose brightness is to be adjusted.
      * @param adjustment The brightness adjustment value (positive to brighten, negative to darken).
      * @return A new BufferedImage with the adjusted brightness.
      */
+    @SuppressWarnings("try")
     public static BufferedImage adjustBrightness(BufferedImage image, int adjustment) {
-        BufferedImage brightened = new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
-        float scaleFactor = 1 + (adjustment / 100.0f);
-        RescaleOp bright = new RescaleOp(scaleFactor, adjustment, null);
-        brightened = bright.filter(image, null);
-        return brightened;
+        try (Timing timing = MetricsRegistry.time(Area.IMAGE, "adjustBrightness", image)) {
+            float scaleFactor = 1 + (adjustment / 100.0f);
+            return applyKernel(image, PixelKernelUtility.lookup(PixelKernelUtility.rescaleTable(scaleFactor, adjustment)));
+        }
     }
     
     /**
@@ -153,13 +174,13 @@ public class ImageProcessorUtility {
      * @param contrast The contrast adjustment value (-100 to 100).
      * @return A new BufferedImage with the adjusted contrast.
      */
+    @SuppressWarnings("try")
     public static BufferedImage adjustContrast(BufferedImage image, int contrast) {
-        BufferedImage contrasted = new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
-        float scaleFactor = 1 + (contrast / 100.0f);
-        float offset = 128 * (1 - scaleFactor);
-        RescaleOp contrastOp = new RescaleOp(scaleFactor, offset, null);
-        contrasted = contrastOp.filter(image, null);
-        return contrasted;
+        try (Timing timing = MetricsRegistry.time(Area.IMAGE, "adjustContrast", image)) {
+            float scaleFactor = 1 + (contrast / 100.0f);
+            float offset = 128 * (1 - scaleFactor);
+            return applyKernel(image, PixelKernelUtility.lookup(PixelKernelUtility.rescaleTable(scaleFactor, offset)));
+        }
     }
     
     /**
@@ -170,41 +191,79 @@ public class ImageProcessorUtility {
      * @param zoomFactor The factor by which the image is to be zoomed (e.g., 1.2 to zoom in).
      * @return A new BufferedImage that is zoomed according to the specified zoom factor.
      */
+    @SuppressWarnings("try")
     public static BufferedImage zoomImage(BufferedImage image, double zoomFactor) {
-        int newWidth = (int) (image.getWidth() * zoomFactor);
-        int newHeight = (int) (image.getHeight() * zoomFactor);
-        BufferedImage zoomedImage = new BufferedImage(newWidth, newHeight, image.getType());
-        Graphics2D g = zoomedImage.createGraphics();
-        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
-        g.drawImage(image, 0, 0, newWidth, newHeight, null);
-        g.dispose();
-        return zoomedImage;
+        try (Timing timing = MetricsRegistry.time(Area.IMAGE, "zoomImage", image)) {
+            int newWidth = (int) (image.getWidth() * zoomFactor);
+            int newHeight = (int) (image.getHeight() * zoomFactor);
+            BufferedImage zoomedImage = createImage(image, newWidth, newHeight);
+            Graphics2D g = zoomedImage.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            g.drawImage(image, 0, 0, newWidth, newHeight, null);
+            g.dispose();
+            return zoomedImage;
+        }
     }
     
     /**
      * Flips the given image horizontally.
-     * The flipping is performed by applying an AffineTransform with a scale factor of -1 for the x-axis,
+     * Every row of the original is copied in reverse order,
      * which results in a mirror image of the original.
      * 
      * @param image The BufferedImage to be flipped.
      * @return A new BufferedImage that is the horizontal flip of the original.
      */
+    @SuppressWarnings("try")
     public static BufferedImage flipImage(BufferedImage image) {
-    	BufferedImage fliped = new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
-    	AffineTransform tx = AffineTransform.getScaleInstance(-1, 1);
-    	tx.translate(-image.getWidth(null), 0);
-    	AffineTransformOp op = new AffineTransformOp(tx, AffineTransformOp.TYPE_NEAREST_NEIGHBOR);
-    	fliped = op.filter(image, null);
-    	return fliped;
+        try (Timing timing = MetricsRegistry.time(Area.IMAGE, "flipImage", image)) {
+            return orientImage(image, Orientation.FLIP_HORIZONTAL);
+        }
+    }
+    
+    /**
+     * Helper method that runs a pixel kernel over a normalized copy of the image,
+     * in parallel bands of rows.
+     * 
+     * @param image The source image.
+     * @param kernel The per-pixel operation.
+     */
+    private static BufferedImage applyKernel(BufferedImage image, IntUnaryOperator kernel) {
+        BufferedImage source = PixelKernelUtility.normalize(image);
+        BufferedImage result = PixelKernelUtility.createCompatibleImage(source);
+        ParallelProcessingUtility.forEachRowBand(source.getWidth(), source.getHeight(),
+                (fromRow, toRow) -> PixelKernelUtility.apply(source, result, kernel, fromRow, toRow));
+        return result;
     }
     
     /**
-     * Helper method to clamp pixel values between 0 and 255.
+     * Helper method that creates an empty image with the same color model and the same
+     * pixel layout as the given one, so it keeps its type. It also works for images of TYPE_CUSTOM.
      * 
-     * @param value The pixel's value.
+     * @param image The model image.
+     * @param width The width of the new image.
+     * @param height The height of the new image.
      */
-    private static int clamp(int value) {
-        return Math.min(255, Math.max(0, value));
+    private static BufferedImage createImage(BufferedImage image, int width, int height) {
+        ColorModel colorModel = image.getColorModel();
+        return new BufferedImage(colorModel, image.getRaster().createCompatibleWritableRaster(width, height),
+                colorModel.isAlphaPremultiplied(), null);
+    }
+    
+    /**
+     * Helper method that reverses the order of the pixels in a line of samples.
+     * 
+     * @param line The samples, bands values for every pixel.
+     * @param pixels The number of pixels in the line.
+     * @param bands The number of samples per pixel.
+     */
+    private static void reversePixels(int[] line, int pixels, int bands) {
+        for (int left = 0, right = (pixels - 1) * bands; left < right; left += bands, right -= bands) {
+            for (int b = 0; b < bands; b++) {
+                int sample = line[left + b];
+                line[left + b] = line[right + b];
+                line[right + b] = sample;
+            }
+        }
     }
     
 }
@@ -0,0 +1,144 @@
+package Utility;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * ImagePyramid holds an image and successive half resolution copies of it (mipmap levels),
+ * down to MIN_LEVEL_SIZE pixels. The levels are generated in the background; until a
+ * level is ready the next larger one is used instead.
+ * Zoomed out views, previews and thumbnails sample from the smallest level that still
+ * has enough pixels, instead of downsampling the full image every time.
+ */
+public class ImagePyramid {
+
+	public static final int MIN_LEVEL_SIZE = 64;
+
+	private static final ExecutorService GENERATOR = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "PhotoDitE-pyramid");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final AtomicReferenceArray<BufferedImage> levels;
+	private volatile boolean invalidated = false;
+
+	/**
+	 * Creates the pyramid of an image and starts generating its levels in the background.
+	 *
+	 * @param image The full resolution image, level 0 of the pyramid.
+	 */
+	public ImagePyramid(BufferedImage image) {
+		int count = 1;
+		for (int w = image.getWidth(), h = image.getHeight(); Math.max(w, h) / 2 >= MIN_LEVEL_SIZE; w /= 2, h /= 2) {
+			count++;
+		}
+		levels = new AtomicReferenceArray<>(count);
+		levels.set(0, image);
+		if (count > 1) {
+			GENERATOR.execute(this::generate);
+		}
+	}
+
+	/**
+	 * Returns the full resolution image.
+	 *
+	 * @return Level 0 of the pyramid.
+	 */
+	public BufferedImage getImage() {
+		return levels.get(0);
+	}
+
+	public int getLevelCount() {
+		return levels.length();
+	}
+
+	/**
+	 * Returns a level of the pyramid. Level k is about 1 / 2^k of the full size.
+	 *
+	 * @param level The index of the level.
+	 * @return The image of the level, or null if it isn't generated yet.
+	 */
+	public BufferedImage getLevel(int level) {
+		return levels.get(level);
+	}
+
+	/**
+	 * Checks if all the levels are generated.
+	 *
+	 * @return True if every level is available.
+	 */
+	public boolean isComplete() {
+		return levels.get(levels.length() - 1) != null;
+	}
+
+	/**
+	 * Returns the smallest available level that is at least as large as the image
+	 * scaled by the given factor.
+	 *
+	 * @param scale The display scale relative to the full image (1.0 is full size).
+	 * @return The level to sample from.
+	 */
+	public BufferedImage levelFor(double scale) {
+		int level = 0;
+		while (level + 1 < levels.length() && Math.pow(0.5, level + 1) >= scale) {
+			level++;
+		}
+		for (; level > 0; level--) {
+			BufferedImage image = levels.get(level);
+			if (image != null) {
+				return image;
+			}
+		}
+		return levels.get(0);
+	}
+
+	/**
+	 * Creates a thumbnail that fits in a square, sampled from the nearest level.
+	 *
+	 * @param maxSize The maximum width and height of the thumbnail.
+	 * @return A new BufferedImage no larger than maxSize x maxSize.
+	 */
+	public BufferedImage getThumbnail(int maxSize) {
+		BufferedImage image = getImage();
+		BufferedImage source = levelFor((double) maxSize / Math.max(image.getWidth(), image.getHeight()));
+		double scale = (double) maxSize / Math.max(source.getWidth(), source.getHeight());
+		if (scale >= 1.0) {
+			return source;
+		}
+		return ImageProcessorUtility.zoomImage(source, scale);
+	}
+
+	/**
+	 * Stops generating levels, because the image was edited and the pyramid is outdated.
+	 */
+	public void invalidate() {
+		invalidated = true;
+	}
+
+	private void generate() {
+		for (int level = 1; level < levels.length() && !invalidated; level++) {
+			levels.set(level, halve(levels.get(level - 1)));
+		}
+	}
+
+	/**
+	 * Helper method that scales an image to half its size. Bilinear sampling at exactly
+	 * half the size averages each 2x2 block of pixels.
+	 *
+	 * @param image The image to scale down.
+	 */
+	private static BufferedImage halve(BufferedImage image) {
+		BufferedImage source = PixelKernelUtility.normalize(image);
+		BufferedImage half = PixelKernelUtility.createCompatibleImage(source, Math.max(1, source.getWidth() / 2), Math.max(1, source.getHeight() / 2));
+		Graphics2D g = half.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g.drawImage(source, 0, 0, half.getWidth(), half.getHeight(), 0, 0, half.getWidth() * 2, half.getHeight() * 2, null);
+		g.dispose();
+		return half;
+	}
+}
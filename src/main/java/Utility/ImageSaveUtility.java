@@ -1,13 +1,38 @@
 package Utility;
 
+import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import javax.imageio.event.IIOWriteProgressListener;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+
+import Utility.MetricsRegistry.Area;
+import Utility.MetricsRegistry.Timing;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
 import project.Project;
@@ -15,63 +40,660 @@ import project.Project;
 /**
  * ImageSave is a utility class for saving images to disk.
  * It allows the user to choose a file location and format for saving the current image.
+ * Images are encoded into a temporary file next to the destination, which is then renamed
+ * over it, so a crash in the middle of a save never leaves a truncated image behind.
+ * The asynchronous saves run on a background thread, one at a time; saves to a file that
+ * is already waiting to be written are merged into one write of the latest image.
+ * The encoders are created once per format and reused, and SaveOptions control their
+ * compression; measureEncoding reports what a setting costs in time and bytes.
+ * Large PNG images are compressed on all the cores by ParallelPngWriter, and JPEG projects
+ * that were only rotated or flipped are transformed by JpegTransformUtility without decoding.
+ * Projects too large to decode whole are written as PNG from their MappedTileStore.
  */
 public class ImageSaveUtility {
 
+	/**
+	 * Receives the progress and the outcome of an asynchronous save, on the EDT.
+	 */
+	public interface SaveListener {
+		/**
+		 * Called while the image is encoded.
+		 *
+		 * @param percent The part of the image that is written, from 0 to 100.
+		 */
+		void progress(int percent);
+
+		/**
+		 * Called once the save is over.
+		 *
+		 * @param file The file that was written.
+		 * @param error The error that stopped the save, or null if it succeeded.
+		 */
+		void saved(File file, IOException error);
+	}
+
+	/**
+	 * The time and the size of an encoding.
+	 */
+	public static class EncodingMeasurement {
+		private final String format;
+		private final SaveOptions options;
+		private final long nanos;
+		private final long bytes;
+
+		EncodingMeasurement(String format, SaveOptions options, long nanos, long bytes) {
+			this.format = format;
+			this.options = options;
+			this.nanos = nanos;
+			this.bytes = bytes;
+		}
+
+		public SaveOptions getOptions() {
+			return options;
+		}
+
+		/**
+		 * Returns the time the encoding took.
+		 *
+		 * @return The time in nanoseconds.
+		 */
+		public long getNanos() {
+			return nanos;
+		}
+
+		/**
+		 * Returns the size of the encoded image.
+		 *
+		 * @return The size in bytes.
+		 */
+		public long getBytes() {
+			return bytes;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s (%s): %.1f ms, %d bytes", format, options, nanos / 1e6, bytes);
+		}
+	}
+
+	/**
+	 * A save waiting to be written. Later saves to the same file replace its image.
+	 * The orientation, if any, turns the file as it is on disk into the image.
+	 */
+	private static class SaveRequest {
+		BufferedImage image;
+		Project tiles;
+		String format;
+		SaveOptions options;
+		Orientation orientation;
+		final List<SaveListener> listeners = new ArrayList<>();
+	}
+
+	private static final ExecutorService SAVER = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "PhotoDitE-save");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private static final Map<File, SaveRequest> pending = new HashMap<>();
+	private static final Map<String, Deque<ImageWriter>> writers = new HashMap<>();
+	private static long parallelPngPixels = Long.getLong("photodite.parallelPngPixels", 1024 * 1024);
+
 	/**
      * Saves the current image to a file.
      * Opens a file chooser dialog to allow the user to select the destination and file format (PNG, JPG, or JPEG).
      * If the image format is not specified by the user, it defaults to PNG.
      * If no image is available, it shows an error message.
-     * 
+     *
      * @param currentImage The BufferedImage to be saved.
      * @param MainFrame The JFrame that is used to show error messages.
      */
 	public static void saveAsImage(BufferedImage currentImage, JFrame MainFrame) {
+		saveAsImage(currentImage, MainFrame, null);
+	}
+
+	/**
+     * Saves the current image to a file chosen by the user, in the background.
+     * Opens a file chooser dialog to allow the user to select the destination and file format (PNG, JPG, or JPEG).
+     * If the image format is not specified by the user, it defaults to PNG.
+     * If no image is available, or the save fails, it shows an error message.
+     *
+     * @param currentImage The BufferedImage to be saved. It must not be modified afterwards.
+     * @param MainFrame The JFrame that is used to show error messages.
+     * @param listener Receives the progress of the save, or null.
+     * @return True if a save was started, false if there was no image or the user cancelled.
+     */
+	public static boolean saveAsImage(BufferedImage currentImage, JFrame MainFrame, SaveListener listener) {
         if (currentImage == null) {
             JOptionPane.showMessageDialog(null, "No image to save!", "Error", JOptionPane.ERROR_MESSAGE);
-            return;
+            return false;
+        }
+
+        File image = chooseFile(MainFrame, new FileNameExtensionFilter("Images (.png, .jpg, .jpeg)", "png", "jpg", "jpeg"));
+        if (image != null) {
+            String format = image.getName().substring(image.getName().lastIndexOf('.') + 1).toLowerCase();
+
+            saveAsync(currentImage, format, image, SaveOptions.DEFAULT, reportingListener(MainFrame, listener));
+            return true;
+        }
+        return false;
+    }
+
+	/**
+     * Saves the image of a project too large to decode whole to a PNG file chosen by the user, in the background.
+     * The file of the project is decoded into its tile store, if it isn't already, rotated and flipped tile by tile
+     * and written from the store, so the image never has to fit in the heap.
+     *
+     * @param project The project, which has a region loader.
+     * @param orientation The rotations and flips applied to the file of the project.
+     * @param MainFrame The JFrame that is used to show error messages.
+     * @param listener Receives the progress of the save, or null.
+     * @return True if a save was started, false if the user cancelled.
+     */
+	public static boolean saveTilesAs(Project project, Orientation orientation, JFrame MainFrame, SaveListener listener) {
+        File image = chooseFile(MainFrame, new FileNameExtensionFilter("PNG images (.png)", "png"));
+        if (image == null) {
+            return false;
+        }
+        if (!image.getName().toLowerCase().endsWith(".png")) {
+            image = new File(image.getPath() + ".png");
         }
-        
+        queue(null, project, "png", image, SaveOptions.DEFAULT, orientation, reportingListener(MainFrame, listener));
+        return true;
+    }
+
+	/**
+	 * Helper method that asks the user for the file to save to. A name without the extension of
+	 * one of the formats gets the PNG extension.
+	 *
+	 * @return The file, or null if the user cancelled.
+	 */
+	private static File chooseFile(JFrame MainFrame, FileNameExtensionFilter formats) {
         JFileChooser fileChooser = new JFileChooser();
         fileChooser.setDialogTitle("Save Image");
         fileChooser.setAcceptAllFileFilterUsed(false);
-        fileChooser.setFileFilter(new FileNameExtensionFilter("Images (.png, .jpg, .jpeg)", "png", "jpg", "jpeg"));
-        
-        int selected = fileChooser.showSaveDialog(MainFrame);
-
-        if (selected == JFileChooser.APPROVE_OPTION) {
-            File image = fileChooser.getSelectedFile();
-
-            String fileName = image.getAbsolutePath();
-            if (!fileName.toLowerCase().endsWith(".png") && !fileName.toLowerCase().endsWith(".jpg") && !fileName.toLowerCase().endsWith(".jpeg")) {
-                image = new File(fileName + ".png");
-            }
-
-            try {
-            	if(image.getAbsolutePath().toLowerCase().endsWith(".png"))
-            		ImageIO.write(currentImage, "png", image);
-            	if(image.getAbsolutePath().toLowerCase().endsWith(".jpg"))
-            		ImageIO.write(currentImage, "jpg", image);
-            	if(image.getAbsolutePath().toLowerCase().endsWith(".jpeg"))
-            		ImageIO.write(currentImage, "jpeg", image);
-            	
-            } catch (IOException ex) {
-                JOptionPane.showMessageDialog(MainFrame, "Failed to save the image!", "Error", JOptionPane.ERROR_MESSAGE);
-            }
+        fileChooser.setFileFilter(formats);
+
+        if (fileChooser.showSaveDialog(MainFrame) != JFileChooser.APPROVE_OPTION) {
+        	return null;
         }
-    }
-	
+        File image = fileChooser.getSelectedFile();
+        String fileName = image.getAbsolutePath();
+        if (!fileName.toLowerCase().endsWith(".png") && !fileName.toLowerCase().endsWith(".jpg") && !fileName.toLowerCase().endsWith(".jpeg")) {
+            image = new File(fileName + ".png");
+        }
+        return image;
+	}
+
+	/**
+	 * Helper method that wraps a listener of a save started from a dialog, showing an error message if the save fails.
+	 */
+	private static SaveListener reportingListener(JFrame MainFrame, SaveListener listener) {
+		return new SaveListener() {
+			@Override
+			public void progress(int percent) {
+				if (listener != null) {
+					listener.progress(percent);
+				}
+			}
+
+			@Override
+			public void saved(File file, IOException error) {
+				if (error != null) {
+					error.printStackTrace();
+					JOptionPane.showMessageDialog(MainFrame, "Failed to save the image!", "Error", JOptionPane.ERROR_MESSAGE);
+				}
+				if (listener != null) {
+					listener.saved(file, error);
+				}
+			}
+		};
+	}
+
 	/**
      * Saves the current image to the file at the path of the project.
-     * 
+     *
      * @param project The current project that contains all the information needed for the save.
      */
 	public static void saveImage(Project project) {
+		saveImage(project, project.getImage());
+	}
+
+	/**
+     * Saves an image to the file at the path of the project.
+     *
+     * @param project The current project that contains the path and the type of the file.
+     * @param image The BufferedImage to be saved.
+     */
+	public static void saveImage(Project project, BufferedImage image) {
 		try {
-			ImageIO.write(project.getImage(), project.getType().toLowerCase(), new File(project.getPath()));
+			writeAtomically(image, project.getType().toLowerCase(), new File(project.getPath()), SaveOptions.DEFAULT, null);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 	}
+
+	/**
+     * Saves an image to the file at the path of the project, in the background.
+     *
+     * @param project The current project that contains the path and the type of the file.
+     * @param image The BufferedImage to be saved. It must not be modified afterwards.
+     * @param listener Receives the progress and the outcome of the save, or null.
+     */
+	public static void saveImageAsync(Project project, BufferedImage image, SaveListener listener) {
+		saveImageAsync(project, image, null, listener);
+	}
+
+	/**
+     * Saves an image to the file at the path of the project, in the background. If the image
+     * is the file of the project only rotated or flipped, a JPEG file is transformed losslessly
+     * instead of being encoded again; the image is encoded when that isn't possible.
+     *
+     * @param project The current project that contains the path and the type of the file.
+     * @param image The BufferedImage to be saved. It must not be modified afterwards.
+     * @param orientation The rotations and flips that turn the file into the image, or null
+     * if the image was edited otherwise.
+     * @param listener Receives the progress and the outcome of the save, or null.
+     */
+	public static void saveImageAsync(Project project, BufferedImage image, Orientation orientation, SaveListener listener) {
+		queue(image, null, project.getType().toLowerCase(), new File(project.getPath()), SaveOptions.DEFAULT, orientation, listener);
+	}
+
+	/**
+	 * Saves an image in the background with the default encoder settings.
+	 *
+	 * @param image The image to be saved.
+	 * @param format The format of the file (png, jpg or jpeg).
+	 * @param file The destination file.
+	 * @param listener Receives the progress and the outcome of the save, or null.
+	 */
+	public static void saveAsync(BufferedImage image, String format, File file, SaveListener listener) {
+		saveAsync(image, format, file, SaveOptions.DEFAULT, listener);
+	}
+
+	/**
+	 * Writes an image to a file in the background. If a save to the same file is still waiting,
+	 * it is replaced by this one, and both listeners are notified when the file is written.
+	 * The image isn't copied, so it must not be modified after it is handed over; the edited
+	 * images of the application are always new images, never modified in place.
+	 *
+	 * @param image The image to be saved.
+	 * @param format The format of the file (png, jpg or jpeg).
+	 * @param file The destination file.
+	 * @param options The encoder settings.
+	 * @param listener Receives the progress and the outcome of the save, or null.
+	 */
+	public static void saveAsync(BufferedImage image, String format, File file, SaveOptions options, SaveListener listener) {
+		queue(image, null, format, file, options, null, listener);
+	}
+
+	private static void queue(BufferedImage image, Project tiles, String format, File file, SaveOptions options, Orientation orientation, SaveListener listener) {
+		File target = file.getAbsoluteFile();
+		synchronized (pending) {
+			SaveRequest request = pending.get(target);
+			boolean queued = request != null;
+			if (!queued) {
+				request = new SaveRequest();
+				pending.put(target, request);
+			}
+			// a queued transformation hasn't touched the file yet, so the two are composed;
+			// tiles are oriented from the file of the project, whatever the target holds
+			if (tiles != null) {
+				request.orientation = orientation;
+			} else if (orientation == null || (queued && (request.orientation == null || request.tiles != null))) {
+				request.orientation = null;
+			} else {
+				request.orientation = queued ? request.orientation.then(orientation) : orientation;
+			}
+			request.image = image;
+			request.tiles = tiles;
+			request.format = format;
+			request.options = options;
+			if (listener != null) {
+				request.listeners.add(listener);
+			}
+			if (queued) {
+				return;
+			}
+		}
+		SAVER.execute(() -> write(target));
+	}
+
+	/**
+	 * Runs a task on the EDT once every save requested before it has been written,
+	 * for example to exit the application without cutting a save short.
+	 *
+	 * @param task The task to run.
+	 */
+	public static void whenSaved(Runnable task) {
+		SAVER.execute(() -> SwingUtilities.invokeLater(task));
+	}
+
+	/**
+	 * Writes an image atomically with the default encoder settings.
+	 *
+	 * @param image The image to be saved.
+	 * @param format The format of the file (png, jpg or jpeg).
+	 * @param file The destination file.
+	 * @param listener Receives the progress on the calling thread, or null.
+	 * @throws IOException If the image can't be encoded or the file can't be written.
+	 */
+	public static void writeAtomically(BufferedImage image, String format, File file, SaveListener listener) throws IOException {
+		writeAtomically(image, format, file, SaveOptions.DEFAULT, listener);
+	}
+
+	/**
+	 * Encodes an image into a temporary file in the directory of the destination,
+	 * then renames it over the destination.
+	 *
+	 * @param image The image to be saved.
+	 * @param format The format of the file (png, jpg or jpeg).
+	 * @param file The destination file.
+	 * @param options The encoder settings.
+	 * @param listener Receives the progress on the calling thread, or null.
+	 * @throws IOException If the image can't be encoded or the file can't be written.
+	 */
+	@SuppressWarnings("try")
+	public static void writeAtomically(BufferedImage image, String format, File file, SaveOptions options, SaveListener listener) throws IOException {
+		File target = file.getAbsoluteFile();
+		File temp = File.createTempFile(target.getName(), ".tmp", target.getParentFile());
+		try (Timing timing = MetricsRegistry.time(Area.IO, "save", target.getPath())) {
+			try (ImageOutputStream output = ImageIO.createImageOutputStream(temp)) {
+				encode(image, format, options, output, listener);
+			}
+			MetricsRegistry.counter("io.bytesWritten").add(temp.length());
+			replace(temp, target);
+		} finally {
+			temp.delete();
+		}
+	}
+
+	/**
+	 * Writes an image held in a MappedTileStore as a PNG, into a temporary file in the directory of the
+	 * destination that is then renamed over it. The rows are compressed on all the cores by ParallelPngWriter.
+	 *
+	 * @param tiles The image to be saved.
+	 * @param file The destination file.
+	 * @param options The encoder settings, only the compression applies.
+	 * @param listener Receives the progress on the calling thread, or null.
+	 * @throws IOException If the store can't be read or the file can't be written.
+	 */
+	@SuppressWarnings("try")
+	public static void writeAtomically(MappedTileStore tiles, File file, SaveOptions options, SaveListener listener) throws IOException {
+		File target = file.getAbsoluteFile();
+		File temp = File.createTempFile(target.getName(), ".tmp", target.getParentFile());
+		try (Timing timing = MetricsRegistry.time(Area.IO, "save", target.getPath())) {
+			try (OutputStream output = new BufferedOutputStream(new FileOutputStream(temp))) {
+				new ParallelPngWriter(ParallelPngWriter.levelOf(options)).write(tiles, output, listener);
+			}
+			MetricsRegistry.counter("io.bytesWritten").add(temp.length());
+			replace(temp, target);
+		} finally {
+			temp.delete();
+		}
+	}
+
+	/**
+	 * Rotates or flips a JPEG file in place without decoding it, through a temporary file
+	 * that is renamed over it.
+	 *
+	 * @param file The JPEG file.
+	 * @param orientation The transformation to apply.
+	 * @return False if the file can't be transformed losslessly and was left as it is.
+	 * @throws IOException If the file can't be read or written.
+	 */
+	@SuppressWarnings("try")
+	public static boolean transformAtomically(File file, Orientation orientation) throws IOException {
+		File target = file.getAbsoluteFile();
+		try (Timing timing = MetricsRegistry.time(Area.IO, "transform", target.getPath())) {
+			byte[] transformed = JpegTransformUtility.transform(Files.readAllBytes(target.toPath()), orientation);
+			if (transformed == null) {
+				return false;
+			}
+			File temp = File.createTempFile(target.getName(), ".tmp", target.getParentFile());
+			try {
+				Files.write(temp.toPath(), transformed);
+				MetricsRegistry.counter("io.bytesWritten").add(transformed.length);
+				replace(temp, target);
+			} finally {
+				temp.delete();
+			}
+			return true;
+		}
+	}
+
+	private static void replace(File temp, File target) throws IOException {
+		try {
+			Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private static void write(File target) {
+		SaveRequest request;
+		synchronized (pending) {
+			request = pending.remove(target);
+		}
+		List<SaveListener> listeners = request.listeners;
+		IOException error = null;
+		SaveListener progress = new SaveListener() {
+			private int reported = -1;
+
+			@Override
+			public void progress(int percent) {
+				if (percent != reported) {
+					reported = percent;
+					SwingUtilities.invokeLater(() -> listeners.forEach(listener -> listener.progress(percent)));
+				}
+			}
+
+			@Override
+			public void saved(File file, IOException saveError) {
+			}
+		};
+		try {
+			boolean jpeg = request.format.equals("jpg") || request.format.equals("jpeg");
+			if (request.tiles != null) {
+				writeTiles(request.tiles, request.orientation, target, request.options, progress);
+			} else if (request.orientation != null && jpeg && target.isFile() && transformAtomically(target, request.orientation)) {
+				progress.progress(100);
+			} else {
+				writeAtomically(request.image, request.format, target, request.options, progress);
+			}
+		} catch (IOException | RuntimeException e) {
+			error = e instanceof IOException ? (IOException) e : new IOException(e);
+			synchronized (pending) {
+				// a transformation queued behind this one expected the file this save didn't write
+				SaveRequest next = pending.get(target);
+				if (next != null && next.tiles == null) {
+					next.orientation = null;
+				}
+			}
+		}
+		IOException outcome = error;
+		SwingUtilities.invokeLater(() -> listeners.forEach(listener -> listener.saved(target, outcome)));
+	}
+
+	/**
+	 * Helper method that writes the tile store of a project, rotated and flipped tile by tile into a temporary store first.
+	 */
+	private static void writeTiles(Project project, Orientation orientation, File target, SaveOptions options, SaveListener listener) throws IOException {
+		MappedTileStore tiles = project.getTileStore();
+		if (orientation == Orientation.NORMAL) {
+			writeAtomically(tiles, target, options, listener);
+			return;
+		}
+		try (MappedTileStore oriented = tiles.orient(orientation)) {
+			writeAtomically(oriented, target, options, listener);
+		}
+	}
+
+	/**
+	 * Returns the number of pixels from which PNG images are written by ParallelPngWriter.
+	 *
+	 * @return The threshold in pixels.
+	 */
+	public static synchronized long getParallelPngPixels() {
+		return parallelPngPixels;
+	}
+
+	/**
+	 * Sets the number of pixels from which PNG images are written by ParallelPngWriter.
+	 * Long.MAX_VALUE always uses the ImageIO encoder.
+	 *
+	 * @param pixels The threshold in pixels.
+	 */
+	public static synchronized void setParallelPngPixels(long pixels) {
+		parallelPngPixels = Math.max(0, pixels);
+	}
+
+	/**
+	 * Encodes an image into a stream with a cached encoder of the format, or with
+	 * ParallelPngWriter for large 8-bit RGB(A) PNG images that are not interlaced.
+	 *
+	 * @param image The image to be encoded.
+	 * @param format The format (png, jpg or jpeg).
+	 * @param options The encoder settings.
+	 * @param output The stream the image is written to.
+	 * @param listener Receives the progress on the calling thread, or null.
+	 * @throws IOException If the image can't be encoded.
+	 */
+	public static void encode(BufferedImage image, String format, SaveOptions options, ImageOutputStream output, SaveListener listener) throws IOException {
+		if (format.equalsIgnoreCase("png") && !options.isProgressive() && ParallelProcessingUtility.getParallelism() > 1
+				&& (long) image.getWidth() * image.getHeight() >= getParallelPngPixels() && ParallelPngWriter.canEncode(image)) {
+			new ParallelPngWriter(ParallelPngWriter.levelOf(options)).write(image, new OutputStream() {
+				@Override
+				public void write(int b) throws IOException {
+					output.write(b);
+				}
+
+				@Override
+				public void write(byte[] b, int off, int len) throws IOException {
+					output.write(b, off, len);
+				}
+			}, listener);
+			output.flush();
+			return;
+		}
+		ImageWriter writer = borrowWriter(format);
+		try {
+			if (listener != null) {
+				writer.addIIOWriteProgressListener(new ProgressAdapter(listener));
+			}
+			BufferedImage encoded = image;
+			if (!writer.getOriginatingProvider().canEncodeImage(image)) {
+				encoded = withoutAlpha(image);
+			}
+			writer.setOutput(output);
+			writer.write(null, new IIOImage(encoded, null, null), options.applyTo(writer.getDefaultWriteParam()));
+			output.flush();
+		} finally {
+			returnWriter(format, writer);
+		}
+	}
+
+	/**
+	 * Encodes an image in memory and measures how long it takes and how large the result is,
+	 * to compare encoder settings. The encoded bytes are only counted, not kept.
+	 *
+	 * @param image The image to be encoded.
+	 * @param format The format (png, jpg or jpeg).
+	 * @param options The encoder settings.
+	 * @return The time and the size of the encoding.
+	 * @throws IOException If the image can't be encoded.
+	 */
+	public static EncodingMeasurement measureEncoding(BufferedImage image, String format, SaveOptions options) throws IOException {
+		long[] bytes = new long[1];
+		OutputStream counter = new OutputStream() {
+			@Override
+			public void write(int b) {
+				bytes[0]++;
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+				bytes[0] += len;
+			}
+		};
+		long start = System.nanoTime();
+		try (ImageOutputStream output = new MemoryCacheImageOutputStream(counter)) {
+			encode(image, format, options, output, null);
+		}
+		return new EncodingMeasurement(format, options, System.nanoTime() - start, bytes[0]);
+	}
+
+	private static ImageWriter borrowWriter(String format) throws IOException {
+		String key = format.toLowerCase();
+		synchronized (writers) {
+			Deque<ImageWriter> cached = writers.get(key);
+			if (cached != null && !cached.isEmpty()) {
+				return cached.pop();
+			}
+		}
+		Iterator<ImageWriter> available = ImageIO.getImageWritersByFormatName(key);
+		if (!available.hasNext()) {
+			throw new IOException("No writer for the format " + format);
+		}
+		return available.next();
+	}
+
+	private static void returnWriter(String format, ImageWriter writer) {
+		writer.reset();
+		synchronized (writers) {
+			writers.computeIfAbsent(format.toLowerCase(), key -> new ArrayDeque<>()).push(writer);
+		}
+	}
+
+	/**
+	 * Helper method that draws an image over an opaque image, for formats without transparency.
+	 */
+	private static BufferedImage withoutAlpha(BufferedImage image) {
+		BufferedImage opaque = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = opaque.createGraphics();
+		g.drawImage(image, 0, 0, null);
+		g.dispose();
+		return opaque;
+	}
+
+	/**
+	 * Forwards the progress of an ImageWriter as whole percents.
+	 */
+	private static class ProgressAdapter implements IIOWriteProgressListener {
+		private final SaveListener listener;
+
+		ProgressAdapter(SaveListener listener) {
+			this.listener = listener;
+		}
+
+		@Override
+		public void imageStarted(ImageWriter source, int imageIndex) {
+			listener.progress(0);
+		}
+
+		@Override
+		public void imageProgress(ImageWriter source, float percentageDone) {
+			listener.progress(Math.min(100, (int) percentageDone));
+		}
+
+		@Override
+		public void imageComplete(ImageWriter source) {
+			listener.progress(100);
+		}
+
+		@Override
+		public void thumbnailStarted(ImageWriter source, int imageIndex, int thumbnailIndex) {
+		}
+
+		@Override
+		public void thumbnailProgress(ImageWriter source, float percentageDone) {
+		}
+
+		@Override
+		public void thumbnailComplete(ImageWriter source) {
+		}
+
+		@Override
+		public void writeAborted(ImageWriter source) {
+		}
+	}
 }
@@ -0,0 +1,833 @@
+package Utility;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * JpegTransformUtility rotates and flips JPEG files without decoding them to pixels, like
+ * jpegtran does. The Huffman coded DCT coefficients are decoded, every 8x8 block is moved to
+ * its new place and its coefficients are transposed or change sign, and they are coded again,
+ * so the image loses no quality however many times it is turned.
+ * Only sequential Huffman coded 8-bit JPEGs are supported. When a mirrored edge of the image
+ * doesn't end on a whole MCU, its partial blocks can't be moved without changing the picture,
+ * so the transformation is refused and the caller re-encodes the pixels instead.
+ */
+public class JpegTransformUtility {
+
+	private static final int[] ZIGZAG = {
+		0, 1, 8, 16, 9, 2, 3, 10, 17, 24, 32, 25, 18, 11, 4, 5,
+		12, 19, 26, 33, 40, 48, 41, 34, 27, 20, 13, 6, 7, 14, 21, 28,
+		35, 42, 49, 56, 57, 50, 43, 36, 29, 22, 15, 23, 30, 37, 44, 51,
+		58, 59, 52, 45, 38, 31, 39, 46, 53, 60, 61, 54, 47, 55, 62, 63
+	};
+
+	/**
+	 * Thrown when a file uses a feature the transformation doesn't support or is corrupt.
+	 */
+	private static class UnsupportedJpegException extends Exception {
+		private static final long serialVersionUID = 1L;
+
+		UnsupportedJpegException(String message) {
+			super(message);
+		}
+	}
+
+	/**
+	 * A Huffman table, for decoding and for encoding.
+	 */
+	private static class HuffmanTable {
+		final int[] counts = new int[17];
+		final int[] values;
+		final int[] maxCode = new int[18];
+		final int[] valuePointer = new int[17];
+		final int[] minCode = new int[17];
+		final int[] codes = new int[256];
+		final int[] sizes = new int[256];
+
+		HuffmanTable(int[] counts, int[] values) {
+			System.arraycopy(counts, 0, this.counts, 0, 17);
+			this.values = values;
+			int code = 0;
+			int k = 0;
+			for (int length = 1; length <= 16; length++) {
+				valuePointer[length] = k;
+				minCode[length] = code;
+				for (int i = 0; i < counts[length]; i++) {
+					codes[values[k]] = code++;
+					sizes[values[k]] = length;
+					k++;
+				}
+				maxCode[length] = counts[length] == 0 ? -1 : code - 1;
+				code <<= 1;
+			}
+			maxCode[17] = Integer.MAX_VALUE;
+		}
+	}
+
+	/**
+	 * A component of the frame with its quantized coefficients, in natural order, for
+	 * every block of the MCUs that cover the image.
+	 */
+	private static class Component {
+		int id;
+		int h;
+		int v;
+		int quantTable;
+		int blocksWide;
+		int blocksHigh;
+		short[] coefficients;
+	}
+
+	/**
+	 * A scan: its header and the components and tables it codes.
+	 */
+	private static class Scan {
+		Component[] components;
+		int[] dcTables;
+		int[] acTables;
+		HuffmanTable[] dc;
+		HuffmanTable[] ac;
+		int restartInterval;
+		long[][] dcFrequencies;
+		long[][] acFrequencies;
+		ByteArrayOutputStream optimized;
+		byte[] encoded;
+	}
+
+	/**
+	 * A segment of the output: copied, rebuilt, or a scan that is coded again.
+	 */
+	private static class Segment {
+		final int marker;
+		final byte[] data;
+		final Scan scan;
+
+		Segment(int marker, byte[] data, Scan scan) {
+			this.marker = marker;
+			this.data = data;
+			this.scan = scan;
+		}
+	}
+
+	/**
+	 * Rotates or flips a JPEG file without decoding its pixels.
+	 *
+	 * @param jpeg The content of the JPEG file.
+	 * @param orientation The transformation to apply.
+	 * @return The content of the transformed file, or null if it can't be transformed
+	 * losslessly and must be re-encoded from pixels.
+	 */
+	public static byte[] transform(byte[] jpeg, Orientation orientation) {
+		try {
+			return new JpegTransformUtility().run(jpeg, orientation);
+		} catch (UnsupportedJpegException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	private final HuffmanTable[] dcTables = new HuffmanTable[4];
+	private final HuffmanTable[] acTables = new HuffmanTable[4];
+	private final List<Segment> segments = new ArrayList<>();
+	private final List<Scan> scans = new ArrayList<>();
+	private Component[] components;
+	private int width;
+	private int height;
+	private int maxH;
+	private int maxV;
+	private int restartInterval;
+
+	private JpegTransformUtility() {
+	}
+
+	private byte[] run(byte[] jpeg, Orientation orientation) throws UnsupportedJpegException {
+		parse(jpeg);
+		if (components == null || scans.isEmpty()) {
+			throw new UnsupportedJpegException("No image data");
+		}
+		boolean mirrorsSourceX = orientation.transposes() ? orientation.mirrorsY() : orientation.mirrorsX();
+		boolean mirrorsSourceY = orientation.transposes() ? orientation.mirrorsX() : orientation.mirrorsY();
+		if ((mirrorsSourceX && width % (8 * maxH) != 0) || (mirrorsSourceY && height % (8 * maxV) != 0)) {
+			throw new UnsupportedJpegException("Partial MCUs on a mirrored edge");
+		}
+		transformCoefficients(orientation);
+		boolean keepTables = true;
+		for (Scan scan : scans) {
+			keepTables &= encodeScan(scan, true);
+		}
+		if (!keepTables) {
+			for (Scan scan : scans) {
+				optimizeTables(scan);
+			}
+		}
+		for (Scan scan : scans) {
+			encodeScan(scan, false);
+		}
+		return write(orientation, keepTables);
+	}
+
+	private void parse(byte[] jpeg) throws UnsupportedJpegException {
+		if ((jpeg[0] & 0xFF) != 0xFF || (jpeg[1] & 0xFF) != 0xD8) {
+			throw new UnsupportedJpegException("Not a JPEG file");
+		}
+		int pos = 2;
+		while (true) {
+			while ((jpeg[pos] & 0xFF) == 0xFF && (jpeg[pos + 1] & 0xFF) == 0xFF) {
+				pos++;
+			}
+			if ((jpeg[pos] & 0xFF) != 0xFF) {
+				throw new UnsupportedJpegException("Marker expected");
+			}
+			int marker = jpeg[pos + 1] & 0xFF;
+			pos += 2;
+			if (marker == 0xD9) {
+				return;
+			}
+			int length = ((jpeg[pos] & 0xFF) << 8) | (jpeg[pos + 1] & 0xFF);
+			byte[] data = Arrays.copyOfRange(jpeg, pos + 2, pos + length);
+			pos += length;
+			switch (marker) {
+			case 0xC0:
+			case 0xC1:
+				parseFrame(data);
+				segments.add(new Segment(marker, data, null));
+				break;
+			case 0xC4:
+				parseHuffmanTables(data);
+				segments.add(new Segment(marker, data, null));
+				break;
+			case 0xDD:
+				restartInterval = ((data[0] & 0xFF) << 8) | (data[1] & 0xFF);
+				segments.add(new Segment(marker, data, null));
+				break;
+			case 0xDA:
+				Scan scan = parseScan(data);
+				pos = decodeScan(jpeg, pos, scan);
+				scans.add(scan);
+				segments.add(new Segment(marker, data, scan));
+				break;
+			case 0xDB:
+			case 0xFE:
+				segments.add(new Segment(marker, data, null));
+				break;
+			default:
+				if (marker >= 0xE0 && marker <= 0xEF) {
+					segments.add(new Segment(marker, data, null));
+				} else {
+					// progressive, lossless, arithmetic coded or hierarchical
+					throw new UnsupportedJpegException("Unsupported marker " + Integer.toHexString(marker));
+				}
+			}
+		}
+	}
+
+	private void parseFrame(byte[] data) throws UnsupportedJpegException {
+		if (components != null || data[0] != 8) {
+			throw new UnsupportedJpegException("Only one 8-bit frame is supported");
+		}
+		height = ((data[1] & 0xFF) << 8) | (data[2] & 0xFF);
+		width = ((data[3] & 0xFF) << 8) | (data[4] & 0xFF);
+		if (width == 0 || height == 0) {
+			throw new UnsupportedJpegException("Missing image size");
+		}
+		components = new Component[data[5] & 0xFF];
+		for (int i = 0; i < components.length; i++) {
+			Component component = new Component();
+			component.id = data[6 + 3 * i] & 0xFF;
+			component.h = components.length == 1 ? 1 : (data[7 + 3 * i] & 0xFF) >> 4;
+			component.v = components.length == 1 ? 1 : data[7 + 3 * i] & 0x0F;
+			component.quantTable = data[8 + 3 * i] & 0xFF;
+			components[i] = component;
+			maxH = Math.max(maxH, component.h);
+			maxV = Math.max(maxV, component.v);
+		}
+		int mcusWide = (width + 8 * maxH - 1) / (8 * maxH);
+		int mcusHigh = (height + 8 * maxV - 1) / (8 * maxV);
+		for (Component component : components) {
+			component.blocksWide = mcusWide * component.h;
+			component.blocksHigh = mcusHigh * component.v;
+			component.coefficients = new short[component.blocksWide * component.blocksHigh * 64];
+		}
+	}
+
+	private void parseHuffmanTables(byte[] data) {
+		int pos = 0;
+		while (pos < data.length) {
+			int tableClass = (data[pos] & 0xFF) >> 4;
+			int id = data[pos] & 0x03;
+			int[] counts = new int[17];
+			int total = 0;
+			for (int length = 1; length <= 16; length++) {
+				counts[length] = data[pos + length] & 0xFF;
+				total += counts[length];
+			}
+			int[] values = new int[total];
+			for (int i = 0; i < total; i++) {
+				values[i] = data[pos + 17 + i] & 0xFF;
+			}
+			pos += 17 + total;
+			(tableClass == 0 ? dcTables : acTables)[id] = new HuffmanTable(counts, values);
+		}
+	}
+
+	private Scan parseScan(byte[] data) throws UnsupportedJpegException {
+		if (components == null) {
+			throw new UnsupportedJpegException("Scan before the frame");
+		}
+		Scan scan = new Scan();
+		int count = data[0] & 0xFF;
+		scan.components = new Component[count];
+		scan.dcTables = new int[count];
+		scan.acTables = new int[count];
+		scan.dc = new HuffmanTable[count];
+		scan.ac = new HuffmanTable[count];
+		for (int i = 0; i < count; i++) {
+			int id = data[1 + 2 * i] & 0xFF;
+			for (Component component : components) {
+				if (component.id == id) {
+					scan.components[i] = component;
+				}
+			}
+			scan.dcTables[i] = ((data[2 + 2 * i] & 0xFF) >> 4) & 0x03;
+			scan.acTables[i] = data[2 + 2 * i] & 0x03;
+			scan.dc[i] = dcTables[scan.dcTables[i]];
+			scan.ac[i] = acTables[scan.acTables[i]];
+			if (scan.components[i] == null || scan.dc[i] == null || scan.ac[i] == null) {
+				throw new UnsupportedJpegException("Missing component or table");
+			}
+		}
+		int end = 1 + 2 * count;
+		if (data[end] != 0 || data[end + 1] != 63 || data[end + 2] != 0) {
+			throw new UnsupportedJpegException("Not a sequential scan");
+		}
+		scan.restartInterval = restartInterval;
+		return scan;
+	}
+
+	/**
+	 * Reads the entropy coded data of a scan, with its byte stuffing and restart markers.
+	 */
+	private static class BitReader {
+		final byte[] data;
+		int pos;
+		int buffer;
+		int bits;
+
+		BitReader(byte[] data, int pos) {
+			this.data = data;
+			this.pos = pos;
+		}
+
+		int bit() {
+			if (bits == 0) {
+				int b = data[pos] & 0xFF;
+				if (b == 0xFF) {
+					int next = data[pos + 1] & 0xFF;
+					if (next == 0) {
+						pos += 2;
+					} else {
+						// a marker ends the data, the decoder reads zeros like libjpeg
+						b = 0;
+					}
+				} else {
+					pos++;
+				}
+				buffer = b;
+				bits = 8;
+			}
+			bits--;
+			return (buffer >> bits) & 1;
+		}
+
+		int bits(int count) {
+			int value = 0;
+			for (int i = 0; i < count; i++) {
+				value = (value << 1) | bit();
+			}
+			return value;
+		}
+
+		int decode(HuffmanTable table) throws UnsupportedJpegException {
+			int code = bit();
+			int length = 1;
+			while (code > table.maxCode[length]) {
+				if (++length > 16) {
+					throw new UnsupportedJpegException("Bad Huffman code");
+				}
+				code = (code << 1) | bit();
+			}
+			return table.values[table.valuePointer[length] + code - table.minCode[length]];
+		}
+
+		int receiveExtend(int size) {
+			if (size == 0) {
+				return 0;
+			}
+			int value = bits(size);
+			return value < (1 << (size - 1)) ? value - (1 << size) + 1 : value;
+		}
+
+		/**
+		 * Skips to the next marker and returns its code.
+		 */
+		int nextMarker() {
+			bits = 0;
+			while (!((data[pos] & 0xFF) == 0xFF && (data[pos + 1] & 0xFF) != 0 && (data[pos + 1] & 0xFF) != 0xFF)) {
+				pos++;
+			}
+			return data[pos + 1] & 0xFF;
+		}
+	}
+
+	private int decodeScan(byte[] jpeg, int pos, Scan scan) throws UnsupportedJpegException {
+		BitReader reader = new BitReader(jpeg, pos);
+		int[] predictions = new int[scan.components.length];
+		int[][] order = blockOrder(scan);
+		int units = order.length / blocksPerUnit(scan);
+		int block = 0;
+		for (int unit = 0; unit < units; unit++) {
+			if (scan.restartInterval > 0 && unit > 0 && unit % scan.restartInterval == 0) {
+				int marker = reader.nextMarker();
+				if (marker < 0xD0 || marker > 0xD7) {
+					throw new UnsupportedJpegException("Restart marker expected");
+				}
+				reader.pos += 2;
+				Arrays.fill(predictions, 0);
+			}
+			for (int i = 0; i < blocksPerUnit(scan); i++, block++) {
+				int c = order[block][0];
+				Component component = scan.components[c];
+				int offset = (order[block][2] * component.blocksWide + order[block][1]) * 64;
+				short[] coefficients = component.coefficients;
+				predictions[c] += reader.receiveExtend(reader.decode(scan.dc[c]));
+				coefficients[offset] = (short) predictions[c];
+				for (int k = 1; k < 64; k++) {
+					int rs = reader.decode(scan.ac[c]);
+					int run = rs >> 4;
+					int size = rs & 0x0F;
+					if (size == 0) {
+						if (run != 15) {
+							break;
+						}
+						k += 15;
+					} else {
+						k += run;
+						if (k > 63) {
+							throw new UnsupportedJpegException("Coefficient out of the block");
+						}
+						coefficients[offset + ZIGZAG[k]] = (short) reader.receiveExtend(size);
+					}
+				}
+			}
+		}
+		reader.nextMarker();
+		return reader.pos;
+	}
+
+	private static int blocksPerUnit(Scan scan) {
+		if (scan.components.length == 1) {
+			return 1;
+		}
+		int blocks = 0;
+		for (Component component : scan.components) {
+			blocks += component.h * component.v;
+		}
+		return blocks;
+	}
+
+	/**
+	 * Returns the blocks of a scan in coding order, as {component in the scan, x, y}: the MCUs
+	 * of an interleaved scan, or the blocks that cover the image for a single component.
+	 */
+	private int[][] blockOrder(Scan scan) {
+		List<int[]> order = new ArrayList<>();
+		if (scan.components.length == 1) {
+			Component component = scan.components[0];
+			int wide = (((width * component.h + maxH - 1) / maxH) + 7) / 8;
+			int high = (((height * component.v + maxV - 1) / maxV) + 7) / 8;
+			for (int y = 0; y < high; y++) {
+				for (int x = 0; x < wide; x++) {
+					order.add(new int[] { 0, x, y });
+				}
+			}
+		} else {
+			int mcusWide = scan.components[0].blocksWide / scan.components[0].h;
+			int mcusHigh = scan.components[0].blocksHigh / scan.components[0].v;
+			for (int my = 0; my < mcusHigh; my++) {
+				for (int mx = 0; mx < mcusWide; mx++) {
+					for (int c = 0; c < scan.components.length; c++) {
+						Component component = scan.components[c];
+						for (int v = 0; v < component.v; v++) {
+							for (int h = 0; h < component.h; h++) {
+								order.add(new int[] { c, mx * component.h + h, my * component.v + v });
+							}
+						}
+					}
+				}
+			}
+		}
+		return order.toArray(new int[0][]);
+	}
+
+	/**
+	 * Moves every block to its new place and transforms its coefficients: a transposition
+	 * swaps the horizontal and vertical frequencies, a mirror changes the sign of the odd
+	 * frequencies along its axis.
+	 */
+	private void transformCoefficients(Orientation orientation) {
+		boolean transposes = orientation.transposes();
+		for (Component component : components) {
+			int wide = transposes ? component.blocksHigh : component.blocksWide;
+			int high = transposes ? component.blocksWide : component.blocksHigh;
+			short[] source = component.coefficients;
+			short[] target = new short[source.length];
+			for (int by = 0; by < high; by++) {
+				for (int bx = 0; bx < wide; bx++) {
+					int x = orientation.mirrorsX() ? wide - 1 - bx : bx;
+					int y = orientation.mirrorsY() ? high - 1 - by : by;
+					int from = transposes ? (x * component.blocksWide + y) * 64 : (y * component.blocksWide + x) * 64;
+					int to = (by * wide + bx) * 64;
+					for (int v = 0; v < 8; v++) {
+						for (int u = 0; u < 8; u++) {
+							int value = source[from + (transposes ? u * 8 + v : v * 8 + u)];
+							boolean negate = (orientation.mirrorsX() && (u & 1) == 1) ^ (orientation.mirrorsY() && (v & 1) == 1);
+							target[to + v * 8 + u] = (short) (negate ? -value : value);
+						}
+					}
+				}
+			}
+			component.coefficients = target;
+			component.blocksWide = wide;
+			component.blocksHigh = high;
+			if (transposes) {
+				int h = component.h;
+				component.h = component.v;
+				component.v = h;
+			}
+		}
+		if (transposes) {
+			int size = width;
+			width = height;
+			height = size;
+			size = maxH;
+			maxH = maxV;
+			maxV = size;
+		}
+	}
+
+	/**
+	 * Writes the entropy coded data of a scan, with byte stuffing and restart markers.
+	 */
+	private static class BitWriter {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int buffer;
+		int bits;
+
+		void write(int value, int count) {
+			for (int i = count - 1; i >= 0; i--) {
+				buffer = (buffer << 1) | ((value >> i) & 1);
+				if (++bits == 8) {
+					out.write(buffer);
+					if (buffer == 0xFF) {
+						out.write(0);
+					}
+					buffer = 0;
+					bits = 0;
+				}
+			}
+		}
+
+		void flush() {
+			if (bits > 0) {
+				write(0x7F, 8 - bits);
+			}
+		}
+	}
+
+	/**
+	 * Codes a scan. When counting, only the frequencies of the symbols are gathered into
+	 * the scan's statistics and nothing is written.
+	 *
+	 * @return False if a symbol has no code in the tables of the scan.
+	 */
+	private boolean encodeScan(Scan scan, boolean counting) {
+		if (counting) {
+			scan.dcFrequencies = new long[scan.components.length][257];
+			scan.acFrequencies = new long[scan.components.length][257];
+		}
+		BitWriter writer = new BitWriter();
+		boolean complete = true;
+		int[] predictions = new int[scan.components.length];
+		int[][] order = blockOrder(scan);
+		int perUnit = blocksPerUnit(scan);
+		int units = order.length / perUnit;
+		int block = 0;
+		for (int unit = 0; unit < units; unit++) {
+			if (scan.restartInterval > 0 && unit > 0 && unit % scan.restartInterval == 0) {
+				writer.flush();
+				writer.out.write(0xFF);
+				writer.out.write(0xD0 + ((unit / scan.restartInterval - 1) & 7));
+				Arrays.fill(predictions, 0);
+			}
+			for (int i = 0; i < perUnit; i++, block++) {
+				int c = order[block][0];
+				Component component = scan.components[c];
+				int offset = (order[block][2] * component.blocksWide + order[block][1]) * 64;
+				short[] coefficients = component.coefficients;
+				int diff = coefficients[offset] - predictions[c];
+				predictions[c] = coefficients[offset];
+				int size = sizeOf(diff);
+				complete &= symbol(writer, scan.dc[c], counting ? scan.dcFrequencies[c] : null, size);
+				writer.write(diff < 0 ? diff - 1 : diff, size);
+				int run = 0;
+				for (int k = 1; k < 64; k++) {
+					int value = coefficients[offset + ZIGZAG[k]];
+					if (value == 0) {
+						run++;
+						continue;
+					}
+					while (run > 15) {
+						complete &= symbol(writer, scan.ac[c], counting ? scan.acFrequencies[c] : null, 0xF0);
+						run -= 16;
+					}
+					size = sizeOf(value);
+					complete &= symbol(writer, scan.ac[c], counting ? scan.acFrequencies[c] : null, (run << 4) | size);
+					writer.write(value < 0 ? value - 1 : value, size);
+					run = 0;
+				}
+				if (run > 0) {
+					complete &= symbol(writer, scan.ac[c], counting ? scan.acFrequencies[c] : null, 0x00);
+				}
+			}
+		}
+		writer.flush();
+		if (!counting) {
+			scan.encoded = writer.out.toByteArray();
+		}
+		return complete;
+	}
+
+	private static boolean symbol(BitWriter writer, HuffmanTable table, long[] frequencies, int symbol) {
+		if (frequencies != null) {
+			frequencies[symbol]++;
+			return table.sizes[symbol] > 0;
+		}
+		writer.write(table.codes[symbol], table.sizes[symbol]);
+		return true;
+	}
+
+	private static int sizeOf(int value) {
+		return 32 - Integer.numberOfLeadingZeros(Math.abs(value));
+	}
+
+	/**
+	 * Replaces the tables of a scan with optimal tables for its symbols, one pair per
+	 * table slot that the scan uses.
+	 */
+	private static void optimizeTables(Scan scan) {
+		int count = scan.components.length;
+		long[][] dc = new long[4][257];
+		long[][] ac = new long[4][257];
+		for (int c = 0; c < count; c++) {
+			for (int s = 0; s < 256; s++) {
+				dc[scan.dcTables[c]][s] += scan.dcFrequencies[c][s];
+				ac[scan.acTables[c]][s] += scan.acFrequencies[c][s];
+			}
+		}
+		scan.optimized = new ByteArrayOutputStream();
+		HuffmanTable[] dcOptimized = new HuffmanTable[4];
+		HuffmanTable[] acOptimized = new HuffmanTable[4];
+		for (int c = 0; c < count; c++) {
+			int dcSlot = scan.dcTables[c];
+			if (dcOptimized[dcSlot] == null) {
+				dcOptimized[dcSlot] = optimalTable(dc[dcSlot]);
+				writeTable(scan.optimized, 0x00 | dcSlot, dcOptimized[dcSlot]);
+			}
+			int acSlot = scan.acTables[c];
+			if (acOptimized[acSlot] == null) {
+				acOptimized[acSlot] = optimalTable(ac[acSlot]);
+				writeTable(scan.optimized, 0x10 | acSlot, acOptimized[acSlot]);
+			}
+			scan.dc[c] = dcOptimized[dcSlot];
+			scan.ac[c] = acOptimized[acSlot];
+		}
+	}
+
+	/**
+	 * Builds a Huffman table with codes of at most 16 bits, as in section K.2 of the
+	 * JPEG standard and jpeg_gen_optimal_table of libjpeg.
+	 */
+	private static HuffmanTable optimalTable(long[] frequencies) {
+		long[] freq = Arrays.copyOf(frequencies, 257);
+		// a reserved symbol makes sure no code is all ones
+		freq[256] = 1;
+		int[] codeSize = new int[257];
+		int[] others = new int[257];
+		Arrays.fill(others, -1);
+		while (true) {
+			int c1 = -1;
+			long lowest = Long.MAX_VALUE;
+			for (int i = 0; i <= 256; i++) {
+				if (freq[i] != 0 && freq[i] <= lowest) {
+					lowest = freq[i];
+					c1 = i;
+				}
+			}
+			int c2 = -1;
+			lowest = Long.MAX_VALUE;
+			for (int i = 0; i <= 256; i++) {
+				if (freq[i] != 0 && freq[i] <= lowest && i != c1) {
+					lowest = freq[i];
+					c2 = i;
+				}
+			}
+			if (c2 < 0) {
+				break;
+			}
+			freq[c1] += freq[c2];
+			freq[c2] = 0;
+			codeSize[c1]++;
+			while (others[c1] >= 0) {
+				c1 = others[c1];
+				codeSize[c1]++;
+			}
+			others[c1] = c2;
+			codeSize[c2]++;
+			while (others[c2] >= 0) {
+				c2 = others[c2];
+				codeSize[c2]++;
+			}
+		}
+		int[] bits = new int[33];
+		for (int i = 0; i <= 256; i++) {
+			if (codeSize[i] > 0) {
+				bits[codeSize[i]]++;
+			}
+		}
+		for (int i = 32; i > 16; i--) {
+			while (bits[i] > 0) {
+				int j = i - 2;
+				while (bits[j] == 0) {
+					j--;
+				}
+				bits[i] -= 2;
+				bits[i - 1]++;
+				bits[j + 1] += 2;
+				bits[j]--;
+			}
+		}
+		int longest = 16;
+		while (bits[longest] == 0) {
+			longest--;
+		}
+		bits[longest]--;
+		List<Integer> values = new ArrayList<>();
+		for (int size = 1; size <= 32; size++) {
+			for (int symbol = 0; symbol < 256; symbol++) {
+				if (codeSize[symbol] == size) {
+					values.add(symbol);
+				}
+			}
+		}
+		return new HuffmanTable(Arrays.copyOf(bits, 17), values.stream().mapToInt(Integer::intValue).toArray());
+	}
+
+	private static void writeTable(ByteArrayOutputStream out, int classAndId, HuffmanTable table) {
+		out.write(classAndId);
+		for (int length = 1; length <= 16; length++) {
+			out.write(table.counts[length]);
+		}
+		for (int value : table.values) {
+			out.write(value);
+		}
+	}
+
+	private byte[] write(Orientation orientation, boolean keepTables) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(0xFF);
+		out.write(0xD8);
+		for (Segment segment : segments) {
+			switch (segment.marker) {
+			case 0xC0:
+			case 0xC1:
+				writeSegment(out, segment.marker, frame());
+				break;
+			case 0xDB:
+				writeSegment(out, segment.marker, orientation.transposes() ? transposeQuantTables(segment.data) : segment.data);
+				break;
+			case 0xC4:
+				if (keepTables) {
+					writeSegment(out, segment.marker, segment.data);
+				}
+				break;
+			case 0xDA:
+				if (!keepTables) {
+					writeSegment(out, 0xC4, segment.scan.optimized.toByteArray());
+				}
+				writeSegment(out, segment.marker, segment.data);
+				out.write(segment.scan.encoded, 0, segment.scan.encoded.length);
+				break;
+			default:
+				writeSegment(out, segment.marker, segment.data);
+			}
+		}
+		out.write(0xFF);
+		out.write(0xD9);
+		return out.toByteArray();
+	}
+
+	private byte[] frame() {
+		byte[] data = new byte[6 + 3 * components.length];
+		data[0] = 8;
+		data[1] = (byte) (height >> 8);
+		data[2] = (byte) height;
+		data[3] = (byte) (width >> 8);
+		data[4] = (byte) width;
+		data[5] = (byte) components.length;
+		for (int i = 0; i < components.length; i++) {
+			data[6 + 3 * i] = (byte) components[i].id;
+			data[7 + 3 * i] = (byte) ((components[i].h << 4) | components[i].v);
+			data[8 + 3 * i] = (byte) components[i].quantTable;
+		}
+		return data;
+	}
+
+	/**
+	 * Helper method that transposes the quantization tables, which are stored in zigzag
+	 * order, so that they follow the transposed coefficients.
+	 */
+	private static byte[] transposeQuantTables(byte[] data) {
+		byte[] transposed = data.clone();
+		int pos = 0;
+		while (pos < data.length) {
+			int precision = (data[pos] & 0xFF) >> 4;
+			int size = precision == 0 ? 1 : 2;
+			int[] natural = new int[64];
+			for (int k = 0; k < 64; k++) {
+				int value = 0;
+				for (int b = 0; b < size; b++) {
+					value = (value << 8) | (data[pos + 1 + k * size + b] & 0xFF);
+				}
+				natural[ZIGZAG[k]] = value;
+			}
+			for (int k = 0; k < 64; k++) {
+				int index = ZIGZAG[k];
+				int value = natural[(index % 8) * 8 + index / 8];
+				for (int b = 0; b < size; b++) {
+					transposed[pos + 1 + k * size + b] = (byte) (value >> (8 * (size - 1 - b)));
+				}
+			}
+			pos += 1 + 64 * size;
+		}
+		return transposed;
+	}
+
+	private static void writeSegment(ByteArrayOutputStream out, int marker, byte[] data) {
+		out.write(0xFF);
+		out.write(marker);
+		out.write((data.length + 2) >> 8);
+		out.write(data.length + 2);
+		out.write(data, 0, data.length);
+	}
+}
@@ -0,0 +1,694 @@
+package Utility;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+/**
+ * MappedTileStore is an ARGB image that lives outside the heap, in a file of square tiles,
+ * so an image of several gigapixels, which doesn't fit in a BufferedImage, can be processed
+ * without heap space for it. The operations of ImageProcessorUtility run over it tile by tile,
+ * in parallel, each one into a new store: point operations with map, rotations and flips with
+ * orient and zooming with zoom. RegionImageLoader.readTiles decodes an image file into a store
+ * and ParallelPngWriter writes one as a PNG.
+ *
+ * The tiles in use are read into direct buffers with positional FileChannel reads and written
+ * back, when they were changed, before their buffer is reused for another tile. The buffers
+ * come from a pool shared by all the stores, so the memory outside the heap is bounded by the
+ * budget of the stores and freed tiles are never left waiting for the garbage collector.
+ * Every store keeps at most its own budget of tiles, the least recently used tile is dropped
+ * first, and all the stores together keep at most the default budget: a store that needs a tile
+ * when the pool is used up reuses one of its own, and only goes over it when all of its tiles are
+ * in use, by one tile for each of its threads at most.
+ *
+ * The file is sparse: tiles that were never written take no disk space and read as transparent black.
+ */
+public class MappedTileStore implements Closeable {
+
+	public static final int TILE_SIZE = 256;
+	private static final int TILE_BYTES = TILE_SIZE * TILE_SIZE * Integer.BYTES;
+	private static final byte[] ZEROS = new byte[64 * 1024];
+
+	private static long defaultBudget = Long.getLong("photodite.tileBudget", 256L * 1024 * 1024);
+	private static final Deque<ByteBuffer> free = new ArrayDeque<>();
+	private static long allocatedBytes = 0;
+
+	private final File file;
+	private final boolean temporary;
+	private final FileChannel channel;
+	private final int width;
+	private final int height;
+	private final boolean alpha;
+	private final int tilesX;
+	private final int tilesY;
+	private final long budget;
+	private final int maxResident;
+	private final LinkedHashMap<Integer, Tile> resident = new LinkedHashMap<>(16, 0.75f, true);
+	private final Set<Integer> writing = new HashSet<>();
+	private final BitSet stored = new BitSet();
+	private boolean closed = false;
+
+	private MappedTileStore(File file, boolean temporary, int width, int height, boolean alpha, long budget) throws IOException {
+		if (width <= 0 || height <= 0) {
+			throw new IllegalArgumentException("Invalid image size: " + width + "x" + height);
+		}
+		this.file = file;
+		this.temporary = temporary;
+		this.width = width;
+		this.height = height;
+		this.alpha = alpha;
+		this.tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+		this.tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+		this.budget = budget;
+		this.maxResident = (int) Math.max(1, Math.min(Integer.MAX_VALUE, budget / TILE_BYTES));
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		long size = (long) tilesX * tilesY * TILE_BYTES;
+		if (channel.size() < size) {
+			channel.write(ByteBuffer.allocate(1), size - 1);
+		}
+	}
+
+	/**
+	 * Creates an empty store in a temporary file that is deleted when the store is closed,
+	 * or when the application exits if it is never closed. The file is created in the directory of the photodite.tileDirectory system property,
+	 * or in the default temporary directory.
+	 *
+	 * @param width The width of the image.
+	 * @param height The height of the image.
+	 * @param alpha True if the alpha channel of the pixels is used.
+	 * @return The new store, with the default budget.
+	 * @throws IOException If the file can't be created.
+	 */
+	public static MappedTileStore create(int width, int height, boolean alpha) throws IOException {
+		String directory = System.getProperty("photodite.tileDirectory");
+		File file = File.createTempFile("photodite-tiles", ".bin", directory != null ? new File(directory) : null);
+		file.deleteOnExit();
+		try {
+			return new MappedTileStore(file, true, width, height, alpha, getDefaultBudget());
+		} catch (IOException | RuntimeException e) {
+			file.delete();
+			throw e;
+		}
+	}
+
+	/**
+	 * Opens a store in the given file, creating it if needed. The file is kept when the store is closed,
+	 * so the same image can be opened again with the same size.
+	 *
+	 * @param file The tile file.
+	 * @param width The width of the image.
+	 * @param height The height of the image.
+	 * @param alpha True if the alpha channel of the pixels is used.
+	 * @param budget The maximum number of bytes of tiles the store keeps in memory.
+	 * @return The store.
+	 * @throws IOException If the file can't be opened.
+	 */
+	public static MappedTileStore open(File file, int width, int height, boolean alpha, long budget) throws IOException {
+		return new MappedTileStore(file, false, width, height, alpha, budget);
+	}
+
+	/**
+	 * Copies a BufferedImage into a new temporary store.
+	 *
+	 * @param image The image to copy.
+	 * @return The new store.
+	 * @throws IOException If the file can't be written.
+	 */
+	public static MappedTileStore fromImage(BufferedImage image) throws IOException {
+		MappedTileStore store = create(image.getWidth(), image.getHeight(), image.getColorModel().hasAlpha());
+		store.setRegion(0, 0, image);
+		return store;
+	}
+
+	/**
+	 * Returns the budget of the stores created without one, which is also the budget of all the stores together.
+	 *
+	 * @return The number of bytes of tiles kept in memory, 256 MB unless set by photodite.tileBudget.
+	 */
+	public static synchronized long getDefaultBudget() {
+		return defaultBudget;
+	}
+
+	/**
+	 * Sets the budget of the stores created from now on without one, and of all the stores together.
+	 * Buffers above a lower budget are freed as the stores give them back.
+	 *
+	 * @param bytes The number of bytes of tiles kept in memory, a store can always keep a tile per thread using it.
+	 */
+	public static synchronized void setDefaultBudget(long bytes) {
+		defaultBudget = bytes;
+	}
+
+	/**
+	 * Returns the memory taken by the buffers of the tiles, in use by a store or pooled to be reused.
+	 *
+	 * @return The number of bytes of direct buffers allocated for tiles.
+	 */
+	public static long getAllocatedBytes() {
+		synchronized (free) {
+			return allocatedBytes;
+		}
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public boolean hasAlpha() {
+		return alpha;
+	}
+
+	public int getTilesX() {
+		return tilesX;
+	}
+
+	public int getTilesY() {
+		return tilesY;
+	}
+
+	public long getBudget() {
+		return budget;
+	}
+
+	/**
+	 * Returns the number of tiles the store keeps in memory.
+	 *
+	 * @return At most the budget divided by the size of a tile.
+	 */
+	public synchronized int getResidentTiles() {
+		return resident.size();
+	}
+
+	/**
+	 * Returns the bounds of a tile. The tiles of the last row and column are cut at the edge of the image.
+	 *
+	 * @param tileX The column of the tile.
+	 * @param tileY The row of the tile.
+	 * @return The rectangle of the image covered by the tile.
+	 */
+	public Rectangle getTileBounds(int tileX, int tileY) {
+		int x = tileX * TILE_SIZE;
+		int y = tileY * TILE_SIZE;
+		return new Rectangle(x, y, Math.min(TILE_SIZE, width - x), Math.min(TILE_SIZE, height - y));
+	}
+
+	/**
+	 * Reads the pixels of a region, which can span several tiles, as packed ARGB values.
+	 *
+	 * @param x The left edge of the region.
+	 * @param y The top edge of the region.
+	 * @param w The width of the region.
+	 * @param h The height of the region.
+	 * @param rgb The array the rows of the region are copied into, one after the other, or null.
+	 * @return The array with the pixels.
+	 * @throws IOException If a tile can't be read or written.
+	 */
+	public int[] getRGB(int x, int y, int w, int h, int[] rgb) throws IOException {
+		checkRegion(x, y, w, h);
+		int[] pixels = rgb != null ? rgb : new int[w * h];
+		forEachTileRow(x, y, w, h, (tile, offset, index, length) -> tile.get(offset, pixels, index, length), w, false);
+		return pixels;
+	}
+
+	/**
+	 * Writes packed ARGB values into a region, which can span several tiles.
+	 *
+	 * @param x The left edge of the region.
+	 * @param y The top edge of the region.
+	 * @param w The width of the region.
+	 * @param h The height of the region.
+	 * @param rgb The rows of the region, one after the other.
+	 * @throws IOException If a tile can't be read or written.
+	 */
+	public void setRGB(int x, int y, int w, int h, int[] rgb) throws IOException {
+		checkRegion(x, y, w, h);
+		forEachTileRow(x, y, w, h, (tile, offset, index, length) -> tile.put(offset, rgb, index, length), w, true);
+	}
+
+	/**
+	 * Copies a region into a new BufferedImage of TYPE_INT_ARGB, or TYPE_INT_RGB if the store has no alpha.
+	 *
+	 * @param region The region to copy.
+	 * @return The image.
+	 * @throws IOException If a tile can't be read or written.
+	 */
+	public BufferedImage getRegion(Rectangle region) throws IOException {
+		BufferedImage image = new BufferedImage(region.width, region.height, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+		int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		getRGB(region.x, region.y, region.width, region.height, pixels);
+		if (!alpha) {
+			for (int i = 0; i < pixels.length; i++) {
+				pixels[i] |= 0xFF000000;
+			}
+		}
+		return image;
+	}
+
+	/**
+	 * Writes an image into the store with its top left corner at (x, y).
+	 *
+	 * @param x The left edge of the region.
+	 * @param y The top edge of the region.
+	 * @param image The image to write, it must fit in the store.
+	 * @throws IOException If a tile can't be read or written.
+	 */
+	public void setRegion(int x, int y, BufferedImage image) throws IOException {
+		int w = image.getWidth();
+		int[] row = new int[w * Math.min(image.getHeight(), TILE_SIZE)];
+		for (int top = 0; top < image.getHeight(); top += TILE_SIZE) {
+			int rows = Math.min(TILE_SIZE, image.getHeight() - top);
+			image.getRGB(0, top, w, rows, row, 0, w);
+			setRGB(x, y + top, w, rows, row);
+		}
+	}
+
+	/**
+	 * Copies the whole store into a BufferedImage, for images small enough to have one.
+	 *
+	 * @return The image.
+	 * @throws IOException If a tile can't be read or written.
+	 * @throws IllegalStateException If the image has too many pixels for a BufferedImage.
+	 */
+	public BufferedImage toBufferedImage() throws IOException {
+		if ((long) width * height > Integer.MAX_VALUE - 8) {
+			throw new IllegalStateException("The image is too large for a BufferedImage: " + width + "x" + height);
+		}
+		return getRegion(new Rectangle(0, 0, width, height));
+	}
+
+	/**
+	 * Runs a point operation over every tile, in parallel, and writes the results in a new store.
+	 * The operation receives each tile as a BufferedImage and must return an image of the same size,
+	 * for example ImageProcessorUtility::toSepia or a PointOperationPipeline.
+	 *
+	 * @param operation The operation.
+	 * @return A new temporary store with the result.
+	 * @throws IOException If a tile can't be read or written.
+	 */
+	public MappedTileStore map(UnaryOperator<BufferedImage> operation) throws IOException {
+		MappedTileStore result = create(width, height, alpha);
+		forEachTile(result, (tileX, tileY) -> {
+			Rectangle bounds = getTileBounds(tileX, tileY);
+			BufferedImage tile = operation.apply(getRegion(bounds));
+			if (tile.getWidth() != bounds.width || tile.getHeight() != bounds.height) {
+				throw new IllegalArgumentException("The operation changed the size of the tile");
+			}
+			result.setRegion(bounds.x, bounds.y, tile);
+		});
+		return result;
+	}
+
+	/**
+	 * Rotates and flips the image by an orientation, tile by tile, into a new store.
+	 * Every tile of the result is the oriented copy of one region of this store.
+	 *
+	 * @param orientation The orientation to apply.
+	 * @return A new temporary store with the result, its width and height are swapped if the orientation transposes.
+	 * @throws IOException If a tile can't be read or written.
+	 */
+	public MappedTileStore orient(Orientation orientation) throws IOException {
+		int orientedWidth = orientation.transposes() ? height : width;
+		int orientedHeight = orientation.transposes() ? width : height;
+		MappedTileStore result = create(orientedWidth, orientedHeight, alpha);
+		forEachTile(result, (tileX, tileY) -> {
+			Rectangle bounds = result.getTileBounds(tileX, tileY);
+			int fromX = orientation.mirrorsX() ? orientedWidth - bounds.x - bounds.width : bounds.x;
+			int fromY = orientation.mirrorsY() ? orientedHeight - bounds.y - bounds.height : bounds.y;
+			Rectangle source = orientation.transposes()
+					? new Rectangle(fromY, fromX, bounds.height, bounds.width)
+					: new Rectangle(fromX, fromY, bounds.width, bounds.height);
+			result.setRegion(bounds.x, bounds.y, ImageProcessorUtility.orient(getRegion(source), orientation));
+		});
+		return result;
+	}
+
+	/**
+	 * Scales the image like ImageProcessorUtility.zoomImage, tile by tile, into a new store.
+	 * Every tile of the result is drawn from the region of this store it covers, with a margin
+	 * for the bicubic interpolation.
+	 *
+	 * @param zoomFactor The factor by which the image is scaled.
+	 * @return A new temporary store with the result.
+	 * @throws IOException If a tile can't be read or written.
+	 */
+	public MappedTileStore zoom(double zoomFactor) throws IOException {
+		int zoomedWidth = (int) (width * zoomFactor);
+		int zoomedHeight = (int) (height * zoomFactor);
+		double scaleX = (double) zoomedWidth / width;
+		double scaleY = (double) zoomedHeight / height;
+		MappedTileStore result = create(zoomedWidth, zoomedHeight, alpha);
+		forEachTile(result, (tileX, tileY) -> {
+			Rectangle bounds = result.getTileBounds(tileX, tileY);
+			int margin = 2 + (int) Math.ceil(Math.max(1 / scaleX, 1 / scaleY));
+			int fromX = Math.max(0, (int) Math.floor(bounds.x / scaleX) - margin);
+			int fromY = Math.max(0, (int) Math.floor(bounds.y / scaleY) - margin);
+			int toX = Math.min(width, (int) Math.ceil((bounds.x + bounds.width) / scaleX) + margin);
+			int toY = Math.min(height, (int) Math.ceil((bounds.y + bounds.height) / scaleY) + margin);
+			BufferedImage source = getRegion(new Rectangle(fromX, fromY, toX - fromX, toY - fromY));
+
+			BufferedImage tile = new BufferedImage(bounds.width, bounds.height, source.getType());
+			Graphics2D g = tile.createGraphics();
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+			g.drawImage(source, new AffineTransform(scaleX, 0, 0, scaleY, fromX * scaleX - bounds.x, fromY * scaleY - bounds.y), null);
+			g.dispose();
+			result.setRegion(bounds.x, bounds.y, tile);
+		});
+		return result;
+	}
+
+	/**
+	 * Writes the changed tiles to the file, and to the disk if the store isn't temporary.
+	 *
+	 * @throws IOException If a tile can't be written.
+	 */
+	public synchronized void flush() throws IOException {
+		for (Tile tile : resident.values()) {
+			if (tile.dirty && !tile.loading) {
+				tile.dirty = false;
+				write(tile.index, tile.bytes);
+			}
+		}
+		if (!temporary) {
+			channel.force(false);
+		}
+	}
+
+	/**
+	 * Writes the changed tiles to the file if the store isn't temporary, gives the buffers back to the pool
+	 * and closes the file, which is deleted if the store is temporary.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			synchronized (this) {
+				if (closed) {
+					return;
+				}
+				closed = true;
+				try {
+					if (!temporary) {
+						flush();
+					}
+				} finally {
+					for (Tile tile : resident.values()) {
+						release(tile.bytes);
+					}
+					resident.clear();
+				}
+			}
+		} finally {
+			channel.close();
+			if (temporary) {
+				file.delete();
+			}
+		}
+	}
+
+	/**
+	 * A tile in memory, with the view of its pixels. A tile is pinned while a thread copies pixels
+	 * from or to it, and loading while its buffer is filled from the file.
+	 */
+	private static final class Tile {
+		private final int index;
+		private final ByteBuffer bytes;
+		private final IntBuffer pixels;
+		private int pins = 1;
+		private boolean loading = true;
+		private boolean dirty = false;
+
+		private Tile(int index, ByteBuffer bytes) {
+			this.index = index;
+			this.bytes = bytes;
+			this.pixels = bytes.clear().order(ByteOrder.nativeOrder()).asIntBuffer();
+		}
+	}
+
+	/**
+	 * The work done on the part of one row of the region that falls inside one tile.
+	 */
+	private interface RowCopy {
+		void copy(IntBuffer tile, int tileOffset, int index, int length);
+	}
+
+	/**
+	 * The work done for one tile of a store.
+	 */
+	private interface TileTask {
+		void run(int tileX, int tileY) throws IOException;
+	}
+
+	private void forEachTileRow(int x, int y, int w, int h, RowCopy copy, int stride, boolean changes) throws IOException {
+		for (int tileY = y / TILE_SIZE; tileY * TILE_SIZE < y + h; tileY++) {
+			int top = Math.max(y, tileY * TILE_SIZE);
+			int bottom = Math.min(y + h, (tileY + 1) * TILE_SIZE);
+			for (int tileX = x / TILE_SIZE; tileX * TILE_SIZE < x + w; tileX++) {
+				int left = Math.max(x, tileX * TILE_SIZE);
+				int right = Math.min(x + w, (tileX + 1) * TILE_SIZE);
+				Tile tile = acquire(tileY * tilesX + tileX);
+				try {
+					for (int row = top; row < bottom; row++) {
+						int tileOffset = (row - tileY * TILE_SIZE) * TILE_SIZE + left - tileX * TILE_SIZE;
+						copy.copy(tile.pixels, tileOffset, (row - y) * stride + left - x, right - left);
+					}
+				} finally {
+					unpin(tile, changes);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Helper method that runs a task for every tile of a store, with bands of tile rows in parallel.
+	 */
+	private static void forEachTile(MappedTileStore store, TileTask task) throws IOException {
+		try {
+			ParallelProcessingUtility.forEachRowBand((int) Math.min(Integer.MAX_VALUE, (long) store.width * TILE_SIZE), store.tilesY, (fromRow, toRow) -> {
+				for (int tileY = fromRow; tileY < toRow; tileY++) {
+					for (int tileX = 0; tileX < store.tilesX; tileX++) {
+						try {
+							task.run(tileX, tileY);
+						} catch (IOException e) {
+							throw new UncheckedIOException(e);
+						}
+					}
+				}
+			});
+		} catch (UncheckedIOException e) {
+			store.close();
+			throw e.getCause();
+		} catch (RuntimeException e) {
+			store.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Helper method that pins a tile, reading it if it isn't in memory. Its buffer is a new one from the pool
+	 * or, when the pool is used up, the buffer of the least recently used tile that isn't pinned, written back
+	 * first if it was changed. A thread pins one tile of a store at a time, so a store whose tiles are all
+	 * pinned holds no more tiles than it has threads. The file is read and written outside the lock, other threads wait only for the
+	 * tiles being read or written.
+	 */
+	private Tile acquire(int index) throws IOException {
+		Tile tile;
+		Tile victim = null;
+		synchronized (this) {
+			while (true) {
+				if (closed) {
+					throw new IOException("The tile store is closed");
+				}
+				tile = resident.get(index);
+				if (tile != null && !tile.loading) {
+					tile.pins++;
+					return tile;
+				}
+				if (tile == null && !writing.contains(index)) {
+					ByteBuffer bytes = resident.size() < maxResident ? allocate(false) : null;
+					if (bytes == null) {
+						victim = leastRecentlyUsed();
+						if (victim != null) {
+							resident.remove(victim.index);
+							bytes = victim.bytes;
+							if (victim.dirty) {
+								writing.add(victim.index);
+							} else {
+								victim = null;
+							}
+						} else {
+							// every tile of the store is in use by a thread, so this thread takes one more
+							bytes = allocate(true);
+						}
+					}
+					if (bytes != null) {
+						tile = new Tile(index, bytes);
+						resident.put(index, tile);
+						break;
+					}
+				}
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while waiting for a tile");
+				}
+			}
+		}
+
+		boolean read = false;
+		try {
+			if (victim != null) {
+				try {
+					write(victim.index, victim.bytes);
+				} finally {
+					synchronized (this) {
+						writing.remove(victim.index);
+						notifyAll();
+					}
+				}
+			}
+			read(index, tile.bytes);
+			read = true;
+		} finally {
+			synchronized (this) {
+				if (read) {
+					tile.loading = false;
+				} else {
+					resident.remove(index);
+					release(tile.bytes);
+				}
+				notifyAll();
+			}
+		}
+		MetricsRegistry.counter("tiles.read").increment();
+		return tile;
+	}
+
+	/**
+	 * Helper method that unpins a tile, marking it to be written back if its pixels were changed.
+	 */
+	private synchronized void unpin(Tile tile, boolean changed) {
+		tile.dirty |= changed;
+		if (--tile.pins == 0) {
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Helper method that returns the least recently used tile that can give its buffer to another one, or null.
+	 */
+	private Tile leastRecentlyUsed() {
+		Iterator<Tile> tiles = resident.values().iterator();
+		while (tiles.hasNext()) {
+			Tile tile = tiles.next();
+			if (tile.pins == 0 && !tile.loading) {
+				return tile;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Helper method that fills a buffer with a tile of the file. A tile of a temporary store that was never
+	 * written back is still transparent black, so it isn't read.
+	 */
+	private void read(int index, ByteBuffer bytes) throws IOException {
+		bytes.clear();
+		boolean written;
+		synchronized (this) {
+			written = stored.get(index);
+		}
+		if (written || !temporary) {
+			long position = (long) index * TILE_BYTES;
+			while (bytes.hasRemaining() && channel.read(bytes, position + bytes.position()) >= 0) {
+				// a positional read can return fewer bytes than asked for
+			}
+		}
+		while (bytes.hasRemaining()) {
+			bytes.put(ZEROS, 0, Math.min(ZEROS.length, bytes.remaining()));
+		}
+	}
+
+	/**
+	 * Helper method that writes a buffer over a tile of the file.
+	 */
+	private void write(int index, ByteBuffer bytes) throws IOException {
+		ByteBuffer view = bytes.duplicate();
+		view.clear();
+		long position = (long) index * TILE_BYTES;
+		while (view.hasRemaining()) {
+			channel.write(view, position + view.position());
+		}
+		synchronized (this) {
+			stored.set(index);
+		}
+		MetricsRegistry.counter("tiles.written").increment();
+	}
+
+	/**
+	 * Helper method that takes a buffer from the pool, allocating it if the budget of all the stores allows.
+	 * Pooled buffers above a budget that was lowered are dropped first.
+	 *
+	 * @param force True to allocate the buffer even over the budget.
+	 * @return The buffer, or null if the pool is used up.
+	 */
+	private static ByteBuffer allocate(boolean force) {
+		synchronized (free) {
+			while (allocatedBytes > getDefaultBudget() && !free.isEmpty()) {
+				free.pop();
+				allocatedBytes -= TILE_BYTES;
+			}
+			if (!free.isEmpty()) {
+				return free.pop();
+			}
+			if (!force && allocatedBytes + TILE_BYTES > getDefaultBudget()) {
+				return null;
+			}
+			allocatedBytes += TILE_BYTES;
+		}
+		return ByteBuffer.allocateDirect(TILE_BYTES);
+	}
+
+	/**
+	 * Helper method that gives a buffer back to the pool, or drops it if the pool is over the budget.
+	 */
+	private static void release(ByteBuffer bytes) {
+		synchronized (free) {
+			if (allocatedBytes > getDefaultBudget()) {
+				allocatedBytes -= TILE_BYTES;
+			} else {
+				free.push(bytes);
+			}
+		}
+	}
+
+	private void checkRegion(int x, int y, int w, int h) {
+		if (x < 0 || y < 0 || w < 0 || h < 0 || x + w > width || y + h > height) {
+			throw new IndexOutOfBoundsException("Region " + x + ", " + y + ", " + w + "x" + h + " outside of " + width + "x" + height);
+		}
+	}
+}
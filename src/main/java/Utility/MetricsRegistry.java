@@ -0,0 +1,455 @@
+package Utility;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * MetricsRegistry keeps counters and latency histograms of the slow paths of the application:
+ * image operations, rendering in the editor, reading and writing image files and database queries.
+ * Every timed operation is also a JDK Flight Recorder event, so a recording shows it on the
+ * timeline of its thread next to the GC and I/O events of the JVM.
+ * The metrics can be written periodically to a JSON snapshot file, see startExport.
+ *
+ * Timing an operation costs two System.nanoTime calls and a few atomic increments, so it is
+ * cheap enough for every call of the editor.
+ */
+public class MetricsRegistry {
+
+	/**
+	 * The kinds of operations that are timed. Each one has its own Flight Recorder event.
+	 */
+	public enum Area {
+		IMAGE("image"),
+		RENDER("render"),
+		IO("io"),
+		DATABASE("db");
+
+		private final String prefix;
+
+		Area(String prefix) {
+			this.prefix = prefix;
+		}
+
+		public String getPrefix() {
+			return prefix;
+		}
+
+		private OperationEvent newEvent() {
+			switch (this) {
+			case IMAGE:
+				return new ImageOperationEvent();
+			case RENDER:
+				return new RenderEvent();
+			case IO:
+				return new ImageFileEvent();
+			default:
+				return new DatabaseQueryEvent();
+			}
+		}
+	}
+
+	/**
+	 * The fields shared by the Flight Recorder events of all the areas.
+	 */
+	abstract static class OperationEvent extends Event {
+		@Label("Operation")
+		String operation;
+
+		@Label("Detail")
+		@Description("The file, the query or the parameter of the operation")
+		String detail;
+
+		@Label("Pixels")
+		long pixels;
+	}
+
+	@Name("photodite.ImageOperation")
+	@Label("Image Operation")
+	@Category({ "PhotoDitE" })
+	static class ImageOperationEvent extends OperationEvent {
+	}
+
+	@Name("photodite.Render")
+	@Label("Editor Render")
+	@Category({ "PhotoDitE" })
+	static class RenderEvent extends OperationEvent {
+	}
+
+	@Name("photodite.ImageFile")
+	@Label("Image File")
+	@Category({ "PhotoDitE" })
+	static class ImageFileEvent extends OperationEvent {
+	}
+
+	@Name("photodite.DatabaseQuery")
+	@Label("Database Query")
+	@Category({ "PhotoDitE" })
+	static class DatabaseQueryEvent extends OperationEvent {
+	}
+
+	/**
+	 * A counter that many threads can increment without contention.
+	 */
+	public static class Counter {
+		private final LongAdder value = new LongAdder();
+
+		public void increment() {
+			value.increment();
+		}
+
+		public void add(long amount) {
+			value.add(amount);
+		}
+
+		public long get() {
+			return value.sum();
+		}
+	}
+
+	/**
+	 * A histogram of durations in nanoseconds with buckets that grow exponentially: every power
+	 * of two is split into 8 buckets, so a percentile is within 12.5% of the real value from
+	 * nanoseconds to hours, in a fixed 4 KB.
+	 */
+	public static class Histogram {
+		private static final int SUB_BUCKET_BITS = 3;
+		private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+		private final AtomicLongArray buckets = new AtomicLongArray(64 * SUB_BUCKETS);
+		private final LongAdder count = new LongAdder();
+		private final LongAdder sum = new LongAdder();
+		private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+		/**
+		 * Adds a duration to the histogram.
+		 *
+		 * @param nanos The duration in nanoseconds, negative values count as 0.
+		 */
+		public void record(long nanos) {
+			long value = Math.max(0, nanos);
+			buckets.incrementAndGet(indexOf(value));
+			count.increment();
+			sum.add(value);
+			max.accumulate(value);
+		}
+
+		public long getCount() {
+			return count.sum();
+		}
+
+		public long getTotalNanos() {
+			return sum.sum();
+		}
+
+		public long getMaxNanos() {
+			return max.get();
+		}
+
+		/**
+		 * Returns the duration under which the given fraction of the recorded durations are.
+		 *
+		 * @param quantile The fraction, between 0 and 1, for example 0.99 for the 99th percentile.
+		 * @return The upper bound of the bucket of the percentile, at most the maximum, or 0 if nothing was recorded.
+		 */
+		public long getPercentileNanos(double quantile) {
+			long total = 0;
+			long[] snapshot = new long[buckets.length()];
+			for (int i = 0; i < snapshot.length; i++) {
+				snapshot[i] = buckets.get(i);
+				total += snapshot[i];
+			}
+			if (total == 0) {
+				return 0;
+			}
+			long rank = Math.max(1, (long) Math.ceil(quantile * total));
+			long seen = 0;
+			for (int i = 0; i < snapshot.length; i++) {
+				seen += snapshot[i];
+				if (seen >= rank) {
+					return Math.min(upperBoundOf(i), getMaxNanos());
+				}
+			}
+			return getMaxNanos();
+		}
+
+		private static int indexOf(long value) {
+			if (value < SUB_BUCKETS) {
+				return (int) value;
+			}
+			int exponent = 63 - Long.numberOfLeadingZeros(value);
+			int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+			return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+		}
+
+		private static long upperBoundOf(int index) {
+			if (index < SUB_BUCKETS) {
+				return index;
+			}
+			int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+			int subBucket = index % SUB_BUCKETS;
+			long width = 1L << (exponent - SUB_BUCKET_BITS);
+			return ((long) (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS)) + width - 1;
+		}
+	}
+
+	/**
+	 * The latency histogram and the number of pixels of one timed operation.
+	 */
+	public static class Timer {
+		private final Histogram latency = new Histogram();
+		private final Counter pixels = new Counter();
+
+		public Histogram getLatency() {
+			return latency;
+		}
+
+		public Counter getPixels() {
+			return pixels;
+		}
+	}
+
+	/**
+	 * A running operation. Closing it records its duration and commits its Flight Recorder event.
+	 */
+	public static class Timing implements AutoCloseable {
+		private final Area area;
+		private final String operation;
+		private final String detail;
+		private final long pixels;
+		private final OperationEvent event;
+		private final long start;
+
+		private Timing(Area area, String operation, String detail, long pixels) {
+			this.area = area;
+			this.operation = operation;
+			this.detail = detail;
+			this.pixels = pixels;
+			OperationEvent newEvent = area.newEvent();
+			if (newEvent.isEnabled()) {
+				newEvent.begin();
+				this.event = newEvent;
+			} else {
+				this.event = null;
+			}
+			this.start = System.nanoTime();
+		}
+
+		@Override
+		public void close() {
+			long nanos = System.nanoTime() - start;
+			Timer timer = timer(area, operation);
+			timer.latency.record(nanos);
+			timer.pixels.add(pixels);
+			if (event != null) {
+				event.end();
+				if (event.shouldCommit()) {
+					event.operation = operation;
+					event.detail = detail;
+					event.pixels = pixels;
+					event.commit();
+				}
+			}
+		}
+	}
+
+	private static final Map<Area, Map<String, Timer>> TIMERS = new EnumMap<>(Area.class);
+	private static final Map<String, Counter> COUNTERS = new ConcurrentHashMap<>();
+	private static final ScheduledExecutorService EXPORTER = Executors.newSingleThreadScheduledExecutor(task -> {
+		Thread thread = new Thread(task, "PhotoDitE-metrics");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private static ScheduledFuture<?> export;
+	private static File exportFile;
+
+	static {
+		for (Area area : Area.values()) {
+			TIMERS.put(area, new ConcurrentHashMap<>());
+		}
+	}
+
+	/**
+	 * Starts timing an operation. Use it in a try-with-resources block.
+	 *
+	 * @param area The kind of the operation.
+	 * @param operation The name of the operation, for example the method.
+	 * @return The running operation.
+	 */
+	public static Timing time(Area area, String operation) {
+		return new Timing(area, operation, null, 0);
+	}
+
+	/**
+	 * Starts timing an operation on an image.
+	 *
+	 * @param area The kind of the operation.
+	 * @param operation The name of the operation, for example the method.
+	 * @param image The image the operation works on, its pixels are counted. It can be null.
+	 * @return The running operation.
+	 */
+	public static Timing time(Area area, String operation, BufferedImage image) {
+		return new Timing(area, operation, null, image != null ? (long) image.getWidth() * image.getHeight() : 0);
+	}
+
+	/**
+	 * Starts timing an operation on a file or a query.
+	 *
+	 * @param area The kind of the operation.
+	 * @param operation The name of the operation, for example the method.
+	 * @param detail The file, the query or the parameter, shown in the Flight Recorder event.
+	 * @return The running operation.
+	 */
+	public static Timing time(Area area, String operation, String detail) {
+		return new Timing(area, operation, detail, 0);
+	}
+
+	/**
+	 * Returns the timer of an operation, creating it if needed.
+	 *
+	 * @param area The kind of the operation.
+	 * @param operation The name of the operation.
+	 * @return The timer, named area prefix + "." + operation in the snapshots.
+	 */
+	public static Timer timer(Area area, String operation) {
+		return TIMERS.get(area).computeIfAbsent(operation, name -> new Timer());
+	}
+
+	/**
+	 * Returns a counter, creating it if needed.
+	 *
+	 * @param name The name of the counter, for example "db.errors".
+	 * @return The counter.
+	 */
+	public static Counter counter(String name) {
+		return COUNTERS.computeIfAbsent(name, key -> new Counter());
+	}
+
+	/**
+	 * Forgets all the metrics recorded so far.
+	 */
+	public static void reset() {
+		for (Map<String, Timer> timers : TIMERS.values()) {
+			timers.clear();
+		}
+		COUNTERS.clear();
+	}
+
+	/**
+	 * Writes the current value of all the metrics as a JSON object: the counters, and for every
+	 * timer the number of calls, the total, mean, median, 90th and 99th percentile and maximum
+	 * duration in milliseconds, and the number of pixels processed.
+	 *
+	 * @param out Where the snapshot is written.
+	 * @throws IOException If the writer fails.
+	 */
+	public static void writeSnapshot(Writer out) throws IOException {
+		out.write("{\n  \"timestamp\": \"" + Instant.now() + "\",\n  \"counters\": {");
+		String separator = "\n";
+		for (Map.Entry<String, Counter> entry : new TreeMap<>(COUNTERS).entrySet()) {
+			out.write(separator + "    \"" + escape(entry.getKey()) + "\": " + entry.getValue().get());
+			separator = ",\n";
+		}
+		out.write("\n  },\n  \"timers\": {");
+		separator = "\n";
+		for (Area area : Area.values()) {
+			for (Map.Entry<String, Timer> entry : new TreeMap<>(TIMERS.get(area)).entrySet()) {
+				Histogram latency = entry.getValue().latency;
+				long count = latency.getCount();
+				out.write(String.format(Locale.ROOT,
+						"%s    \"%s.%s\": {\"count\": %d, \"totalMs\": %.3f, \"meanMs\": %.3f, \"p50Ms\": %.3f, "
+								+ "\"p90Ms\": %.3f, \"p99Ms\": %.3f, \"maxMs\": %.3f, \"pixels\": %d}",
+						separator, area.prefix, escape(entry.getKey()), count, latency.getTotalNanos() / 1e6,
+						count == 0 ? 0 : latency.getTotalNanos() / 1e6 / count, latency.getPercentileNanos(0.5) / 1e6,
+						latency.getPercentileNanos(0.9) / 1e6, latency.getPercentileNanos(0.99) / 1e6,
+						latency.getMaxNanos() / 1e6, entry.getValue().pixels.get()));
+				separator = ",\n";
+			}
+		}
+		out.write("\n  }\n}\n");
+	}
+
+	/**
+	 * Writes a snapshot to a file through a temporary file that replaces it, so whoever
+	 * collects the file never reads half a snapshot.
+	 *
+	 * @param file The snapshot file.
+	 * @throws IOException If the file can't be written.
+	 */
+	public static void writeSnapshot(File file) throws IOException {
+		File target = file.getAbsoluteFile();
+		target.getParentFile().mkdirs();
+		File temp = File.createTempFile(target.getName(), ".tmp", target.getParentFile());
+		try {
+			try (Writer out = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8)) {
+				writeSnapshot(out);
+			}
+			Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			temp.delete();
+		}
+	}
+
+	/**
+	 * Writes a snapshot to a file every period, and once more when the JVM exits.
+	 * A previous export is replaced.
+	 *
+	 * @param file The snapshot file.
+	 * @param periodSeconds The time between two snapshots.
+	 */
+	public static synchronized void startExport(File file, long periodSeconds) {
+		if (export != null) {
+			export.cancel(false);
+		} else {
+			Runtime.getRuntime().addShutdownHook(new Thread(MetricsRegistry::exportNow, "PhotoDitE-metrics-exit"));
+		}
+		exportFile = file;
+		export = EXPORTER.scheduleAtFixedRate(MetricsRegistry::exportNow, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Starts the periodic export if the photodite.metrics.file system property names a file.
+	 * The period is photodite.metrics.period, in seconds, 60 by default.
+	 */
+	public static void startExportFromSystemProperties() {
+		String file = System.getProperty("photodite.metrics.file");
+		if (file != null && !file.isEmpty()) {
+			startExport(new File(file), Long.getLong("photodite.metrics.period", 60));
+		}
+	}
+
+	private static synchronized void exportNow() {
+		try {
+			writeSnapshot(exportFile);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private static String escape(String text) {
+		return text.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+}
@@ -0,0 +1,43 @@
+package Utility;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+import project.Project;
+
+/**
+ * MySqlProjectRepository stores the projects in the MySQL database, through the connection
+ * pool of DatabaseUtility.
+ */
+public class MySqlProjectRepository implements ProjectRepository {
+
+	@Override
+	public void initialize() throws IOException {
+		try (Connection connection = DatabaseUtility.getConnection()) {
+			DatabaseUtility.verifyTableExistance(connection);
+		} catch (SQLException e) {
+			throw new IOException("Can't connect to the database", e);
+		}
+	}
+
+	@Override
+	public void addProject(Project project) {
+		DatabaseUtility.addProject(project);
+	}
+
+	@Override
+	public void deleteProject(String path) {
+		DatabaseUtility.deleteProject(path);
+	}
+
+	@Override
+	public long loadProjectsPage(long afterId, int limit, List<String> entries) throws IOException {
+		try {
+			return DatabaseUtility.loadProjectsPage(afterId, limit, entries);
+		} catch (SQLException e) {
+			throw new IOException("Can't load the projects from the database", e);
+		}
+	}
+}
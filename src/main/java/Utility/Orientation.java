@@ -0,0 +1,103 @@
+package Utility;
+
+/**
+ * Orientation is one of the eight ways to rotate and flip an image by quarter turns.
+ * Any sequence of rotations and flips composes into exactly one of them, so four
+ * rotations in the same direction give back NORMAL.
+ * An orientation is described by where a pixel (x, y) of the transformed image comes from:
+ * x is first mirrored if mirrorsX, y if mirrorsY, and the two are swapped if transposes.
+ */
+public enum Orientation {
+
+	NORMAL(false, false, false),
+	ROTATE_RIGHT(true, true, false),
+	ROTATE_180(false, true, true),
+	ROTATE_LEFT(true, false, true),
+	FLIP_HORIZONTAL(false, true, false),
+	FLIP_VERTICAL(false, false, true),
+	TRANSPOSE(true, false, false),
+	TRANSVERSE(true, true, true);
+
+	private final boolean transposes;
+	private final boolean mirrorsX;
+	private final boolean mirrorsY;
+
+	Orientation(boolean transposes, boolean mirrorsX, boolean mirrorsY) {
+		this.transposes = transposes;
+		this.mirrorsX = mirrorsX;
+		this.mirrorsY = mirrorsY;
+	}
+
+	/**
+	 * Returns the orientation with the given description.
+	 *
+	 * @param transposes True if the axes are swapped.
+	 * @param mirrorsX True if the x coordinate of the transformed image is mirrored.
+	 * @param mirrorsY True if the y coordinate of the transformed image is mirrored.
+	 * @return The orientation.
+	 */
+	public static Orientation of(boolean transposes, boolean mirrorsX, boolean mirrorsY) {
+		for (Orientation orientation : values()) {
+			if (orientation.transposes == transposes && orientation.mirrorsX == mirrorsX && orientation.mirrorsY == mirrorsY) {
+				return orientation;
+			}
+		}
+		throw new AssertionError();
+	}
+
+	/**
+	 * Returns the orientation of applying this one and then another.
+	 *
+	 * @param next The orientation applied afterwards.
+	 * @return The composed orientation.
+	 */
+	public Orientation then(Orientation next) {
+		if (!next.transposes) {
+			return of(transposes, mirrorsX ^ next.mirrorsX, mirrorsY ^ next.mirrorsY);
+		}
+		return of(!transposes, next.mirrorsX ^ mirrorsY, next.mirrorsY ^ mirrorsX);
+	}
+
+	/**
+	 * Returns the orientation that undoes this one.
+	 *
+	 * @return The inverse orientation.
+	 */
+	public Orientation inverse() {
+		for (Orientation orientation : values()) {
+			if (then(orientation) == NORMAL) {
+				return orientation;
+			}
+		}
+		throw new AssertionError();
+	}
+
+	public Orientation rotateRight() {
+		return then(ROTATE_RIGHT);
+	}
+
+	public Orientation rotateLeft() {
+		return then(ROTATE_LEFT);
+	}
+
+	public Orientation flip() {
+		return then(FLIP_HORIZONTAL);
+	}
+
+	/**
+	 * Checks if the width and the height of the image are swapped.
+	 *
+	 * @return True for the quarter turns, the transposition and the transversion.
+	 */
+	public boolean transposes() {
+		return transposes;
+	}
+
+	public boolean mirrorsX() {
+		return mirrorsX;
+	}
+
+	public boolean mirrorsY() {
+		return mirrorsY;
+	}
+}
@@ -0,0 +1,389 @@
+package Utility;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DirectColorModel;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import javax.imageio.ImageWriteParam;
+
+/**
+ * ParallelPngWriter writes 8-bit RGB and RGBA PNG images, filtering and compressing bands of
+ * rows in parallel on the pool of ParallelProcessingUtility.
+ * Every band is compressed by its own Deflater, primed with the last 32 KB of the rows above
+ * it, and ends with a sync flush on a byte boundary, so the compressed bands can be
+ * concatenated into a single zlib stream, like pigz does. The checksum of the whole stream is
+ * combined from the checksums of the bands. The bands are written in order as they finish,
+ * with a bounded number of them in memory.
+ */
+public class ParallelPngWriter {
+
+	/**
+	 * The deflate level the ImageIO PNG writer uses when no compression is set.
+	 */
+	public static final int DEFAULT_LEVEL = 4;
+
+	private static final byte[] SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+	private static final int WINDOW_SIZE = 32 * 1024;
+	private static final int ADLER_BASE = 65521;
+
+	private final int level;
+	private int bandSize = 256 * 1024;
+
+	/**
+	 * Creates a writer with a deflate level.
+	 *
+	 * @param deflateLevel The level, from 0 (no compression, fastest) to 9 (smallest file).
+	 */
+	public ParallelPngWriter(int deflateLevel) {
+		if (deflateLevel < 0 || deflateLevel > 9) {
+			throw new IllegalArgumentException("Deflate level must be between 0 and 9: " + deflateLevel);
+		}
+		this.level = deflateLevel;
+	}
+
+	/**
+	 * Returns the deflate level that matches the PNG settings of SaveOptions.
+	 *
+	 * @param options The encoder settings.
+	 * @return The deflate level.
+	 */
+	public static int levelOf(SaveOptions options) {
+		if (options.getDeflateLevel() >= 0) {
+			return options.getDeflateLevel();
+		}
+		if (options.getCompressionMode() == ImageWriteParam.MODE_DISABLED) {
+			return 0;
+		}
+		if (options.getQuality() >= 0f) {
+			return Math.min(9, (int) (9 * (1f - options.getQuality())));
+		}
+		return DEFAULT_LEVEL;
+	}
+
+	/**
+	 * Checks if an image can be written without losing anything: 8-bit sRGB or sRGB with alpha,
+	 * not premultiplied. 16-bit, gray and palette images are written by the ImageIO encoder,
+	 * which keeps their layout.
+	 *
+	 * @param image The image to be written.
+	 * @return True if its pixels are exactly the 8-bit RGB or RGBA values this writer stores.
+	 */
+	public static boolean canEncode(BufferedImage image) {
+		ColorModel colorModel = image.getColorModel();
+		if (!(colorModel instanceof DirectColorModel || colorModel instanceof ComponentColorModel)
+				|| !colorModel.getColorSpace().isCS_sRGB() || colorModel.isAlphaPremultiplied()) {
+			return false;
+		}
+		int components = colorModel.getNumComponents();
+		if (components != 3 && components != 4) {
+			return false;
+		}
+		for (int i = 0; i < components; i++) {
+			if (colorModel.getComponentSize(i) != 8) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Sets the size of the bands of rows compressed by one task. Smaller bands spread
+	 * the work better, larger bands compress a little better.
+	 *
+	 * @param bytes The uncompressed size of a band, at least one row is always used.
+	 */
+	public void setBandSize(int bytes) {
+		bandSize = Math.max(1, bytes);
+	}
+
+	/**
+	 * Writes an image as a PNG. Images with transparency are written as RGBA, the others as RGB.
+	 *
+	 * @param image The image to be written.
+	 * @param output The stream the PNG is written to. It is not closed.
+	 * @param listener Receives the progress on the calling thread, or null.
+	 * @throws IOException If the stream can't be written.
+	 */
+	public void write(BufferedImage image, OutputStream output, ImageSaveUtility.SaveListener listener) throws IOException {
+		write(image.getWidth(), image.getHeight(), image.getColorModel().hasAlpha(),
+				(y, argb) -> image.getRGB(0, y, argb.length, 1, argb, 0, argb.length), output, listener);
+	}
+
+	/**
+	 * Writes an image held in a MappedTileStore as a PNG, reading its rows from the store as the bands
+	 * are compressed, so the image is never in the heap as a whole.
+	 *
+	 * @param tiles The image to be written. Stores with alpha are written as RGBA, the others as RGB.
+	 * @param output The stream the PNG is written to. It is not closed.
+	 * @param listener Receives the progress on the calling thread, or null.
+	 * @throws IOException If the store can't be read or the stream can't be written.
+	 */
+	public void write(MappedTileStore tiles, OutputStream output, ImageSaveUtility.SaveListener listener) throws IOException {
+		write(tiles.getWidth(), tiles.getHeight(), tiles.hasAlpha(), (y, argb) -> tiles.getRGB(0, y, argb.length, 1, argb), output, listener);
+	}
+
+	/**
+	 * Where the rows of the image are read from, as packed ARGB values.
+	 */
+	private interface RowSource {
+		void read(int y, int[] argb) throws IOException;
+	}
+
+	private void write(int width, int height, boolean alpha, RowSource rows, OutputStream output, ImageSaveUtility.SaveListener listener) throws IOException {
+		int channels = alpha ? 4 : 3;
+		int rowBytes = width * channels + 1;
+		int bandRows = Math.max(1, bandSize / rowBytes);
+		int bands = (height + bandRows - 1) / bandRows;
+
+		output.write(SIGNATURE);
+		byte[] header = new byte[13];
+		putInt(header, 0, width);
+		putInt(header, 4, height);
+		header[8] = 8;
+		header[9] = (byte) (alpha ? 6 : 2);
+		writeChunk(output, "IHDR", header, 0, header.length);
+
+		// keep every worker busy while the bands are written in order
+		int inFlight = 2 * ParallelProcessingUtility.getParallelism();
+		Deque<ForkJoinTask<Band>> queue = new ArrayDeque<>();
+		int submitted = 0;
+		long checksum = 1;
+		for (int band = 0; band < bands; band++) {
+			while (submitted < bands && queue.size() < inFlight) {
+				int fromRow = submitted * bandRows;
+				int toRow = Math.min(height, fromRow + bandRows);
+				boolean last = ++submitted == bands;
+				queue.add(ParallelProcessingUtility.getPool().submit(() -> compress(rows, width, channels, fromRow, toRow, last)));
+			}
+			Band compressed;
+			try {
+				compressed = queue.poll().get();
+			} catch (InterruptedException e) {
+				queue.forEach(task -> task.cancel(false));
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while writing the PNG", e);
+			} catch (ExecutionException e) {
+				queue.forEach(task -> task.cancel(false));
+				if (e.getCause() instanceof IOException) {
+					throw (IOException) e.getCause();
+				}
+				throw new IOException("Can't compress the PNG", e.getCause());
+			}
+			checksum = combineAdler32(checksum, compressed.adler32, compressed.length);
+
+			byte[] data = compressed.data;
+			int size = compressed.size;
+			if (band == 0 || band == bands - 1) {
+				ByteArrayOutputStream framed = new ByteArrayOutputStream(size + 6);
+				if (band == 0) {
+					framed.write(0x78);
+					framed.write(zlibFlags());
+				}
+				framed.write(data, 0, size);
+				if (band == bands - 1) {
+					byte[] trailer = new byte[4];
+					putInt(trailer, 0, (int) checksum);
+					framed.write(trailer);
+				}
+				data = framed.toByteArray();
+				size = data.length;
+			}
+			writeChunk(output, "IDAT", data, 0, size);
+			if (listener != null) {
+				listener.progress((band + 1) * 100 / bands);
+			}
+		}
+		writeChunk(output, "IEND", new byte[0], 0, 0);
+		output.flush();
+	}
+
+	/**
+	 * A band of rows, filtered and compressed.
+	 */
+	private static class Band {
+		byte[] data;
+		int size;
+		long adler32;
+		long length;
+	}
+
+	private Band compress(RowSource rows, int width, int channels, int fromRow, int toRow, boolean last) throws IOException {
+		int rowBytes = width * channels + 1;
+		int[] argb = new int[width];
+		byte[] previous = new byte[width * channels];
+		byte[] current = new byte[width * channels];
+		byte[][] candidates = new byte[5][rowBytes];
+
+		// the rows above the band are filtered again only to prime the dictionary
+		int dictionaryRows = fromRow == 0 ? 0 : Math.min(fromRow, (WINDOW_SIZE + rowBytes - 1) / rowBytes);
+		int firstRow = fromRow - dictionaryRows;
+		if (firstRow > 0) {
+			readRow(rows, firstRow - 1, argb, previous, channels);
+		}
+		byte[] filtered = new byte[(toRow - firstRow) * rowBytes];
+		for (int y = firstRow; y < toRow; y++) {
+			readRow(rows, y, argb, current, channels);
+			byte[] row = filter(current, y == 0 ? null : previous, channels, candidates);
+			System.arraycopy(row, 0, filtered, (y - firstRow) * rowBytes, rowBytes);
+			byte[] swap = previous;
+			previous = current;
+			current = swap;
+		}
+
+		int offset = dictionaryRows * rowBytes;
+		int length = filtered.length - offset;
+		Deflater deflater = new Deflater(level, true);
+		try {
+			if (offset > 0) {
+				int dictionary = Math.min(offset, WINDOW_SIZE);
+				deflater.setDictionary(filtered, offset - dictionary, dictionary);
+			}
+			deflater.setInput(filtered, offset, length);
+			if (last) {
+				deflater.finish();
+			}
+			Band band = new Band();
+			band.data = new byte[Math.max(64, length + length / 1000 + 64)];
+			while (true) {
+				if (band.size == band.data.length) {
+					band.data = Arrays.copyOf(band.data, band.data.length * 2);
+				}
+				int written = deflater.deflate(band.data, band.size, band.data.length - band.size,
+						last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+				band.size += written;
+				// a flush is complete when it leaves space in the buffer
+				if (last ? deflater.finished() : band.size < band.data.length) {
+					break;
+				}
+			}
+			Adler32 adler = new Adler32();
+			adler.update(filtered, offset, length);
+			band.adler32 = adler.getValue();
+			band.length = length;
+			return band;
+		} finally {
+			deflater.end();
+		}
+	}
+
+	private static void readRow(RowSource rows, int y, int[] argb, byte[] row, int channels) throws IOException {
+		rows.read(y, argb);
+		int i = 0;
+		for (int pixel : argb) {
+			row[i++] = (byte) (pixel >> 16);
+			row[i++] = (byte) (pixel >> 8);
+			row[i++] = (byte) pixel;
+			if (channels == 4) {
+				row[i++] = (byte) (pixel >>> 24);
+			}
+		}
+	}
+
+	/**
+	 * Helper method that tries the five PNG filters on a row and returns the one with the
+	 * smallest sum of absolute differences, as libpng does. Uncompressed images use no filter.
+	 */
+	private byte[] filter(byte[] row, byte[] above, int bpp, byte[][] candidates) {
+		int filters = level == 0 ? 1 : 5;
+		byte[] best = null;
+		long bestSum = Long.MAX_VALUE;
+		for (int type = 0; type < filters; type++) {
+			byte[] out = candidates[type];
+			out[0] = (byte) type;
+			long sum = 0;
+			for (int i = 0; i < row.length; i++) {
+				int x = row[i] & 0xFF;
+				int a = i >= bpp ? row[i - bpp] & 0xFF : 0;
+				int b = above != null ? above[i] & 0xFF : 0;
+				int c = i >= bpp && above != null ? above[i - bpp] & 0xFF : 0;
+				int predicted;
+				switch (type) {
+				case 1: predicted = a; break;
+				case 2: predicted = b; break;
+				case 3: predicted = (a + b) >>> 1; break;
+				case 4: predicted = paeth(a, b, c); break;
+				default: predicted = 0;
+				}
+				byte value = (byte) (x - predicted);
+				out[i + 1] = value;
+				sum += Math.abs(value);
+			}
+			if (sum < bestSum) {
+				bestSum = sum;
+				best = out;
+			}
+		}
+		return best;
+	}
+
+	private static int paeth(int a, int b, int c) {
+		int p = a + b - c;
+		int pa = Math.abs(p - a);
+		int pb = Math.abs(p - b);
+		int pc = Math.abs(p - c);
+		if (pa <= pb && pa <= pc) {
+			return a;
+		}
+		return pb <= pc ? b : c;
+	}
+
+	/**
+	 * Helper method that returns the second byte of the zlib header, with the compression
+	 * level hint and the check bits that make the header a multiple of 31.
+	 */
+	private int zlibFlags() {
+		int hint = level < 2 ? 0 : level < 6 ? 1 : level == 6 ? 2 : 3;
+		int flags = hint << 6;
+		return flags + 31 - ((0x78 << 8) + flags) % 31;
+	}
+
+	/**
+	 * Helper method that combines the Adler-32 of two consecutive pieces of data, the same
+	 * way as adler32_combine in zlib.
+	 */
+	static long combineAdler32(long first, long second, long secondLength) {
+		long remainder = secondLength % ADLER_BASE;
+		long sum1 = first & 0xFFFF;
+		long sum2 = remainder * sum1 % ADLER_BASE;
+		sum1 += (second & 0xFFFF) + ADLER_BASE - 1;
+		sum2 += ((first >> 16) & 0xFFFF) + ((second >> 16) & 0xFFFF) + ADLER_BASE - remainder;
+		sum1 %= ADLER_BASE;
+		sum2 %= ADLER_BASE;
+		return sum1 | (sum2 << 16);
+	}
+
+	private static void writeChunk(OutputStream output, String type, byte[] data, int offset, int length) throws IOException {
+		byte[] header = new byte[8];
+		putInt(header, 0, length);
+		byte[] name = type.getBytes(StandardCharsets.US_ASCII);
+		System.arraycopy(name, 0, header, 4, 4);
+		CRC32 crc = new CRC32();
+		crc.update(name);
+		crc.update(data, offset, length);
+		byte[] trailer = new byte[4];
+		putInt(trailer, 0, (int) crc.getValue());
+		output.write(header);
+		output.write(data, offset, length);
+		output.write(trailer);
+	}
+
+	private static void putInt(byte[] buffer, int offset, int value) {
+		buffer[offset] = (byte) (value >>> 24);
+		buffer[offset + 1] = (byte) (value >>> 16);
+		buffer[offset + 2] = (byte) (value >>> 8);
+		buffer[offset + 3] = (byte) value;
+	}
+}
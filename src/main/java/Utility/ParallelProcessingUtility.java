@@ -0,0 +1,176 @@
+package Utility;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BooleanSupplier;
+
+/**
+ * ParallelProcessingUtility is a utility class that splits an image into bands of rows
+ * and processes them on a shared ForkJoinPool.
+ * It has no dependency on Swing, so it can be used both by the GUI and by headless code.
+ * Small images are processed sequentially on the calling thread.
+ */
+public class ParallelProcessingUtility {
+
+	/**
+	 * A piece of work over a band of rows.
+	 */
+	public interface RowTask {
+		/**
+		 * Processes the rows [fromRow, toRow).
+		 *
+		 * @param fromRow The first row of the band.
+		 * @param toRow The row after the last one of the band.
+		 */
+		void run(int fromRow, int toRow);
+	}
+
+	private static final int BANDS_PER_THREAD = 4;
+	private static final int CANCELLATION_CHECK_PIXELS = 64 * 1024;
+	private static final BooleanSupplier NEVER_CANCELLED = () -> false;
+	private static int parallelism = Integer.getInteger("photodite.parallelism", Runtime.getRuntime().availableProcessors());
+	private static int sequentialThreshold = Integer.getInteger("photodite.sequentialThreshold", 256 * 1024);
+	private static ForkJoinPool pool;
+
+	/**
+	 * Returns the number of worker threads used for image operations.
+	 *
+	 * @return The parallelism level.
+	 */
+	public static synchronized int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Sets the number of worker threads used for image operations.
+	 * A value of 1 makes every operation run sequentially on the calling thread.
+	 *
+	 * @param level The new parallelism level, at least 1.
+	 */
+	public static synchronized void setParallelism(int level) {
+		if (level < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1: " + level);
+		}
+		if (level != parallelism && pool != null) {
+			pool.shutdown();
+			pool = null;
+		}
+		parallelism = level;
+	}
+
+	/**
+	 * Returns the number of pixels under which an image is processed sequentially.
+	 *
+	 * @return The threshold in pixels.
+	 */
+	public static synchronized int getSequentialThreshold() {
+		return sequentialThreshold;
+	}
+
+	/**
+	 * Sets the number of pixels under which an image is processed sequentially.
+	 *
+	 * @param pixels The threshold in pixels.
+	 */
+	public static synchronized void setSequentialThreshold(int pixels) {
+		sequentialThreshold = Math.max(0, pixels);
+	}
+
+	/**
+	 * Returns the pool used for image operations, creating it if needed.
+	 *
+	 * @return The shared ForkJoinPool.
+	 */
+	public static synchronized ForkJoinPool getPool() {
+		if (pool == null) {
+			pool = new ForkJoinPool(parallelism);
+		}
+		return pool;
+	}
+
+	/**
+	 * Runs a task over all the rows of a width x height image.
+	 * The rows are split into bands that are processed in parallel, unless the image
+	 * is smaller than the sequential threshold or the parallelism level is 1.
+	 *
+	 * @param width The width of the image, used to size the bands.
+	 * @param height The number of rows to process.
+	 * @param task The work to run on every band.
+	 */
+	public static void forEachRowBand(int width, int height, RowTask task) {
+		forEachRowBand(width, height, task, NEVER_CANCELLED);
+	}
+
+	/**
+	 * Runs a task over all the rows of a width x height image, checking before every band
+	 * if the work is still needed.
+	 *
+	 * @param width The width of the image, used to size the bands.
+	 * @param height The number of rows to process.
+	 * @param task The work to run on every band.
+	 * @param cancelled Returns true when the result is no longer needed.
+	 * @throws CancellationException If the work was cancelled before it finished.
+	 */
+	public static void forEachRowBand(int width, int height, RowTask task, BooleanSupplier cancelled) {
+		int level;
+		int threshold;
+		synchronized (ParallelProcessingUtility.class) {
+			level = parallelism;
+			threshold = sequentialThreshold;
+		}
+
+		if (level == 1 || height < 2 || (long) width * height <= threshold) {
+			if (cancelled == NEVER_CANCELLED) {
+				task.run(0, height);
+				return;
+			}
+			int bandRows = Math.max(1, CANCELLATION_CHECK_PIXELS / Math.max(1, width));
+			for (int row = 0; row < height; row += bandRows) {
+				if (cancelled.getAsBoolean()) {
+					throw new CancellationException();
+				}
+				task.run(row, Math.min(height, row + bandRows));
+			}
+			return;
+		}
+
+		int bandRows = Math.max(1, height / (level * BANDS_PER_THREAD));
+		getPool().invoke(new RowBandAction(task, 0, height, bandRows, cancelled));
+	}
+
+	/**
+	 * Recursively halves a range of rows until it is small enough to run directly.
+	 */
+	private static class RowBandAction extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		private final RowTask task;
+		private final int fromRow;
+		private final int toRow;
+		private final int bandRows;
+		private final BooleanSupplier cancelled;
+
+		RowBandAction(RowTask task, int fromRow, int toRow, int bandRows, BooleanSupplier cancelled) {
+			this.task = task;
+			this.fromRow = fromRow;
+			this.toRow = toRow;
+			this.bandRows = bandRows;
+			this.cancelled = cancelled;
+		}
+
+		@Override
+		protected void compute() {
+			if (cancelled.getAsBoolean()) {
+				throw new CancellationException();
+			}
+			if (toRow - fromRow <= bandRows) {
+				task.run(fromRow, toRow);
+				return;
+			}
+			int middle = (fromRow + toRow) >>> 1;
+			invokeAll(new RowBandAction(task, fromRow, middle, bandRows, cancelled),
+					  new RowBandAction(task, middle, toRow, bandRows, cancelled));
+		}
+	}
+}
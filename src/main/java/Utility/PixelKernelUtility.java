@@ -0,0 +1,233 @@
+package Utility;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * PixelKernelUtility is a utility class that runs per-pixel operations directly on the
+ * primitive arrays behind a BufferedImage (DataBufferInt or DataBufferByte), so filters
+ * don't go through getRGB/setRGB and don't allocate a Color for every pixel.
+ * Every kernel receives and returns a packed ARGB value.
+ */
+public class PixelKernelUtility {
+
+	/**
+	 * Sepia kernel. Uses the same weights as the original per-pixel implementation
+	 * and keeps the alpha channel of the source pixel.
+	 */
+	public static final IntUnaryOperator SEPIA = argb -> {
+		int red = (argb >> 16) & 0xFF;
+		int green = (argb >> 8) & 0xFF;
+		int blue = argb & 0xFF;
+
+		int tr = Math.min(255, (int) (0.393 * red + 0.769 * green + 0.189 * blue));
+		int tg = Math.min(255, (int) (0.349 * red + 0.686 * green + 0.168 * blue));
+		int tb = Math.min(255, (int) (0.272 * red + 0.534 * green + 0.131 * blue));
+
+		return (argb & 0xFF000000) | (tr << 16) | (tg << 8) | tb;
+	};
+
+	/**
+	 * Negative kernel. Inverts the color channels and keeps the alpha channel.
+	 */
+	public static final IntUnaryOperator NEGATIVE = argb -> argb ^ 0x00FFFFFF;
+
+	/**
+	 * Luminance kernel. Replaces the color channels with their Rec. 601 luma
+	 * (in 8 bit fixed point) and keeps the alpha channel.
+	 */
+	public static final IntUnaryOperator LUMINANCE = argb -> {
+		int red = (argb >> 16) & 0xFF;
+		int green = (argb >> 8) & 0xFF;
+		int blue = argb & 0xFF;
+
+		int luma = (77 * red + 150 * green + 29 * blue + 128) >> 8;
+
+		return (argb & 0xFF000000) | (luma << 16) | (luma << 8) | luma;
+	};
+
+	/**
+	 * Creates a kernel that maps the red, green and blue channels through a lookup table
+	 * and keeps the alpha channel.
+	 *
+	 * @param table A table with 256 entries between 0 and 255.
+	 * @return The lookup kernel.
+	 */
+	public static IntUnaryOperator lookup(int[] table) {
+		return argb -> (argb & 0xFF000000)
+				| (table[(argb >> 16) & 0xFF] << 16)
+				| (table[(argb >> 8) & 0xFF] << 8)
+				| table[argb & 0xFF];
+	}
+
+	/**
+	 * Creates the lookup table of a linear rescale, value * scale + offset, clamped to [0, 255].
+	 * It gives the same values as a RescaleOp on 8 bit channels.
+	 *
+	 * @param scale The scale factor.
+	 * @param offset The offset added after scaling.
+	 * @return A table with 256 entries.
+	 */
+	public static int[] rescaleTable(float scale, float offset) {
+		int[] table = new int[256];
+		for (int i = 0; i < 256; i++) {
+			table[i] = Math.min(255, Math.max(0, (int) (i * scale + offset)));
+		}
+		return table;
+	}
+
+	/**
+	 * Checks if the kernels can work directly on the raster of the image.
+	 * Supported are the non-premultiplied int and byte interleaved RGB(A) types.
+	 *
+	 * @param image The BufferedImage to check.
+	 * @return True if the image doesn't need to be normalized.
+	 */
+	public static boolean isSupported(BufferedImage image) {
+		switch (image.getType()) {
+		case BufferedImage.TYPE_INT_RGB:
+		case BufferedImage.TYPE_INT_ARGB:
+		case BufferedImage.TYPE_3BYTE_BGR:
+		case BufferedImage.TYPE_4BYTE_ABGR:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Returns an image the kernels can work on.
+	 * Supported images are returned as they are, all other types (grayscale, indexed,
+	 * premultiplied, custom...) are converted to TYPE_INT_ARGB or TYPE_INT_RGB.
+	 *
+	 * @param image The BufferedImage to normalize.
+	 * @return The image itself or a converted copy of it.
+	 */
+	public static BufferedImage normalize(BufferedImage image) {
+		if (isSupported(image)) {
+			return image;
+		}
+		int type = image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+		BufferedImage normalized = new BufferedImage(image.getWidth(), image.getHeight(), type);
+		Graphics2D g = normalized.createGraphics();
+		g.drawImage(image, 0, 0, null);
+		g.dispose();
+		return normalized;
+	}
+
+	/**
+	 * Creates an empty image with the same size and pixel layout as a supported image.
+	 *
+	 * @param image A BufferedImage that passed isSupported.
+	 * @return A new BufferedImage of the same type and size.
+	 */
+	public static BufferedImage createCompatibleImage(BufferedImage image) {
+		return createCompatibleImage(image, image.getWidth(), image.getHeight());
+	}
+
+	/**
+	 * Creates an empty image with the same pixel layout as a supported image.
+	 *
+	 * @param image A BufferedImage that passed isSupported.
+	 * @param width The width of the new image.
+	 * @param height The height of the new image.
+	 * @return A new BufferedImage of the same type.
+	 */
+	public static BufferedImage createCompatibleImage(BufferedImage image, int width, int height) {
+		return new BufferedImage(width, height, image.getType());
+	}
+
+	/**
+	 * Applies a kernel to every pixel of the source and writes the result in the destination.
+	 *
+	 * @param src The source image, it must be supported.
+	 * @param dst The destination image, same type and size as the source. It can be the source itself.
+	 * @param kernel The per-pixel operation on packed ARGB values.
+	 */
+	public static void apply(BufferedImage src, BufferedImage dst, IntUnaryOperator kernel) {
+		apply(src, dst, kernel, 0, src.getHeight());
+	}
+
+	/**
+	 * Applies a kernel to the rows [fromRow, toRow) of the source and writes the result
+	 * in the same rows of the destination.
+	 *
+	 * @param src The source image, it must be supported.
+	 * @param dst The destination image, same type and size as the source. It can be the source itself.
+	 * @param kernel The per-pixel operation on packed ARGB values.
+	 * @param fromRow The first row to process.
+	 * @param toRow The row after the last one to process.
+	 */
+	public static void apply(BufferedImage src, BufferedImage dst, IntUnaryOperator kernel, int fromRow, int toRow) {
+		if (src.getType() != dst.getType() || !isSupported(src)) {
+			throw new IllegalArgumentException("Unsupported image type: " + src.getType() + " -> " + dst.getType());
+		}
+		if (src.getRaster().getDataBuffer() instanceof DataBufferInt) {
+			applyInt(src.getRaster(), dst.getRaster(), kernel, fromRow, toRow);
+		} else {
+			applyByte(src.getRaster(), dst.getRaster(), kernel, fromRow, toRow);
+		}
+	}
+
+	private static void applyInt(Raster src, Raster dst, IntUnaryOperator kernel, int fromRow, int toRow) {
+		int width = src.getWidth();
+		int[] in = ((DataBufferInt) src.getDataBuffer()).getData();
+		int[] out = ((DataBufferInt) dst.getDataBuffer()).getData();
+		int inStride = ((SinglePixelPackedSampleModel) src.getSampleModel()).getScanlineStride();
+		int outStride = ((SinglePixelPackedSampleModel) dst.getSampleModel()).getScanlineStride();
+		int inBase = src.getDataBuffer().getOffset() - src.getSampleModelTranslateY() * inStride - src.getSampleModelTranslateX();
+		int outBase = dst.getDataBuffer().getOffset() - dst.getSampleModelTranslateY() * outStride - dst.getSampleModelTranslateX();
+
+		for (int y = fromRow; y < toRow; y++) {
+			int i = inBase + y * inStride;
+			int o = outBase + y * outStride;
+			for (int x = 0; x < width; x++) {
+				out[o + x] = kernel.applyAsInt(in[i + x]);
+			}
+		}
+	}
+
+	private static void applyByte(Raster src, Raster dst, IntUnaryOperator kernel, int fromRow, int toRow) {
+		int width = src.getWidth();
+		byte[] in = ((DataBufferByte) src.getDataBuffer()).getData();
+		byte[] out = ((DataBufferByte) dst.getDataBuffer()).getData();
+		ComponentSampleModel inModel = (ComponentSampleModel) src.getSampleModel();
+		ComponentSampleModel outModel = (ComponentSampleModel) dst.getSampleModel();
+		int inPixel = inModel.getPixelStride();
+		int outPixel = outModel.getPixelStride();
+		int inStride = inModel.getScanlineStride();
+		int outStride = outModel.getScanlineStride();
+		int inBase = src.getDataBuffer().getOffset() - src.getSampleModelTranslateY() * inStride - src.getSampleModelTranslateX() * inPixel;
+		int outBase = dst.getDataBuffer().getOffset() - dst.getSampleModelTranslateY() * outStride - dst.getSampleModelTranslateX() * outPixel;
+		int[] inBands = inModel.getBandOffsets();
+		int[] outBands = outModel.getBandOffsets();
+		boolean alpha = inBands.length > 3;
+
+		for (int y = fromRow; y < toRow; y++) {
+			int i = inBase + y * inStride;
+			int o = outBase + y * outStride;
+			for (int x = 0; x < width; x++, i += inPixel, o += outPixel) {
+				int a = alpha ? in[i + inBands[3]] & 0xFF : 0xFF;
+				int argb = (a << 24)
+						| ((in[i + inBands[0]] & 0xFF) << 16)
+						| ((in[i + inBands[1]] & 0xFF) << 8)
+						| (in[i + inBands[2]] & 0xFF);
+
+				int result = kernel.applyAsInt(argb);
+
+				out[o + outBands[0]] = (byte) (result >> 16);
+				out[o + outBands[1]] = (byte) (result >> 8);
+				out[o + outBands[2]] = (byte) result;
+				if (alpha) {
+					out[o + outBands[3]] = (byte) (result >>> 24);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,188 @@
+package Utility;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntUnaryOperator;
+
+import Utility.MetricsRegistry.Area;
+import Utility.MetricsRegistry.Timing;
+
+/**
+ * PointOperationPipeline compiles the active point operations of an edit (brightness,
+ * contrast and a color filter) into one lookup table and at most one color matrix,
+ * so that they can be applied to an image in a single pass.
+ * The result is the same as running adjustBrightness, adjustContrast and the filter
+ * one after the other.
+ */
+public class PointOperationPipeline {
+
+	/**
+	 * The color filters that can be selected in the editor.
+	 */
+	public enum Filter {
+		NONE("No Filter"),
+		GRAYSCALE("Grayscale"),
+		SEPIA("Sepia"),
+		NEGATIVE("Negative");
+
+		private final String label;
+
+		Filter(String label) {
+			this.label = label;
+		}
+
+		public String getLabel() {
+			return label;
+		}
+
+		/**
+		 * Finds the filter with the given label.
+		 *
+		 * @param label The label shown in the filter combo box.
+		 * @return The matching filter, or NONE if the label is unknown.
+		 */
+		public static Filter fromLabel(String label) {
+			for (Filter filter : values()) {
+				if (filter.label.equals(label)) {
+					return filter;
+				}
+			}
+			return NONE;
+		}
+	}
+
+	private final int brightness;
+	private final int contrast;
+	private final Filter filter;
+	private final int[] table;
+	private final IntUnaryOperator kernel;
+
+	/**
+	 * Compiles the given adjustments into a single per-pixel kernel.
+	 *
+	 * @param brightness The brightness adjustment, as for ImageProcessorUtility.adjustBrightness.
+	 * @param contrast The contrast adjustment, as for ImageProcessorUtility.adjustContrast.
+	 * @param filter The color filter applied after the adjustments.
+	 */
+	public PointOperationPipeline(int brightness, int contrast, Filter filter) {
+		this.brightness = brightness;
+		this.contrast = contrast;
+		this.filter = filter;
+		this.table = compileTable(brightness, contrast, filter);
+		this.kernel = compileKernel(table, filter);
+	}
+
+	public int getBrightness() {
+		return brightness;
+	}
+
+	public int getContrast() {
+		return contrast;
+	}
+
+	public Filter getFilter() {
+		return filter;
+	}
+
+	/**
+	 * Returns the lookup table applied to every color channel.
+	 * The negative filter is already folded into it.
+	 *
+	 * @return A copy of the 256 entry table.
+	 */
+	public int[] getTable() {
+		return table.clone();
+	}
+
+	/**
+	 * Returns the fused kernel on packed ARGB values.
+	 *
+	 * @return The kernel.
+	 */
+	public IntUnaryOperator getKernel() {
+		return kernel;
+	}
+
+	/**
+	 * Checks if the pipeline leaves every pixel unchanged.
+	 *
+	 * @return True if there is no active adjustment.
+	 */
+	public boolean isIdentity() {
+		return kernel == null;
+	}
+
+	/**
+	 * Applies the pipeline to an image in one pass over its pixels.
+	 * If no adjustment is active the image itself is returned.
+	 *
+	 * @param image The source image, it is not modified.
+	 * @return A new BufferedImage with all the adjustments applied.
+	 */
+	public BufferedImage apply(BufferedImage image) {
+		return apply(image, () -> false);
+	}
+
+	/**
+	 * Applies the pipeline to an image in one pass over its pixels, stopping early
+	 * if the result is no longer needed.
+	 *
+	 * @param image The source image, it is not modified.
+	 * @param cancelled Returns true when the result is no longer needed.
+	 * @return A new BufferedImage with all the adjustments applied.
+	 * @throws CancellationException If the work was cancelled before it finished.
+	 */
+	@SuppressWarnings("try")
+	public BufferedImage apply(BufferedImage image, BooleanSupplier cancelled) {
+		if (isIdentity()) {
+			return image;
+		}
+		try (Timing timing = MetricsRegistry.time(Area.IMAGE, "pipeline", image)) {
+			BufferedImage source = PixelKernelUtility.normalize(image);
+			BufferedImage result = PixelKernelUtility.createCompatibleImage(source);
+			ParallelProcessingUtility.forEachRowBand(source.getWidth(), source.getHeight(),
+					(fromRow, toRow) -> PixelKernelUtility.apply(source, result, kernel, fromRow, toRow), cancelled);
+			return result;
+		}
+	}
+
+	private static int[] compileTable(int brightness, int contrast, Filter filter) {
+		int[] brightnessTable = PixelKernelUtility.rescaleTable(1 + (brightness / 100.0f), brightness);
+		float contrastScale = 1 + (contrast / 100.0f);
+		int[] contrastTable = PixelKernelUtility.rescaleTable(contrastScale, 128 * (1 - contrastScale));
+
+		int[] table = new int[256];
+		for (int i = 0; i < 256; i++) {
+			table[i] = contrastTable[brightnessTable[i]];
+			if (filter == Filter.NEGATIVE) {
+				table[i] = 255 - table[i];
+			}
+		}
+		return table;
+	}
+
+	private static IntUnaryOperator compileKernel(int[] table, Filter filter) {
+		boolean identityTable = true;
+		for (int i = 0; i < 256 && identityTable; i++) {
+			identityTable = table[i] == i;
+		}
+
+		IntUnaryOperator matrix = null;
+		if (filter == Filter.GRAYSCALE) {
+			matrix = PixelKernelUtility.LUMINANCE;
+		} else if (filter == Filter.SEPIA) {
+			matrix = PixelKernelUtility.SEPIA;
+		}
+
+		if (identityTable) {
+			return matrix;
+		}
+		IntUnaryOperator lookup = PixelKernelUtility.lookup(table);
+		if (matrix == null) {
+			return lookup;
+		}
+		IntUnaryOperator colorMatrix = matrix;
+		return argb -> colorMatrix.applyAsInt(lookup.applyAsInt(argb));
+	}
+}
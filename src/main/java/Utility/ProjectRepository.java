@@ -0,0 +1,48 @@
+package Utility;
+
+import java.io.IOException;
+import java.util.List;
+
+import project.Project;
+
+/**
+ * ProjectRepository is where the catalog of projects (name, path and file type) is stored.
+ * MySqlProjectRepository keeps it in the MySQL database and FileProjectRepository in a local
+ * append-only file, which needs no server. RepositoryUtility selects the implementation.
+ */
+public interface ProjectRepository {
+
+	/**
+	 * Prepares the storage, for example by creating the table or the file if it doesn't exist.
+	 *
+	 * @throws IOException If the storage can't be reached or created.
+	 */
+	void initialize() throws IOException;
+
+	/**
+	 * Adds a project. A project that already exists at the same path is updated instead.
+	 *
+	 * @param project The project to add.
+	 * @throws IOException If the project can't be stored.
+	 */
+	void addProject(Project project) throws IOException;
+
+	/**
+	 * Removes the project at a path.
+	 *
+	 * @param path The path of the project's image.
+	 * @throws IOException If the project can't be removed.
+	 */
+	void deleteProject(String path) throws IOException;
+
+	/**
+	 * Loads one page of projects, in the order they were added, as "name - path - type" entries.
+	 *
+	 * @param afterId The id of the last project of the previous page, 0 for the first page.
+	 * @param limit The maximum number of projects in the page.
+	 * @param entries The list the entries are added to.
+	 * @return The id of the last project of the page, or afterId if the page is empty.
+	 * @throws IOException If the projects can't be read.
+	 */
+	long loadProjectsPage(long afterId, int limit, List<String> entries) throws IOException;
+}
@@ -0,0 +1,430 @@
+package Utility;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.LongConsumer;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import Utility.MetricsRegistry.Area;
+import Utility.MetricsRegistry.Timing;
+
+/**
+ * RegionImageLoader decodes the parts of an image file that are needed, instead of the whole file.
+ * The image is split into square tiles at power of two subsampling levels: level 0 is the full
+ * resolution and a tile of level n covers TILE_SIZE * 2^n pixels of the image, keeping every 2^n-th
+ * pixel. Tiles are decoded with ImageReadParam.setSourceRegion and setSourceSubsampling and kept in
+ * a least recently used cache, up to a budget in bytes, so showing and panning around a huge file
+ * only decodes what is on screen. The tiles of the range requested last, the ones on screen, are
+ * pinned: they are never dropped, even when they don't fit in the budget on their own.
+ *
+ * Tiles can be read right away with getTile or requested with requestTiles, which decodes them
+ * in the background, most recent requests first, and calls back when they are ready.
+ * TIFF files with tiles or strips are decoded from the requested part of the file only;
+ * JPEG and PNG readers still scan the file up to the bottom of the region, which is why the
+ * missing tiles of a request are decoded together, in one read.
+ */
+public class RegionImageLoader {
+
+	public static final int TILE_SIZE = 512;
+
+	private static final ExecutorService DECODER = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "PhotoDitE-region");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private static long defaultBudget = Long.getLong("photodite.regionCacheBudget", 128L * 1024 * 1024);
+
+	private final File file;
+	private final int width;
+	private final int height;
+	private final long budget;
+	private final LinkedHashMap<Long, BufferedImage> cache = new LinkedHashMap<>(16, 0.75f, true);
+	private long cachedBytes = 0;
+	private final Set<Long> pending = new HashSet<>();
+	private final Set<Long> failed = new HashSet<>();
+	private final LinkedHashMap<Integer, Request> queued = new LinkedHashMap<>();
+	private int visibleLevel = -1;
+	private Rectangle visible = new Rectangle();
+
+	/**
+	 * Opens an image file, reading only its size.
+	 *
+	 * @param file The image file.
+	 * @param budget The maximum number of bytes of decoded tiles that are cached.
+	 * @throws IOException If the file can't be read or its format isn't supported.
+	 */
+	public RegionImageLoader(File file, long budget) throws IOException {
+		this.file = file;
+		this.budget = budget;
+		try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+			ImageReader reader = readerFor(input);
+			try {
+				width = reader.getWidth(0);
+				height = reader.getHeight(0);
+			} finally {
+				reader.dispose();
+			}
+		}
+	}
+
+	/**
+	 * Opens an image file with the default cache budget.
+	 *
+	 * @param file The image file.
+	 * @throws IOException If the file can't be read or its format isn't supported.
+	 */
+	public RegionImageLoader(File file) throws IOException {
+		this(file, getDefaultBudget());
+	}
+
+	/**
+	 * Returns the cache budget of the loaders created without one.
+	 *
+	 * @return The number of bytes of decoded tiles, 128 MB unless set by photodite.regionCacheBudget.
+	 */
+	public static synchronized long getDefaultBudget() {
+		return defaultBudget;
+	}
+
+	/**
+	 * Sets the cache budget of the loaders created from now on without one.
+	 *
+	 * @param bytes The number of bytes of decoded tiles, the tiles of the range requested last are always kept.
+	 */
+	public static synchronized void setDefaultBudget(long bytes) {
+		defaultBudget = bytes;
+	}
+
+	/**
+	 * Returns the coarsest level that still has enough pixels for a scale.
+	 *
+	 * @param scale The ratio between the displayed size and the full size of the image.
+	 * @return The level n whose subsampling 2^n is at most 1 / scale, 0 when zoomed in.
+	 */
+	public static int levelFor(double scale) {
+		int level = 0;
+		while (scale * (2L << level) <= 1.0 && level < 30) {
+			level++;
+		}
+		return level;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getTilesX(int level) {
+		long span = (long) TILE_SIZE << level;
+		return (int) ((width + span - 1) / span);
+	}
+
+	public int getTilesY(int level) {
+		long span = (long) TILE_SIZE << level;
+		return (int) ((height + span - 1) / span);
+	}
+
+	/**
+	 * Returns the part of the full resolution image covered by a tile.
+	 *
+	 * @param level The subsampling level of the tile.
+	 * @param tileX The column of the tile.
+	 * @param tileY The row of the tile.
+	 * @return The rectangle of the image, cut at its edges.
+	 */
+	public Rectangle getTileBounds(int level, int tileX, int tileY) {
+		long span = (long) TILE_SIZE << level;
+		int x = (int) Math.min(width, tileX * span);
+		int y = (int) Math.min(height, tileY * span);
+		return new Rectangle(x, y, (int) Math.min(span, width - x), (int) Math.min(span, height - y));
+	}
+
+	/**
+	 * Decodes a region of the image, without caching it.
+	 *
+	 * @param region The region of the full resolution image.
+	 * @param subsampling Keeps every n-th pixel of every n-th row of the region, 1 decodes all of them.
+	 * @return The decoded region.
+	 * @throws IOException If the file can't be read or decoded.
+	 */
+	@SuppressWarnings("try")
+	public BufferedImage readRegion(Rectangle region, int subsampling) throws IOException {
+		try (Timing timing = MetricsRegistry.time(Area.IO, "loadRegion", file.getName());
+				ImageInputStream input = ImageIO.createImageInputStream(file)) {
+			ImageReader reader = readerFor(input);
+			try {
+				ImageReadParam param = reader.getDefaultReadParam();
+				param.setSourceRegion(region);
+				param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+				return reader.read(0, param);
+			} finally {
+				reader.dispose();
+			}
+		}
+	}
+
+	/**
+	 * Decodes the whole image into a new temporary MappedTileStore, in bands of full rows that take at
+	 * most the cache budget of the loader, so an image larger than the heap, or than a BufferedImage,
+	 * can be edited tile by tile. TIFF files are read once; JPEG and PNG readers scan the file from
+	 * the top for every band, which is why the bands are as tall as the budget allows.
+	 *
+	 * @return The store, which the caller must close.
+	 * @throws IOException If the file can't be read or decoded, or the store can't be written.
+	 */
+	@SuppressWarnings("try")
+	public MappedTileStore readTiles() throws IOException {
+		long rowBytes = (long) width * Integer.BYTES;
+		int tileRows = (int) Math.max(1, Math.min(budget / rowBytes, Integer.MAX_VALUE / width) / MappedTileStore.TILE_SIZE);
+		int bandRows = tileRows * MappedTileStore.TILE_SIZE;
+		MappedTileStore tiles = null;
+		try (Timing timing = MetricsRegistry.time(Area.IO, "loadTiles", file.getName())) {
+			for (int top = 0; top < height; top += bandRows) {
+				BufferedImage band = readRegion(new Rectangle(0, top, width, Math.min(bandRows, height - top)), 1);
+				if (tiles == null) {
+					tiles = MappedTileStore.create(width, height, band.getColorModel().hasAlpha());
+				}
+				tiles.setRegion(0, top, band);
+			}
+			return tiles;
+		} catch (IOException | RuntimeException e) {
+			if (tiles != null) {
+				tiles.close();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns a tile, decoding it right away if it isn't cached.
+	 *
+	 * @param level The subsampling level of the tile.
+	 * @param tileX The column of the tile.
+	 * @param tileY The row of the tile.
+	 * @return The tile, TILE_SIZE pixels wide and high except at the right and bottom edges.
+	 * @throws IOException If the file can't be read or decoded.
+	 */
+	public BufferedImage getTile(int level, int tileX, int tileY) throws IOException {
+		BufferedImage tile = getCachedTile(level, tileX, tileY);
+		if (tile == null) {
+			decode(level, new Rectangle(tileX, tileY, 1, 1));
+			tile = getCachedTile(level, tileX, tileY);
+		}
+		return tile;
+	}
+
+	/**
+	 * Returns a tile if it is cached.
+	 *
+	 * @param level The subsampling level of the tile.
+	 * @param tileX The column of the tile.
+	 * @param tileY The row of the tile.
+	 * @return The tile, or null if it hasn't been decoded.
+	 */
+	public synchronized BufferedImage getCachedTile(int level, int tileX, int tileY) {
+		return cache.get(key(level, tileX, tileY));
+	}
+
+	/**
+	 * Decodes the missing tiles of a range in the background, in one read. Ranges requested later
+	 * are decoded first, and a range that is still waiting is dropped when another range of the
+	 * same level is requested, so panning only decodes what is on screen when the decoder gets to it.
+	 * The range becomes the range on screen: its tiles are pinned in the cache until another range
+	 * is requested, so it should be requested on every paint, even when all its tiles are cached.
+	 *
+	 * @param level The subsampling level of the tiles.
+	 * @param tiles The columns and rows of the tiles.
+	 * @param whenLoaded Called on the decoding thread when the tiles are cached, for example to repaint.
+	 */
+	public void requestTiles(int level, Rectangle tiles, Runnable whenLoaded) {
+		Rectangle range = tiles.intersection(new Rectangle(0, 0, getTilesX(level), getTilesY(level)));
+		Rectangle missing = null;
+		synchronized (this) {
+			visibleLevel = level;
+			visible = range;
+			Request replaced = queued.remove(level);
+			if (replaced != null) {
+				markPending(level, replaced.tiles, false);
+			}
+			for (int tileY = range.y; tileY < range.y + range.height; tileY++) {
+				for (int tileX = range.x; tileX < range.x + range.width; tileX++) {
+					long key = key(level, tileX, tileY);
+					if (!cache.containsKey(key) && !pending.contains(key) && !failed.contains(key)) {
+						Rectangle tile = new Rectangle(tileX, tileY, 1, 1);
+						missing = missing == null ? tile : missing.union(tile);
+					}
+				}
+			}
+			if (missing == null) {
+				return;
+			}
+			markPending(level, missing, true);
+			queued.put(level, new Request(level, missing, whenLoaded));
+		}
+		DECODER.execute(this::runLatestRequest);
+	}
+
+	/**
+	 * Returns the number of bytes of the cached tiles.
+	 *
+	 * @return At most the budget, unless the pinned tiles of the range on screen don't fit in it.
+	 */
+	public synchronized long getCachedBytes() {
+		return cachedBytes;
+	}
+
+	/**
+	 * Drops all the cached tiles.
+	 */
+	public synchronized void clearCache() {
+		cache.clear();
+		cachedBytes = 0;
+		failed.clear();
+	}
+
+	/**
+	 * A range of tiles waiting to be decoded.
+	 */
+	private static final class Request {
+		private final int level;
+		private final Rectangle tiles;
+		private final Runnable whenLoaded;
+
+		private Request(int level, Rectangle tiles, Runnable whenLoaded) {
+			this.level = level;
+			this.tiles = tiles;
+			this.whenLoaded = whenLoaded;
+		}
+	}
+
+	/**
+	 * Helper method that runs the most recent request. One call is queued for every request,
+	 * the calls of the requests that were dropped find nothing to run.
+	 */
+	private void runLatestRequest() {
+		Request request = null;
+		synchronized (this) {
+			for (Request waiting : queued.values()) {
+				request = waiting;
+			}
+			if (request == null) {
+				return;
+			}
+			queued.remove(request.level);
+		}
+		try {
+			decode(request.level, request.tiles);
+		} catch (IOException e) {
+			e.printStackTrace();
+			synchronized (this) {
+				forEachKey(request.level, request.tiles, failed::add);
+			}
+		} finally {
+			markPending(request.level, request.tiles, false);
+		}
+		request.whenLoaded.run();
+	}
+
+	/**
+	 * Helper method that decodes a range of tiles of a level in one read and caches every tile.
+	 */
+	private void decode(int level, Rectangle tiles) throws IOException {
+		Rectangle first = getTileBounds(level, tiles.x, tiles.y);
+		Rectangle last = getTileBounds(level, tiles.x + tiles.width - 1, tiles.y + tiles.height - 1);
+		BufferedImage region = readRegion(first.union(last), 1 << level);
+		for (int tileY = tiles.y; tileY < tiles.y + tiles.height; tileY++) {
+			for (int tileX = tiles.x; tileX < tiles.x + tiles.width; tileX++) {
+				int x = (tileX - tiles.x) * TILE_SIZE;
+				int y = (tileY - tiles.y) * TILE_SIZE;
+				int w = Math.min(TILE_SIZE, region.getWidth() - x);
+				int h = Math.min(TILE_SIZE, region.getHeight() - y);
+				cache(key(level, tileX, tileY), tiles.width == 1 && tiles.height == 1 ? region : copy(region, x, y, w, h));
+			}
+		}
+		MetricsRegistry.counter("region.tilesDecoded").add(tiles.width * tiles.height);
+	}
+
+	private synchronized void cache(long key, BufferedImage tile) {
+		BufferedImage previous = cache.put(key, tile);
+		if (previous != null) {
+			cachedBytes -= bytes(previous);
+		}
+		cachedBytes += bytes(tile);
+		// the tiles on screen and the tile just decoded, which getTile is about to return, are kept
+		Iterator<Map.Entry<Long, BufferedImage>> eldest = cache.entrySet().iterator();
+		while (cachedBytes > budget && eldest.hasNext()) {
+			Map.Entry<Long, BufferedImage> entry = eldest.next();
+			if (entry.getKey() != key && !isVisible(entry.getKey())) {
+				cachedBytes -= bytes(entry.getValue());
+				eldest.remove();
+			}
+		}
+	}
+
+	private boolean isVisible(long key) {
+		int tileX = (int) (key & ((1L << 29) - 1));
+		int tileY = (int) ((key >>> 29) & ((1L << 29) - 1));
+		return (int) (key >>> 58) == visibleLevel && visible.contains(tileX, tileY);
+	}
+
+	private synchronized void markPending(int level, Rectangle tiles, boolean add) {
+		forEachKey(level, tiles, add ? pending::add : pending::remove);
+	}
+
+	private static void forEachKey(int level, Rectangle tiles, LongConsumer action) {
+		for (int tileY = tiles.y; tileY < tiles.y + tiles.height; tileY++) {
+			for (int tileX = tiles.x; tileX < tiles.x + tiles.width; tileX++) {
+				action.accept(key(level, tileX, tileY));
+			}
+		}
+	}
+
+	/**
+	 * Helper method that copies a part of an image, so that the tile doesn't keep the whole region in memory.
+	 */
+	private static BufferedImage copy(BufferedImage image, int x, int y, int w, int h) {
+		WritableRaster raster = image.getRaster().createCompatibleWritableRaster(w, h);
+		raster.setDataElements(0, 0, image.getRaster().createChild(x, y, w, h, 0, 0, null));
+		return new BufferedImage(image.getColorModel(), raster, image.isAlphaPremultiplied(), null);
+	}
+
+	private static long bytes(BufferedImage image) {
+		return (long) image.getWidth() * image.getHeight() * Math.max(1, image.getColorModel().getPixelSize() / 8);
+	}
+
+	private static long key(int level, int tileX, int tileY) {
+		return ((long) level << 58) | ((long) tileY << 29) | tileX;
+	}
+
+	private static ImageReader readerFor(ImageInputStream input) throws IOException {
+		Iterator<ImageReader> readers = input != null ? ImageIO.getImageReaders(input) : null;
+		if (readers == null || !readers.hasNext()) {
+			throw new IOException("Unsupported image format");
+		}
+		ImageReader reader = readers.next();
+		reader.setInput(input, true, true);
+		return reader;
+	}
+}
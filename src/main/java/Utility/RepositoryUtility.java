@@ -0,0 +1,49 @@
+package Utility;
+
+import java.io.File;
+
+/**
+ * RepositoryUtility is a utility class that selects where the catalog of projects is stored.
+ * The photodite.repository system property chooses the implementation: "mysql" (the default)
+ * for the MySQL database, or "file" for a local file that needs no server, by default
+ * ~/.photodite/projects.log, or the file given by the photodite.repository.file property.
+ */
+public class RepositoryUtility {
+
+	private static ProjectRepository repository;
+
+	/**
+	 * Returns the project repository, creating it from the system properties the first time.
+	 *
+	 * @return The project repository.
+	 */
+	public static synchronized ProjectRepository getProjectRepository() {
+		if (repository == null) {
+			repository = createFromProperties();
+		}
+		return repository;
+	}
+
+	/**
+	 * Replaces the project repository, for example to use a different file in tests.
+	 *
+	 * @param projectRepository The new repository.
+	 */
+	public static synchronized void setProjectRepository(ProjectRepository projectRepository) {
+		repository = projectRepository;
+	}
+
+	private static ProjectRepository createFromProperties() {
+		String type = System.getProperty("photodite.repository", "mysql");
+		switch (type.toLowerCase()) {
+		case "mysql":
+			return new MySqlProjectRepository();
+		case "file":
+			String path = System.getProperty("photodite.repository.file",
+					System.getProperty("user.home") + File.separator + ".photodite" + File.separator + "projects.log");
+			return new FileProjectRepository(new File(path));
+		default:
+			throw new IllegalArgumentException("Unknown project repository: " + type);
+		}
+	}
+}
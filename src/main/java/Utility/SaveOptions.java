@@ -0,0 +1,170 @@
+package Utility;
+
+import javax.imageio.ImageWriteParam;
+
+/**
+ * SaveOptions are the encoder settings used when an image is written: the compression mode
+ * and quality, progressive output and, for PNG, the deflate level. They trade encoding time
+ * against file size, for example a low deflate level for intermediate PNGs that are written
+ * often, or a tuned JPEG quality for the images that are delivered.
+ * SaveOptions are immutable, every with... method returns a new instance.
+ */
+public class SaveOptions {
+
+	/**
+	 * The options of ImageIO.write: the encoder's default compression, no progressive output.
+	 */
+	public static final SaveOptions DEFAULT = new SaveOptions(ImageWriteParam.MODE_DEFAULT, -1f, false, -1);
+
+	private final int compressionMode;
+	private final float quality;
+	private final boolean progressive;
+	private final int deflateLevel;
+
+	private SaveOptions(int compressionMode, float quality, boolean progressive, int deflateLevel) {
+		this.compressionMode = compressionMode;
+		this.quality = quality;
+		this.progressive = progressive;
+		this.deflateLevel = deflateLevel;
+	}
+
+	/**
+	 * Creates options for a JPEG of a given quality.
+	 *
+	 * @param quality The quality, from 0 (smallest file) to 1 (best quality).
+	 * @return The options.
+	 */
+	public static SaveOptions jpeg(float quality) {
+		return DEFAULT.withQuality(quality);
+	}
+
+	/**
+	 * Creates options for a PNG of a given deflate level.
+	 *
+	 * @param level The level, from 0 (no compression, fastest) to 9 (smallest file).
+	 * @return The options.
+	 */
+	public static SaveOptions png(int level) {
+		return DEFAULT.withDeflateLevel(level);
+	}
+
+	/**
+	 * Sets the compression quality, which also makes the compression mode explicit.
+	 *
+	 * @param compressionQuality The quality, from 0 (smallest file) to 1 (best quality).
+	 * @return New options with the quality.
+	 */
+	public SaveOptions withQuality(float compressionQuality) {
+		if (compressionQuality < 0f || compressionQuality > 1f) {
+			throw new IllegalArgumentException("Quality must be between 0 and 1: " + compressionQuality);
+		}
+		return new SaveOptions(ImageWriteParam.MODE_EXPLICIT, compressionQuality, progressive, -1);
+	}
+
+	/**
+	 * Sets the deflate level of PNG images. It is passed to the PNG encoder as a
+	 * compression quality of about 1 - level / 9, so it replaces any quality set before.
+	 *
+	 * @param level The level, from 0 (no compression, fastest) to 9 (smallest file).
+	 * @return New options with the level.
+	 */
+	public SaveOptions withDeflateLevel(int level) {
+		if (level < 0 || level > 9) {
+			throw new IllegalArgumentException("Deflate level must be between 0 and 9: " + level);
+		}
+		return new SaveOptions(ImageWriteParam.MODE_EXPLICIT, -1f, progressive, level);
+	}
+
+	/**
+	 * Sets the compression mode, one of the ImageWriteParam.MODE_... constants.
+	 * MODE_DISABLED writes without compression if the format allows it.
+	 *
+	 * @param mode The compression mode.
+	 * @return New options with the mode.
+	 */
+	public SaveOptions withCompressionMode(int mode) {
+		return new SaveOptions(mode, mode == ImageWriteParam.MODE_EXPLICIT ? quality : -1f, progressive,
+				mode == ImageWriteParam.MODE_EXPLICIT ? deflateLevel : -1);
+	}
+
+	/**
+	 * Turns progressive output on or off: progressive scans for JPEG, Adam7 interlacing for PNG.
+	 *
+	 * @param progressiveOutput True for progressive output.
+	 * @return New options with the setting.
+	 */
+	public SaveOptions withProgressive(boolean progressiveOutput) {
+		return new SaveOptions(compressionMode, quality, progressiveOutput, deflateLevel);
+	}
+
+	public int getCompressionMode() {
+		return compressionMode;
+	}
+
+	/**
+	 * Returns the compression quality.
+	 *
+	 * @return The quality, or -1 if the encoder's default is used.
+	 */
+	public float getQuality() {
+		return quality;
+	}
+
+	public boolean isProgressive() {
+		return progressive;
+	}
+
+	/**
+	 * Returns the deflate level of PNG images.
+	 *
+	 * @return The level, or -1 if the encoder's default is used.
+	 */
+	public int getDeflateLevel() {
+		return deflateLevel;
+	}
+
+	/**
+	 * Copies the options into the write parameters of an encoder. Settings the encoder
+	 * doesn't support are left out.
+	 *
+	 * @param param The parameters from ImageWriter.getDefaultWriteParam().
+	 * @return The same parameters.
+	 */
+	public ImageWriteParam applyTo(ImageWriteParam param) {
+		if (param.canWriteProgressive()) {
+			param.setProgressiveMode(progressive ? ImageWriteParam.MODE_DEFAULT : ImageWriteParam.MODE_DISABLED);
+		}
+		if (param.canWriteCompressed()) {
+			boolean explicit = compressionMode == ImageWriteParam.MODE_EXPLICIT && (deflateLevel >= 0 || quality >= 0f);
+			param.setCompressionMode(explicit || compressionMode != ImageWriteParam.MODE_EXPLICIT ? compressionMode : ImageWriteParam.MODE_DEFAULT);
+			if (explicit) {
+				if (param.getCompressionType() == null) {
+					param.setCompressionType(param.getCompressionTypes()[0]);
+				}
+				if (deflateLevel >= 0) {
+					// the PNG encoder uses the level (int) (9 * (1 - quality)), aim for the middle of the step
+					param.setCompressionQuality(Math.max(0f, 1f - (deflateLevel + 0.5f) / 9f));
+				} else if (quality >= 0f) {
+					param.setCompressionQuality(quality);
+				}
+			}
+		}
+		return param;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder();
+		if (deflateLevel >= 0) {
+			text.append("level ").append(deflateLevel);
+		} else if (quality >= 0f) {
+			text.append("quality ").append(quality);
+		} else {
+			text.append(compressionMode == ImageWriteParam.MODE_DISABLED ? "uncompressed" : "default");
+		}
+		if (progressive) {
+			text.append(", progressive");
+		}
+		return text.toString();
+	}
+}
@@ -0,0 +1,306 @@
+package Utility;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+import javax.swing.SwingUtilities;
+
+/**
+ * ThumbnailCache keeps small previews of image files, in memory and on disk.
+ * A thumbnail is keyed by the path, the modification time and the size of its file, so it is
+ * generated again when the file changes. In memory, thumbnails are looked up by path only, so
+ * painting never touches the disk; the file is checked in the background when the thumbnail
+ * is requested again, and an outdated thumbnail is shown until then. Missing thumbnails are
+ * generated in the background by a bounded pool of workers, decoding a subsampled copy of the
+ * image instead of the full one.
+ * The disk cache lives in ~/.photodite/thumbnails, or in the directory given by the
+ * photodite.thumbnailDir system property. It is capped at 64 MB, or the number of bytes given
+ * by the photodite.thumbnailCacheBytes property: when it grows past the cap, the thumbnails
+ * used least recently are deleted, so thumbnails of deleted projects don't stay forever.
+ */
+public class ThumbnailCache {
+
+	public static final int THUMBNAIL_SIZE = 48;
+
+	private static final int MEMORY_ENTRIES = 1024;
+	private static final int WORKERS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+	private static final ThreadPoolExecutor GENERATOR = new ThreadPoolExecutor(WORKERS, WORKERS, 30, TimeUnit.SECONDS,
+			new LinkedBlockingQueue<>(), runnable -> {
+				Thread thread = new Thread(runnable, "PhotoDitE-thumbnails");
+				thread.setDaemon(true);
+				return thread;
+			});
+	private static final Map<String, Entry> memory = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+			return size() > MEMORY_ENTRIES;
+		}
+	};
+	private static final Set<String> pending = new HashSet<>();
+	private static final Object diskLock = new Object();
+	private static long diskLimit = Long.getLong("photodite.thumbnailCacheBytes", 64L * 1024 * 1024);
+	private static long diskBytes = -1;
+	private static File directory = new File(System.getProperty("photodite.thumbnailDir",
+			System.getProperty("user.home") + File.separator + ".photodite" + File.separator + "thumbnails"));
+
+	static {
+		GENERATOR.allowCoreThreadTimeOut(true);
+	}
+
+	public static synchronized File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Sets the directory of the disk cache. The thumbnails already in memory are dropped.
+	 *
+	 * @param cacheDirectory The new directory, created when the first thumbnail is stored.
+	 */
+	public static synchronized void setDirectory(File cacheDirectory) {
+		directory = cacheDirectory;
+		memory.clear();
+		synchronized (diskLock) {
+			diskBytes = -1;
+		}
+	}
+
+	public static long getDiskLimit() {
+		synchronized (diskLock) {
+			return diskLimit;
+		}
+	}
+
+	/**
+	 * Sets the number of bytes the disk cache may take. The cache is trimmed the next time a thumbnail is stored.
+	 *
+	 * @param bytes The maximum size of the thumbnails on disk.
+	 */
+	public static void setDiskLimit(long bytes) {
+		synchronized (diskLock) {
+			diskLimit = bytes;
+		}
+	}
+
+	/**
+	 * Returns the thumbnail of an image if it is in memory. It never reads from disk, not even
+	 * the modification time of the file, so it is cheap enough to be called while painting.
+	 *
+	 * @param path The path of the image file.
+	 * @return The last thumbnail loaded for the path, or null if none is loaded yet.
+	 */
+	public static synchronized BufferedImage getIfPresent(String path) {
+		Entry entry = memory.get(path);
+		return entry != null ? entry.thumbnail : null;
+	}
+
+	/**
+	 * Loads the thumbnail of an image in the background, from disk if it was cached before,
+	 * otherwise by generating it. A thumbnail that is already in memory is kept if its file
+	 * hasn't changed. Requests for a path that is already being checked are ignored.
+	 *
+	 * @param path The path of the image file.
+	 * @param onLoaded Called on the EDT once a new thumbnail is in memory.
+	 */
+	public static void request(String path, Runnable onLoaded) {
+		synchronized (ThumbnailCache.class) {
+			if (path == null || !pending.add(path)) {
+				return;
+			}
+		}
+		GENERATOR.execute(() -> {
+			try {
+				String key = keyOf(path);
+				Entry current;
+				synchronized (ThumbnailCache.class) {
+					current = memory.get(path);
+					if (key == null) {
+						memory.remove(path);
+					}
+				}
+				if (current != null && current.key.equals(key)) {
+					return;
+				}
+				if (current != null) {
+					// the file changed or is gone, its thumbnail on disk can't be used again
+					new File(getDirectory(), current.key + ".png").delete();
+				}
+				if (key == null) {
+					return;
+				}
+				BufferedImage thumbnail = load(key, new File(path));
+				if (thumbnail != null) {
+					synchronized (ThumbnailCache.class) {
+						memory.put(path, new Entry(key, thumbnail));
+					}
+					SwingUtilities.invokeLater(onLoaded);
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			} finally {
+				synchronized (ThumbnailCache.class) {
+					pending.remove(path);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Creates a thumbnail of an image file that fits in THUMBNAIL_SIZE x THUMBNAIL_SIZE,
+	 * decoding only a subsampled copy of the image.
+	 *
+	 * @param file The image file.
+	 * @return The thumbnail, or null if the format isn't supported.
+	 * @throws IOException If the file can't be read.
+	 */
+	public static BufferedImage createThumbnail(File file) throws IOException {
+		Dimension size = ImageLoaderUtility.readSize(file);
+		if (size == null) {
+			return null;
+		}
+		BufferedImage image = ImageLoaderUtility.readSubsampled(file, ImageLoaderUtility.subsamplingFor(size, THUMBNAIL_SIZE * 2));
+		if (image == null) {
+			return null;
+		}
+		double scale = Math.min(1.0, (double) THUMBNAIL_SIZE / Math.max(image.getWidth(), image.getHeight()));
+		return ImageProcessorUtility.zoomImage(PixelKernelUtility.normalize(image), scale);
+	}
+
+	/**
+	 * Returns the file of the disk cache that holds the thumbnail of an image.
+	 *
+	 * @param path The path of the image file.
+	 * @return The cache file, which may not exist yet, or null if the image doesn't exist.
+	 */
+	public static File cacheFileOf(String path) {
+		String key = keyOf(path);
+		return key != null ? new File(getDirectory(), key + ".png") : null;
+	}
+
+	private static BufferedImage load(String key, File file) throws IOException {
+		File cached = new File(getDirectory(), key + ".png");
+		if (cached.isFile()) {
+			BufferedImage thumbnail = ImageIO.read(cached);
+			if (thumbnail != null) {
+				// the modification time of a cache file is the last time it was used
+				cached.setLastModified(System.currentTimeMillis());
+				return thumbnail;
+			}
+		}
+		BufferedImage thumbnail = createThumbnail(file);
+		if (thumbnail != null) {
+			store(cached, thumbnail);
+			trim(cached.length());
+		}
+		return thumbnail;
+	}
+
+	/**
+	 * Helper method that adds a stored thumbnail to the size of the disk cache and, when the
+	 * size goes over the limit, deletes the thumbnails used least recently until it is back
+	 * to three quarters of the limit. The size is counted once by listing the directory and
+	 * kept up to date afterwards.
+	 */
+	private static void trim(long stored) {
+		synchronized (diskLock) {
+			File[] files = null;
+			if (diskBytes < 0) {
+				files = cacheFiles();
+				diskBytes = Arrays.stream(files).mapToLong(File::length).sum();
+			} else {
+				diskBytes += stored;
+			}
+			if (diskBytes <= diskLimit) {
+				return;
+			}
+			if (files == null) {
+				files = cacheFiles();
+			}
+			long[] modified = new long[files.length];
+			Integer[] order = new Integer[files.length];
+			for (int i = 0; i < files.length; i++) {
+				modified[i] = files[i].lastModified();
+				order[i] = i;
+			}
+			Arrays.sort(order, Comparator.comparingLong(i -> modified[i]));
+			diskBytes = Arrays.stream(files).mapToLong(File::length).sum();
+			for (int i = 0; i < order.length && diskBytes > diskLimit * 3 / 4; i++) {
+				File file = files[order[i]];
+				long length = file.length();
+				if (file.delete()) {
+					diskBytes -= length;
+					MetricsRegistry.counter("thumbnails.evicted").increment();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Helper method that lists the thumbnails of the disk cache, the files named after a key.
+	 */
+	private static File[] cacheFiles() {
+		File[] files = getDirectory().listFiles((dir, name) -> name.matches("[0-9a-f-]{36}\\.png"));
+		return files != null ? files : new File[0];
+	}
+
+	/**
+	 * Helper method that writes a thumbnail to a temporary file and moves it in place,
+	 * so that a thumbnail is never read while it is half written.
+	 */
+	private static void store(File cached, BufferedImage thumbnail) throws IOException {
+		File parent = cached.getParentFile();
+		if (!parent.isDirectory() && !parent.mkdirs()) {
+			throw new IOException("Can't create the thumbnail cache directory: " + parent);
+		}
+		File temp = File.createTempFile("thumbnail", ".tmp", parent);
+		try {
+			ImageIO.write(thumbnail, "png", temp);
+			Files.move(temp.toPath(), cached.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			temp.delete();
+		}
+	}
+
+	/**
+	 * A thumbnail in memory, with the key of the version of the file it was made from.
+	 */
+	private static final class Entry {
+		private final String key;
+		private final BufferedImage thumbnail;
+
+		private Entry(String key, BufferedImage thumbnail) {
+			this.key = key;
+			this.thumbnail = thumbnail;
+		}
+	}
+
+	private static String keyOf(String path) {
+		if (path == null) {
+			return null;
+		}
+		File file = new File(path);
+		long modified = file.lastModified();
+		if (modified == 0L) {
+			return null;
+		}
+		String key = file.getAbsolutePath() + "|" + modified + "|" + file.length();
+		return UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)).toString();
+	}
+}
@@ -1,11 +1,11 @@
 package project;
 
-import java.awt.image.BufferedImage;
-
 /**
  * Adjustment is a class that holds information about an image's adjustment and it's used
- * for the undoStack to keep track of an image progression through editing.
- * It holds the new image and the type of the adjustment.
+ * by the EditHistory to keep track of an image progression through editing.
+ * It doesn't hold any pixels, only the type of the adjustment and its parameter:
+ * the slider value for BRIGHTNESS and CONTRAST, the direction for ROTATE
+ * (1 for right, -1 for left) and nothing for FLIP.
  */
 public class Adjustment {
 
@@ -18,25 +18,34 @@ public class Adjustment {
 		DEFAULT, 
 	}
 	
-	private BufferedImage image;
 	private type adjustment;
+	private int value;
 	
-	Adjustment(BufferedImage image, type adjustment){
-		this.image = image;
+	Adjustment(type adjustment, int value){
 		this.adjustment = adjustment;
+		this.value = value;
 	}
 	
-	public BufferedImage getImage() {
-		return image;
-	}
-	public void setImage(BufferedImage image) {
-		this.image = image;
-	}
 	public type getAdjustment() {
 		return adjustment;
 	}
 	public void setAdjustment(type adjustment) {
 		this.adjustment = adjustment;
 	}
+	public int getValue() {
+		return value;
+	}
+	public void setValue(int value) {
+		this.value = value;
+	}
+	
+	/**
+	 * Checks if the adjustment moves pixels around, so that replaying it needs a new raster.
+	 * 
+	 * @return True for rotations and flips.
+	 */
+	public boolean isGeometric() {
+		return adjustment == type.ROTATE || adjustment == type.FLIP;
+	}
 	
 }
@@ -0,0 +1,546 @@
+package project;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import Utility.ImageLoaderUtility;
+import Utility.ImageProcessorUtility;
+import Utility.ImageSaveUtility;
+import Utility.MappedTileStore;
+import Utility.MetricsRegistry;
+import Utility.MetricsRegistry.Area;
+import Utility.MetricsRegistry.Timing;
+import Utility.Orientation;
+import Utility.ParallelProcessingUtility;
+import Utility.PointOperationPipeline;
+import Utility.PointOperationPipeline.Filter;
+import Utility.RegionImageLoader;
+import Utility.SaveOptions;
+import project.Adjustment.type;
+
+/**
+ * BatchProcessor applies the same edit to every image of a directory without the GUI.
+ * The images go through three stages, decoding, processing and encoding, each with its own
+ * threads and connected by bounded queues, so reading and writing files overlaps with the
+ * pixel work while only a few images are in memory at the same time.
+ * Images with more than Project.REGION_THRESHOLD pixels are decoded band by band into a
+ * MappedTileStore, edited tile by tile and written as PNG from it, so they take the tile budget,
+ * which all the stores share, instead of the heap. They are always written as PNG: the JPEG
+ * encoder needs the whole image in memory.
+ *
+ * From the command line:
+ * java -cp <classpath> project.BatchProcessor --recipe FILTER=GRAYSCALE,BRIGHTNESS=20,CONTRAST=10 <input dir> [<output dir>]
+ *     [--format png|jpg] [--quality 0-100] [--workers n]
+ */
+public class BatchProcessor {
+
+	/**
+	 * An edit as a list of adjustments, compiled the same way as in the editor: the last
+	 * brightness, contrast and filter are applied in one pass and the rotations and flips
+	 * are composed into one orientation applied afterwards.
+	 */
+	public static class Recipe {
+
+		private final List<Adjustment> adjustments;
+		private final Filter filter;
+		private final PointOperationPipeline pipeline;
+		private final Orientation orientation;
+
+		private Recipe(List<Adjustment> adjustments, Filter filter) {
+			this.adjustments = adjustments;
+			this.filter = filter;
+			int brightness = 0;
+			int contrast = 0;
+			Orientation orientation = Orientation.NORMAL;
+			for (Adjustment adjustment : adjustments) {
+				switch (adjustment.getAdjustment()) {
+				case BRIGHTNESS:
+					brightness = adjustment.getValue();
+					break;
+				case CONTRAST:
+					contrast = adjustment.getValue();
+					break;
+				case ROTATE:
+					orientation = adjustment.getValue() > 0 ? orientation.rotateRight() : orientation.rotateLeft();
+					break;
+				case FLIP:
+					orientation = orientation.flip();
+					break;
+				default:
+					break;
+				}
+			}
+			this.pipeline = new PointOperationPipeline(brightness, contrast, filter);
+			this.orientation = orientation;
+		}
+
+		/**
+		 * Reads a recipe written as a comma separated list of adjustments, each of them an
+		 * Adjustment.type with its parameter: BRIGHTNESS=20 and CONTRAST=-10 take the slider value,
+		 * ROTATE=1 turns right and ROTATE=-1 left, FLIP takes nothing and FILTER takes the name
+		 * of a filter (GRAYSCALE, SEPIA, NEGATIVE or NONE).
+		 *
+		 * @param text The recipe, for example FILTER=GRAYSCALE,BRIGHTNESS=20,CONTRAST=10.
+		 * @return The recipe.
+		 * @throws IllegalArgumentException If an adjustment or a parameter is unknown.
+		 */
+		public static Recipe parse(String text) {
+			List<Adjustment> adjustments = new ArrayList<>();
+			Filter filter = Filter.NONE;
+			for (String step : text.split(",")) {
+				step = step.trim();
+				if (step.isEmpty()) {
+					continue;
+				}
+				String[] parts = step.split("=", 2);
+				type adjustmentType = type.valueOf(parts[0].trim().toUpperCase(Locale.ROOT));
+				String parameter = parts.length > 1 ? parts[1].trim() : "";
+				switch (adjustmentType) {
+				case FILTER:
+					filter = Filter.valueOf(parameter.toUpperCase(Locale.ROOT));
+					adjustments.add(new Adjustment(adjustmentType, filter.ordinal()));
+					break;
+				case BRIGHTNESS:
+				case CONTRAST:
+				case ROTATE:
+					if (parameter.isEmpty()) {
+						throw new IllegalArgumentException(adjustmentType + " needs a value: " + step);
+					}
+					adjustments.add(new Adjustment(adjustmentType, Integer.parseInt(parameter)));
+					break;
+				default:
+					adjustments.add(new Adjustment(adjustmentType, 0));
+					break;
+				}
+			}
+			return new Recipe(adjustments, filter);
+		}
+
+		public List<Adjustment> getAdjustments() {
+			return adjustments;
+		}
+
+		public Orientation getOrientation() {
+			return orientation;
+		}
+
+		/**
+		 * Applies the recipe to an image.
+		 *
+		 * @param image The image, it is not modified.
+		 * @return The edited image, or the image itself if the recipe changes nothing.
+		 */
+		public BufferedImage apply(BufferedImage image) {
+			return ImageProcessorUtility.orient(pipeline.apply(image), orientation);
+		}
+
+		/**
+		 * Applies the recipe to an image held in a tile store, tile by tile.
+		 *
+		 * @param tiles The image, it is not modified.
+		 * @return A new temporary store with the edited image, or the store itself if the recipe changes nothing.
+		 * @throws IOException If a tile can't be read or written.
+		 */
+		public MappedTileStore apply(MappedTileStore tiles) throws IOException {
+			MappedTileStore edited = pipeline.isIdentity() ? tiles : tiles.map(pipeline::apply);
+			if (orientation == Orientation.NORMAL) {
+				return edited;
+			}
+			try {
+				return edited.orient(orientation);
+			} finally {
+				if (edited != tiles) {
+					edited.close();
+				}
+			}
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder text = new StringBuilder();
+			for (Adjustment adjustment : adjustments) {
+				if (text.length() > 0) {
+					text.append(',');
+				}
+				text.append(adjustment.getAdjustment());
+				if (adjustment.getAdjustment() == type.FILTER) {
+					text.append('=').append(filter);
+				} else if (adjustment.getAdjustment() != type.FLIP && adjustment.getAdjustment() != type.DEFAULT) {
+					text.append('=').append(adjustment.getValue());
+				}
+			}
+			return text.toString();
+		}
+	}
+
+	/**
+	 * The outcome of a run.
+	 */
+	public static class Result {
+
+		private final int processed;
+		private final List<String> failures;
+		private final long nanos;
+
+		Result(int processed, List<String> failures, long nanos) {
+			this.processed = processed;
+			this.failures = failures;
+			this.nanos = nanos;
+		}
+
+		public int getProcessed() {
+			return processed;
+		}
+
+		/**
+		 * Returns a message for every image that couldn't be read, edited or written.
+		 *
+		 * @return The file name and the error of the failed images.
+		 */
+		public List<String> getFailures() {
+			return failures;
+		}
+
+		public long getNanos() {
+			return nanos;
+		}
+
+		/**
+		 * Returns the throughput of the whole run, from the first file read to the last one written.
+		 *
+		 * @return The number of images written per second.
+		 */
+		public double getImagesPerSecond() {
+			return nanos == 0 ? 0 : processed * 1e9 / nanos;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.ROOT, "Processed %d images in %.2f s (%.1f images/s), %d failed",
+					processed, nanos / 1e9, getImagesPerSecond(), failures.size());
+		}
+	}
+
+	/**
+	 * An image on its way through the stages. The same END item tells the threads of a stage to stop.
+	 */
+	private static class Item {
+		final File file;
+		final BufferedImage image;
+		final MappedTileStore tiles;
+
+		Item(File file, BufferedImage image) {
+			this(file, image, null);
+		}
+
+		Item(File file, BufferedImage image, MappedTileStore tiles) {
+			this.file = file;
+			this.image = image;
+			this.tiles = tiles;
+		}
+
+		/**
+		 * Deletes the tile store of an image that won't go further.
+		 */
+		void discard() {
+			if (tiles != null) {
+				try {
+					tiles.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	private static final Item END = new Item(null, null);
+
+	/**
+	 * The work of a stage on one item. It returns the item for the next stage, or null at the last one.
+	 */
+	private interface Step {
+		Item run(Item item) throws Exception;
+	}
+
+	/**
+	 * Where a stage takes its items from. It returns END when there are no more.
+	 */
+	private interface Source {
+		Item take() throws InterruptedException;
+	}
+
+	private final Recipe recipe;
+	private final int workers;
+	private String format;
+	private SaveOptions options = SaveOptions.DEFAULT;
+	private long tileThreshold = Project.REGION_THRESHOLD;
+
+	/**
+	 * Creates a batch processor.
+	 *
+	 * @param recipe The edit applied to every image.
+	 * @param workers The number of threads of every stage, which is also the capacity of the queues
+	 *                between them, so at most 5 x workers images are in memory.
+	 */
+	public BatchProcessor(Recipe recipe, int workers) {
+		if (workers < 1) {
+			throw new IllegalArgumentException("At least one worker is needed: " + workers);
+		}
+		this.recipe = recipe;
+		this.workers = workers;
+	}
+
+	/**
+	 * Sets the format of the written images. By default every image keeps the format of its file.
+	 *
+	 * @param format png, jpg or jpeg, or null to keep the format of the source.
+	 */
+	public void setFormat(String format) {
+		this.format = format == null ? null : format.toLowerCase(Locale.ROOT);
+	}
+
+	public void setOptions(SaveOptions options) {
+		this.options = options;
+	}
+
+	/**
+	 * Sets the number of pixels above which an image is edited in a tile store instead of the heap.
+	 *
+	 * @param pixels The threshold, Project.REGION_THRESHOLD by default.
+	 */
+	public void setTileThreshold(long pixels) {
+		this.tileThreshold = pixels;
+	}
+
+	/**
+	 * Edits every image of a directory and writes the results, with the same names, in another one.
+	 * Images that fail are reported in the result and don't stop the others.
+	 *
+	 * @param input The directory with the images to edit. Subdirectories are skipped.
+	 * @param output The directory of the edited images. It is created if needed and must not be the input one.
+	 * @return The number of images written, the failures and the time it took.
+	 * @throws IOException If a directory can't be read or created.
+	 * @throws InterruptedException If the calling thread is interrupted while waiting for the stages.
+	 */
+	@SuppressWarnings("try")
+	public Result run(File input, File output) throws IOException, InterruptedException {
+		File[] files = input.listFiles(file -> file.isFile() && isImage(file));
+		if (files == null) {
+			throw new IOException("Can't read the directory " + input);
+		}
+		if (input.getCanonicalFile().equals(output.getCanonicalFile())) {
+			throw new IOException("The output directory must not be the input directory: " + output);
+		}
+		if (!output.isDirectory() && !output.mkdirs()) {
+			throw new IOException("Can't create the directory " + output);
+		}
+		Arrays.sort(files);
+
+		ConcurrentLinkedQueue<Item> pending = new ConcurrentLinkedQueue<>();
+		for (File file : files) {
+			pending.add(new Item(file, null));
+		}
+		BlockingQueue<Item> decoded = new ArrayBlockingQueue<>(workers);
+		BlockingQueue<Item> processed = new ArrayBlockingQueue<>(workers);
+		List<String> failures = new ArrayList<>();
+		AtomicInteger written = new AtomicInteger();
+
+		long start = System.nanoTime();
+		List<Thread> threads = new ArrayList<>();
+		threads.addAll(startStage("decode", failures, () -> {
+			Item item = pending.poll();
+			return item == null ? END : item;
+		}, item -> {
+			Dimension size = ImageLoaderUtility.readSize(item.file);
+			if (size != null && (long) size.width * size.height > tileThreshold) {
+				return new Item(item.file, null, new RegionImageLoader(item.file).readTiles());
+			}
+			BufferedImage image;
+			try (Timing timing = MetricsRegistry.time(Area.IO, "load", item.file.getPath())) {
+				image = ImageLoaderUtility.read(item.file);
+			}
+			if (image == null) {
+				throw new IOException("Unsupported image format");
+			}
+			return new Item(item.file, image);
+		}, decoded));
+		threads.addAll(startStage("process", failures, decoded::take, item -> {
+			if (item.tiles == null) {
+				return new Item(item.file, recipe.apply(item.image));
+			}
+			MappedTileStore edited = recipe.apply(item.tiles);
+			if (edited != item.tiles) {
+				item.discard();
+			}
+			return new Item(item.file, null, edited);
+		}, processed));
+		threads.addAll(startStage("encode", failures, processed::take, item -> {
+			String targetFormat = format != null ? format : extensionOf(item.file);
+			String name = item.file.getName();
+			if (item.tiles != null) {
+				targetFormat = "png";
+			}
+			File target = new File(output, name.substring(0, name.lastIndexOf('.') + 1) + targetFormat);
+			if (item.tiles != null) {
+				ImageSaveUtility.writeAtomically(item.tiles, target, options, null);
+				item.discard();
+			} else {
+				ImageSaveUtility.writeAtomically(item.image, targetFormat, target, options, null);
+			}
+			written.incrementAndGet();
+			return null;
+		}, null));
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		return new Result(written.get(), failures, System.nanoTime() - start);
+	}
+
+	/**
+	 * Starts the threads of a stage. Every thread takes items until it gets END, and the last
+	 * one to stop sends END to all the threads of the next stage.
+	 */
+	private List<Thread> startStage(String name, List<String> failures, Source source, Step step, BlockingQueue<Item> next) {
+		AtomicInteger running = new AtomicInteger(workers);
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < workers; i++) {
+			Thread thread = new Thread(() -> {
+				try {
+					Item item;
+					while ((item = source.take()) != END) {
+						Item result;
+						try {
+							result = step.run(item);
+						} catch (Throwable e) {
+							// an OutOfMemoryError on a huge image fails that image only, its pixels are unreachable by now
+							item.discard();
+							synchronized (failures) {
+								failures.add(item.file.getName() + ": " + e);
+							}
+							continue;
+						}
+						if (next != null && result != null) {
+							next.put(result);
+						}
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					if (running.decrementAndGet() == 0 && next != null) {
+						endStage(next);
+					}
+				}
+			}, "PhotoDitE-batch-" + name + "-" + i);
+			thread.setDaemon(true);
+			thread.start();
+			threads.add(thread);
+		}
+		return threads;
+	}
+
+	/**
+	 * Sends END to all the threads of the next stage, even if the thread was interrupted,
+	 * so that the stages after it stop and run can return.
+	 */
+	private void endStage(BlockingQueue<Item> next) {
+		boolean interrupted = Thread.interrupted();
+		for (int j = 0; j < workers; j++) {
+			while (true) {
+				try {
+					next.put(END);
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static boolean isImage(File file) {
+		String extension = extensionOf(file);
+		return Arrays.asList(ImageIO.getReaderFileSuffixes()).contains(extension);
+	}
+
+	private static String extensionOf(File file) {
+		String name = file.getName();
+		int dot = name.lastIndexOf('.');
+		return dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Runs a batch from the command line and prints the throughput.
+	 */
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		MetricsRegistry.startExportFromSystemProperties();
+		String recipeText = null;
+		String format = null;
+		Integer quality = null;
+		int workers = ParallelProcessingUtility.getParallelism();
+		List<String> directories = new ArrayList<>();
+		try {
+			for (int i = 0; i < args.length; i++) {
+				switch (args[i]) {
+				case "--recipe":
+					recipeText = args[++i];
+					break;
+				case "--format":
+					format = args[++i];
+					break;
+				case "--quality":
+					quality = Integer.parseInt(args[++i]);
+					break;
+				case "--workers":
+					workers = Integer.parseInt(args[++i]);
+					break;
+				default:
+					directories.add(args[i]);
+					break;
+				}
+			}
+		} catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+			directories.clear();
+		}
+		if (recipeText == null || directories.isEmpty() || directories.size() > 2) {
+			System.err.println("Usage: BatchProcessor --recipe FILTER=GRAYSCALE,BRIGHTNESS=20,CONTRAST=10,ROTATE=1,FLIP"
+					+ " <input dir> [<output dir>] [--format png|jpg] [--quality 0-100] [--workers n]");
+			System.exit(2);
+		}
+
+		File input = new File(directories.get(0));
+		File output = directories.size() > 1 ? new File(directories.get(1)) : new File(input, "edited");
+		try {
+			BatchProcessor processor = new BatchProcessor(Recipe.parse(recipeText), workers);
+			processor.setFormat(format);
+			if (quality != null) {
+				processor.setOptions(SaveOptions.DEFAULT.withQuality(quality / 100f));
+			}
+			Result result = processor.run(input, output);
+			for (String failure : result.getFailures()) {
+				System.err.println("Failed: " + failure);
+			}
+			System.out.println(result);
+			System.exit(result.getFailures().isEmpty() ? 0 : 1);
+		} catch (IllegalArgumentException | IOException e) {
+			System.err.println(e.getMessage());
+			System.exit(2);
+		} catch (InterruptedException e) {
+			System.exit(1);
+		}
+	}
+}
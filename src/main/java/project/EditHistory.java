@@ -0,0 +1,174 @@
+package project;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import Utility.Orientation;
+import project.Adjustment.type;
+
+/**
+ * EditHistory is a non-destructive edit model: an ordered list of parameterized
+ * adjustments over an original image that is never modified.
+ * Brightness and contrast are only values, so they cost no memory. Rotations and flips
+ * are composed into a single Orientation, so they cost no memory either and four turns
+ * in the same direction are nothing at all. The oriented image is only created, in one
+ * remap of the original with ImageProcessorUtility.orient, by the callers that need it.
+ */
+public class EditHistory {
+
+	private BufferedImage original;
+	private int initialBrightness;
+	private int initialContrast;
+	private final List<Adjustment> adjustments = new ArrayList<>();
+	private int position = 0;
+	private Orientation orientation = Orientation.NORMAL;
+	private int version = 0;
+
+	/**
+	 * Creates a history with no adjustments over an original image.
+	 *
+	 * @param original The image the adjustments are applied to. It is never modified.
+	 */
+	public EditHistory(BufferedImage original) {
+		this.original = original;
+	}
+
+	/**
+	 * Adds an adjustment after the current position. Adjustments that were undone
+	 * are discarded.
+	 *
+	 * @param adjustmentType The type of the adjustment.
+	 * @param value The parameter of the adjustment.
+	 */
+	public void push(type adjustmentType, int value) {
+		Adjustment adjustment = new Adjustment(adjustmentType, value);
+		adjustments.subList(position, adjustments.size()).clear();
+		adjustments.add(adjustment);
+		position++;
+		version++;
+		if (adjustment.isGeometric()) {
+			orientation = orientation.then(orientationOf(adjustment));
+		}
+	}
+
+	/**
+	 * Steps back one adjustment.
+	 *
+	 * @return The adjustment that was undone, or null if there is nothing to undo.
+	 */
+	public Adjustment undo() {
+		if (!canUndo()) {
+			return null;
+		}
+		Adjustment undone = adjustments.get(--position);
+		version++;
+		if (undone.isGeometric()) {
+			orientation = orientation.then(orientationOf(undone).inverse());
+		}
+		return undone;
+	}
+
+	/**
+	 * Applies again the last adjustment that was undone.
+	 *
+	 * @return The adjustment that was redone, or null if there is nothing to redo.
+	 */
+	public Adjustment redo() {
+		if (!canRedo()) {
+			return null;
+		}
+		Adjustment redone = adjustments.get(position++);
+		version++;
+		if (redone.isGeometric()) {
+			orientation = orientation.then(orientationOf(redone));
+		}
+		return redone;
+	}
+
+	public boolean canUndo() {
+		return position > 0;
+	}
+
+	public boolean canRedo() {
+		return position < adjustments.size();
+	}
+
+	/**
+	 * Makes the current state the new starting point of the history, for example after a save.
+	 * All adjustments are dropped, the brightness, contrast and orientation they set are kept.
+	 */
+	public void rebase() {
+		initialBrightness = getBrightness();
+		initialContrast = getContrast();
+		adjustments.clear();
+		position = 0;
+	}
+
+	/**
+	 * Returns a number that changes with every push, undo and redo, so that a caller can tell
+	 * whether the state it saw earlier, for example when a save started, is still the current one.
+	 *
+	 * @return The number of changes made to the history.
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	public BufferedImage getOriginal() {
+		return original;
+	}
+
+	/**
+	 * Returns the brightness value active at the current position.
+	 *
+	 * @return The last brightness value, or the initial one if it was never adjusted.
+	 */
+	public int getBrightness() {
+		return lastValue(type.BRIGHTNESS, initialBrightness);
+	}
+
+	/**
+	 * Returns the contrast value active at the current position.
+	 *
+	 * @return The last contrast value, or the initial one if it was never adjusted.
+	 */
+	public int getContrast() {
+		return lastValue(type.CONTRAST, initialContrast);
+	}
+
+	/**
+	 * Returns the adjustments up to the current position.
+	 *
+	 * @return A copy of the applied adjustments, in order.
+	 */
+	public List<Adjustment> getAdjustments() {
+		return new ArrayList<>(adjustments.subList(0, position));
+	}
+
+	/**
+	 * Returns the rotations and flips up to the current position, composed into one
+	 * orientation that turns the original image into the edited image.
+	 *
+	 * @return The orientation of the edited image.
+	 */
+	public Orientation getOrientation() {
+		return orientation;
+	}
+
+	private int lastValue(type adjustmentType, int initialValue) {
+		for (int i = position - 1; i >= 0; i--) {
+			if (adjustments.get(i).getAdjustment() == adjustmentType) {
+				return adjustments.get(i).getValue();
+			}
+		}
+		return initialValue;
+	}
+
+	private static Orientation orientationOf(Adjustment adjustment) {
+		if (adjustment.getAdjustment() == type.FLIP) {
+			return Orientation.FLIP_HORIZONTAL;
+		}
+		return adjustment.getValue() < 0 ? Orientation.ROTATE_LEFT : Orientation.ROTATE_RIGHT;
+	}
+}
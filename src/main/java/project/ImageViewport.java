@@ -0,0 +1,334 @@
+package project;
+
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.image.BufferedImage;
+
+import javax.swing.JPanel;
+import javax.swing.JViewport;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
+
+import Utility.ImagePyramid;
+import Utility.MetricsRegistry;
+import Utility.MetricsRegistry.Area;
+import Utility.MetricsRegistry.Timing;
+import Utility.Orientation;
+import Utility.RegionImageLoader;
+
+/**
+ * ImageViewport is a panel that displays an image at a zoom factor without ever creating
+ * a zoomed copy of it. Only the part of the image that falls inside the clip (the visible
+ * part of the scroll pane) is scaled when the panel is painted, so memory and time depend
+ * on the window size and not on the zoom factor.
+ * The displayed image can be smaller than its logical size, for example a preview proxy,
+ * in which case it is stretched to the logical size.
+ * When zoomed out, the image is sampled from the nearest level of its pyramid, if it has one,
+ * instead of from the full resolution image.
+ * Rotations and flips are not applied to the image: it is drawn through the transform
+ * of its orientation, so turning it costs nothing.
+ * For files too large to decode whole, a region loader can be set: the image is then only a
+ * preview, and the tiles of the file that are visible at the current zoom are drawn over it as
+ * soon as they are decoded in the background.
+ */
+public class ImageViewport extends JPanel implements Scrollable {
+
+	private static final long serialVersionUID = 1L;
+	private BufferedImage image;
+	private ImagePyramid pyramid;
+	private RegionImageLoader regionLoader;
+	private int logicalWidth;
+	private int logicalHeight;
+	private double zoom = 1.0;
+	private Orientation orientation = Orientation.NORMAL;
+
+	/**
+	 * Displays an image at its own size times the zoom factor.
+	 *
+	 * @param image The image to display, or null to show nothing.
+	 */
+	public void setImage(BufferedImage image) {
+		if (image == null) {
+			setImage(null, 0, 0);
+		} else {
+			setImage(image, image.getWidth(), image.getHeight());
+		}
+	}
+
+	/**
+	 * Displays an image stretched to a logical size times the zoom factor.
+	 *
+	 * @param image The image to display.
+	 * @param logicalWidth The width of the full resolution image it stands for.
+	 * @param logicalHeight The height of the full resolution image it stands for.
+	 */
+	public void setImage(BufferedImage image, int logicalWidth, int logicalHeight) {
+		this.pyramid = null;
+		update(image, logicalWidth, logicalHeight);
+	}
+
+	/**
+	 * Displays a full resolution image at its own size times the zoom factor, sampling
+	 * from the levels of its pyramid when zoomed out.
+	 *
+	 * @param image The image to display.
+	 * @param pyramid The pyramid of the image, or null to always sample the image itself.
+	 */
+	public void setImage(BufferedImage image, ImagePyramid pyramid) {
+		this.pyramid = pyramid;
+		this.regionLoader = null;
+		if (image == null) {
+			update(null, 0, 0);
+		} else {
+			update(image, image.getWidth(), image.getHeight());
+		}
+	}
+
+	private void update(BufferedImage image, int logicalWidth, int logicalHeight) {
+		boolean resized = logicalWidth != this.logicalWidth || logicalHeight != this.logicalHeight;
+		this.image = image;
+		this.logicalWidth = logicalWidth;
+		this.logicalHeight = logicalHeight;
+		if (resized) {
+			revalidate();
+		}
+		repaint();
+	}
+
+	public BufferedImage getImage() {
+		return image;
+	}
+
+	/**
+	 * Draws the visible tiles of a file over the displayed image, which is a preview of it,
+	 * whenever they are sharper than the preview at the current zoom.
+	 *
+	 * @param regionLoader The loader of the file, or null to only draw the image.
+	 */
+	public void setRegionLoader(RegionImageLoader regionLoader) {
+		this.regionLoader = regionLoader;
+		repaint();
+	}
+
+	public RegionImageLoader getRegionLoader() {
+		return regionLoader;
+	}
+
+	public Orientation getOrientation() {
+		return orientation;
+	}
+
+	/**
+	 * Displays the image rotated and flipped by an orientation. The width and the height of
+	 * the panel are swapped when the orientation transposes the image.
+	 *
+	 * @param orientation The orientation of the displayed image.
+	 */
+	public void setOrientation(Orientation orientation) {
+		boolean resized = orientation.transposes() != this.orientation.transposes();
+		this.orientation = orientation;
+		if (resized) {
+			revalidate();
+		}
+		repaint();
+	}
+
+	public double getZoom() {
+		return zoom;
+	}
+
+	/**
+	 * Changes the zoom factor, keeping the center of the visible area in place.
+	 *
+	 * @param zoom The new zoom factor.
+	 */
+	public void setZoom(double zoom) {
+		Rectangle visible = getVisibleRect();
+		zoomAt(zoom, new Point(visible.x + visible.width / 2, visible.y + visible.height / 2));
+	}
+
+	/**
+	 * Changes the zoom factor, keeping the image point under the given panel point in place.
+	 *
+	 * @param zoom The new zoom factor.
+	 * @param anchor A point in panel coordinates, for example the mouse position.
+	 */
+	public void zoomAt(double zoom, Point anchor) {
+		double imageX = (anchor.x - offsetX()) / this.zoom;
+		double imageY = (anchor.y - offsetY()) / this.zoom;
+		Rectangle visible = getVisibleRect();
+		int viewX = anchor.x - visible.x;
+		int viewY = anchor.y - visible.y;
+
+		this.zoom = zoom;
+		revalidate();
+
+		if (getParent() instanceof JViewport) {
+			JViewport viewport = (JViewport) getParent();
+			viewport.validate();
+			int x = (int) Math.round(imageX * zoom) + offsetX() - viewX;
+			int y = (int) Math.round(imageY * zoom) + offsetY() - viewY;
+			Dimension view = viewport.getViewSize();
+			Dimension extent = viewport.getExtentSize();
+			x = Math.max(0, Math.min(x, view.width - extent.width));
+			y = Math.max(0, Math.min(y, view.height - extent.height));
+			viewport.setViewPosition(new Point(x, y));
+		}
+		repaint();
+	}
+
+	@Override
+	@SuppressWarnings("try")
+	protected void paintComponent(Graphics g) {
+		super.paintComponent(g);
+		if (image == null || logicalWidth == 0 || logicalHeight == 0) {
+			return;
+		}
+
+		int x0 = offsetX();
+		int y0 = offsetY();
+		int displayWidth = displayWidth();
+		int displayHeight = displayHeight();
+		Rectangle clip = g.getClipBounds();
+		if (clip == null) {
+			clip = new Rectangle(0, 0, getWidth(), getHeight());
+		}
+		Rectangle visible = clip.intersection(new Rectangle(x0, y0, displayWidth, displayHeight));
+		if (visible.isEmpty()) {
+			return;
+		}
+
+		// the visible area is mapped back to the image as it is stored, which is then drawn
+		// through the transform of the orientation
+		AffineTransform toDisplay = orientationTransform(x0, y0, displayWidth, displayHeight);
+		Rectangle area;
+		try {
+			area = toDisplay.createInverse().createTransformedShape(visible).getBounds();
+		} catch (NoninvertibleTransformException e) {
+			return;
+		}
+		int storedWidth = orientation.transposes() ? displayHeight : displayWidth;
+		int storedHeight = orientation.transposes() ? displayWidth : displayHeight;
+
+		BufferedImage source = pyramid != null && zoom < 1.0 ? pyramid.levelFor(zoom) : image;
+		double scaleX = (double) source.getWidth() / storedWidth;
+		double scaleY = (double) source.getHeight() / storedHeight;
+		int sx1 = Math.max(0, (int) Math.floor(area.x * scaleX));
+		int sy1 = Math.max(0, (int) Math.floor(area.y * scaleY));
+		int sx2 = Math.min(source.getWidth(), (int) Math.ceil((area.x + area.width) * scaleX));
+		int sy2 = Math.min(source.getHeight(), (int) Math.ceil((area.y + area.height) * scaleY));
+		int dx1 = (int) Math.floor(sx1 / scaleX);
+		int dy1 = (int) Math.floor(sy1 / scaleY);
+		int dx2 = (int) Math.ceil(sx2 / scaleX);
+		int dy2 = (int) Math.ceil(sy2 / scaleY);
+
+		try (Timing timing = MetricsRegistry.time(Area.RENDER, "paint", "zoom " + zoom)) {
+			Graphics2D g2 = (Graphics2D) g.create();
+			g2.transform(toDisplay);
+			g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g2.drawImage(source, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, null);
+			if (regionLoader != null) {
+				paintRegions(g2, area, (double) storedWidth / logicalWidth, (double) storedHeight / logicalHeight);
+			}
+			g2.dispose();
+		}
+	}
+
+	/**
+	 * Helper method that draws the cached tiles of the region loader that cover an area of the
+	 * stored image, scaled to the display, and requests them all, so that the loader keeps the ones
+	 * on screen and decodes the missing ones. Nothing is drawn when
+	 * the preview has as many pixels as the tiles of the current zoom would.
+	 */
+	private void paintRegions(Graphics2D g2, Rectangle area, double scaleX, double scaleY) {
+		int level = RegionImageLoader.levelFor(Math.max(scaleX, scaleY));
+		if ((1 << level) * image.getWidth() >= logicalWidth) {
+			return;
+		}
+		int span = RegionImageLoader.TILE_SIZE << level;
+		int fromX = Math.max(0, (int) Math.floor(area.x / scaleX) / span);
+		int fromY = Math.max(0, (int) Math.floor(area.y / scaleY) / span);
+		int toX = Math.min(regionLoader.getTilesX(level) - 1, (int) Math.ceil((area.x + area.width) / scaleX) / span);
+		int toY = Math.min(regionLoader.getTilesY(level) - 1, (int) Math.ceil((area.y + area.height) / scaleY) / span);
+		for (int tileY = fromY; tileY <= toY; tileY++) {
+			for (int tileX = fromX; tileX <= toX; tileX++) {
+				BufferedImage tile = regionLoader.getCachedTile(level, tileX, tileY);
+				if (tile == null) {
+					continue;
+				}
+				Rectangle bounds = regionLoader.getTileBounds(level, tileX, tileY);
+				g2.drawImage(tile, (int) Math.round(bounds.x * scaleX), (int) Math.round(bounds.y * scaleY),
+						(int) Math.round((bounds.x + bounds.width) * scaleX), (int) Math.round((bounds.y + bounds.height) * scaleY),
+						0, 0, tile.getWidth(), tile.getHeight(), null);
+			}
+		}
+		regionLoader.requestTiles(level, new Rectangle(fromX, fromY, toX - fromX + 1, toY - fromY + 1), this::repaint);
+	}
+
+	/**
+	 * Helper method that returns the transform from the image as it is stored, scaled to the
+	 * display, to the panel: a quarter turn or a mirror of the display rectangle at (x0, y0).
+	 */
+	private AffineTransform orientationTransform(int x0, int y0, int displayWidth, int displayHeight) {
+		double signX = orientation.mirrorsX() ? -1 : 1;
+		double signY = orientation.mirrorsY() ? -1 : 1;
+		double translateX = x0 + (orientation.mirrorsX() ? displayWidth : 0);
+		double translateY = y0 + (orientation.mirrorsY() ? displayHeight : 0);
+		if (orientation.transposes()) {
+			return new AffineTransform(0, signY, signX, 0, translateX, translateY);
+		}
+		return new AffineTransform(signX, 0, 0, signY, translateX, translateY);
+	}
+
+	@Override
+	public Dimension getPreferredSize() {
+		return new Dimension(displayWidth(), displayHeight());
+	}
+
+	@Override
+	public Dimension getPreferredScrollableViewportSize() {
+		return getPreferredSize();
+	}
+
+	@Override
+	public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+		return 16;
+	}
+
+	@Override
+	public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+		return orientation == SwingConstants.HORIZONTAL ? visibleRect.width : visibleRect.height;
+	}
+
+	@Override
+	public boolean getScrollableTracksViewportWidth() {
+		return getParent() instanceof JViewport && getParent().getWidth() > displayWidth();
+	}
+
+	@Override
+	public boolean getScrollableTracksViewportHeight() {
+		return getParent() instanceof JViewport && getParent().getHeight() > displayHeight();
+	}
+
+	private int displayWidth() {
+		return (int) ((orientation.transposes() ? logicalHeight : logicalWidth) * zoom);
+	}
+
+	private int displayHeight() {
+		return (int) ((orientation.transposes() ? logicalWidth : logicalHeight) * zoom);
+	}
+
+	private int offsetX() {
+		return Math.max(0, (getWidth() - displayWidth()) / 2);
+	}
+
+	private int offsetY() {
+		return Math.max(0, (getHeight() - displayHeight()) / 2);
+	}
+}
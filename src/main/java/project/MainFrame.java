@@ -7,7 +7,14 @@ import javax.swing.event.ChangeListener;
 import javax.swing.plaf.basic.BasicSliderUI;
 
 import Utility.ImageProcessorUtility;
+import Utility.ImagePyramid;
 import Utility.ImageSaveUtility;
+import Utility.MetricsRegistry;
+import Utility.MetricsRegistry.Area;
+import Utility.MetricsRegistry.Timing;
+import Utility.Orientation;
+import Utility.PointOperationPipeline;
+import Utility.PointOperationPipeline.Filter;
 import project.Adjustment.type;
 
 import java.awt.*;
@@ -21,7 +28,10 @@ import java.awt.event.MouseWheelEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.awt.image.BufferedImage;
-import java.util.Stack;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * MainFrame is the main graphical user interface (GUI) for the photo editing application.
@@ -32,13 +42,28 @@ public class MainFrame extends JFrame {
 
 	private static final long serialVersionUID = 1L;
     private BufferedImage currentImage = null; 
-    private BufferedImage brightnessImage = null;
-    private BufferedImage contrastImage = null;
-    private BufferedImage noFilterImage = null;
-    private JLabel imageLabel;
+    private int brightness = 0;
+    private int contrast = 0;
+    private boolean restoringSliders = false;
+    private String filterLabel = Filter.NONE.getLabel();
+    private final RenderScheduler renderScheduler = new RenderScheduler();
+    private ImageViewport imageView;
+    private JScrollPane scrollPane;
+    private ImagePyramid displayPyramid = null;
     private double zoomFactor = 1.0;
-    private Stack<Adjustment> undoStack = new Stack<>();
+    private final Project project;
+    private EditHistory history;
+    private JButton undoButton;
+    private JButton redoButton;
+    private JSlider brightnessSlider;
+    private JSlider contrastSlider;
+    private final List<JComponent> imageControls = new ArrayList<>();
+    private final List<JComponent> regionControls = new ArrayList<>();
     private boolean isModified = false;
+    private JProgressBar saveProgress;
+    private int savesInProgress = 0;
+    private int failedSaves = 0;
+    private Orientation fileOrientation = Orientation.NORMAL;
     
     /**
      * Constructs the MainFrame with necessary components.
@@ -46,11 +71,9 @@ public class MainFrame extends JFrame {
      */
     public MainFrame(Project selectedProject) {
     	
-    	currentImage = selectedProject.getImage();
-    	brightnessImage = selectedProject.getImage();
-    	contrastImage = selectedProject.getImage();
-    	noFilterImage = selectedProject.getImage();
-    	undoStack.push(new Adjustment(currentImage, type.DEFAULT));
+    	project = selectedProject;
+    	currentImage = selectedProject.isLoaded() ? selectedProject.getImage() : null;
+    	history = new EditHistory(currentImage);
         getContentPane().setBackground(new Color(0, 0, 0));
         setTitle("PhotoDitE - " + selectedProject.getName());
         setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
@@ -70,51 +93,59 @@ public class MainFrame extends JFrame {
                         JOptionPane.WARNING_MESSAGE);
 
                     if (option == JOptionPane.YES_OPTION) {
-                    	selectedProject.setImage(currentImage);
-						ImageSaveUtility.saveImage(selectedProject); 
-						undoStack.clear(); 
-						undoStack.push(new Adjustment(currentImage, type.DEFAULT));
-						isModified = false;
-		                setTitle(getTitle().substring(0, getTitle().lastIndexOf('*')));
-                        System.exit(0);
+                    	saveProject();
+                    	exitWhenSaved();
                     } 
                     else {
                     	if (option == JOptionPane.NO_OPTION) {
-                        System.exit(0);
+                    		exitWhenSaved();
                     	}
                     }
                 } 
                 else {
-                    System.exit(0);
+                	exitWhenSaved();
                 }
         	}
         });
 
-        imageLabel = new JLabel();
-        imageLabel.setBackground(new Color(0x2C2C2C));
-        imageLabel.setOpaque(true);
-        imageLabel.setHorizontalAlignment(JLabel.CENTER);
-        imageLabel.setVerticalAlignment(JLabel.CENTER);
+        imageView = new ImageViewport();
+        imageView.setBackground(new Color(0x2C2C2C));
+        imageView.setOpaque(true);
 
-        JScrollPane scrollPane = new JScrollPane(imageLabel);
+        scrollPane = new JScrollPane(imageView);
         scrollPane.setBackground(new Color(0x2C2C2C));
         scrollPane.getViewport().setBackground(new Color(0x2C2C2C));
         getContentPane().add(scrollPane, BorderLayout.CENTER);
         
-        imageLabel.addMouseWheelListener(new MouseAdapter() {
+        saveProgress = new JProgressBar(0, 100);
+        saveProgress.setStringPainted(true);
+        saveProgress.setString("Saving...");
+        saveProgress.setBackground(new Color(0x3C3F41));
+        saveProgress.setForeground(new Color(0x6A8759));
+        saveProgress.setBorder(BorderFactory.createLineBorder(new Color(0x1E1E1E)));
+        saveProgress.setVisible(false);
+        getContentPane().add(saveProgress, BorderLayout.SOUTH);
+        
+        imageView.addMouseWheelListener(new MouseAdapter() {
             @Override
             public void mouseWheelMoved(MouseWheelEvent e) {
-                if (currentImage != null) {
+                if (imageView.getImage() != null) {
                     int rotation = e.getWheelRotation();
                     zoomFactor += (rotation > 0) ? -0.1 : 0.1;
                     zoomFactor = Math.max(0.1, zoomFactor);
-                    updateImageLabel(ImageProcessorUtility.zoomImage(currentImage, zoomFactor));
+                    imageView.zoomAt(zoomFactor, e.getPoint());
                 }
             }
         });
         if(currentImage != null) {
         	updateImageLabel(currentImage);
         }
+        else if(!selectedProject.isLoaded()) {
+        	if(selectedProject.getImage() != null) {
+        		imageLoaded(selectedProject.getImage(), false);
+        	}
+        	selectedProject.addImageLoadListener(this::imageLoaded);
+        }
         
         JPanel buttonPanel = new JPanel();
         buttonPanel.setLayout(new BoxLayout(buttonPanel, BoxLayout.Y_AXIS));
@@ -122,7 +153,8 @@ public class MainFrame extends JFrame {
         buttonPanel.setBackground(new Color(0x3C3F41)); 
         buttonPanel.setBorder(BorderFactory.createLineBorder(new Color(0x1E1E1E)));
         
-        JButton undoButton = new JButton("Undo");
+        undoButton = new JButton("Undo");
+        redoButton = new JButton("Redo");
         
         Component verticalStrut = Box.createVerticalStrut(20);
         buttonPanel.add(verticalStrut);
@@ -145,6 +177,7 @@ public class MainFrame extends JFrame {
             }
         });
         horizontalBox_1.add(filterComboBox);
+        imageControls.add(filterComboBox);
         filterComboBox.setToolTipText("Filters");
         filterComboBox.addItem("No Filter");
         filterComboBox.addItem("Grayscale");
@@ -160,30 +193,13 @@ public class MainFrame extends JFrame {
                 	}
                 	
                     String selectedFilter = (String) filterComboBox.getSelectedItem();
-                    BufferedImage filteredImage = null;
 
-                    switch (selectedFilter) {
-                    	case "No Filter":
-                    		filteredImage = noFilterImage;
-                    		if(isModified && undoStack.size() == 1) {
-                    			isModified = false;
-                    			setTitle(getTitle().substring(0, getTitle().lastIndexOf('*')));
-                    		}
-                    		break;
-                        case "Grayscale":
-                            filteredImage = ImageProcessorUtility.toGrayscale(noFilterImage);
-                            break;
-                        case "Sepia":
-                            filteredImage = ImageProcessorUtility.toSepia(noFilterImage);
-                            break;
-                        case "Negative":
-                            filteredImage = ImageProcessorUtility.toNegative(noFilterImage);
-                            break;
+                    if (Filter.fromLabel(selectedFilter) == Filter.NONE && isModified && !history.canUndo()) {
+                    	isModified = false;
+                    	setTitle(getTitle().substring(0, getTitle().lastIndexOf('*')));
                     }
 
-                    if (filteredImage != null) {
-                        updateImage(filteredImage, type.FILTER, (String) filterComboBox.getSelectedItem());
-                    }
+                    updateImage(type.FILTER, 0, selectedFilter);
                 }
             }
         });
@@ -195,6 +211,8 @@ public class MainFrame extends JFrame {
         buttonPanel.add(horizontalBox);
         
                 JButton rotateLeftButton = new JButton("Left Rotate");
+                imageControls.add(rotateLeftButton);
+                regionControls.add(rotateLeftButton);
                 rotateLeftButton.setFont(new Font("Open Sans", Font.TRUETYPE_FONT, 16));
                 rotateLeftButton.setPreferredSize(new Dimension(200, 50));
                 rotateLeftButton.setBackground(new Color(0x3C3F41));
@@ -219,18 +237,15 @@ public class MainFrame extends JFrame {
                     		setTitle(getTitle() + "*");
                     	}
                     	
-                    	if(undoStack.size() == 1) {
-                    		undoButton.setEnabled(true);
-                    	}
-                    	
-                        if (currentImage != null) {
-                            BufferedImage rotatedImage = ImageProcessorUtility.rotateImageLeft(noFilterImage);
-                            updateImage(rotatedImage, type.ROTATE, (String) filterComboBox.getSelectedItem());
+                        if (canOrient()) {
+                            updateImage(type.ROTATE, -1, (String) filterComboBox.getSelectedItem());
                         }
                     }
                 });
                 
                 JButton rotateRightButton = new JButton("Right Rotate");
+                imageControls.add(rotateRightButton);
+                regionControls.add(rotateRightButton);
                 rotateRightButton.setFont(new Font("Open Sans", Font.TRUETYPE_FONT, 16));
                 rotateRightButton.setPreferredSize(new Dimension(200, 50));
                 rotateRightButton.setBackground(new Color(0x3C3F41));
@@ -255,13 +270,8 @@ public class MainFrame extends JFrame {
                     		setTitle(getTitle() + "*");
                     	}
                     	
-                    	if(undoStack.size() == 1) {
-                    		undoButton.setEnabled(true);
-                    	}
-                    	
-                        if (currentImage != null) {
-                            BufferedImage rotatedImage = ImageProcessorUtility.rotateImageRight(noFilterImage);
-                            updateImage(rotatedImage, type.ROTATE, (String) filterComboBox.getSelectedItem());
+                        if (canOrient()) {
+                            updateImage(type.ROTATE, 1, (String) filterComboBox.getSelectedItem());
                         }
                     }
                 });
@@ -273,6 +283,8 @@ public class MainFrame extends JFrame {
         buttonPanel.add(horizontalBox_2);
         
         JButton flipButton = new JButton("Flip");
+        imageControls.add(flipButton);
+        regionControls.add(flipButton);
         flipButton.setFont(new Font("Open Sans", Font.TRUETYPE_FONT, 16));
         flipButton.setPreferredSize(new Dimension(200, 50));
         flipButton.setBackground(new Color(0x3C3F41));
@@ -298,18 +310,13 @@ public class MainFrame extends JFrame {
             		setTitle(getTitle() + "*");
             	}
         		
-        		if(undoStack.size() == 1) {
-            		undoButton.setEnabled(true);
-            	}
-        		
-                if (currentImage != null) {
-                    BufferedImage flipImage = ImageProcessorUtility.flipImage(noFilterImage);
-                    updateImage(flipImage, type.FLIP, (String) filterComboBox.getSelectedItem());
+                if (canOrient()) {
+                    updateImage(type.FLIP, 0, (String) filterComboBox.getSelectedItem());
                 }
             }
         });
         
-        JSlider brightnessSlider = new JSlider();
+        brightnessSlider = new JSlider();
         brightnessSlider.setBackground(new Color(0x2C2C2C));
         brightnessSlider.setForeground(new Color(0xD4D4D4));
         brightnessSlider.setUI(new BasicSliderUI(brightnessSlider) {
@@ -330,23 +337,24 @@ public class MainFrame extends JFrame {
         	
             @Override
             public void stateChanged(ChangeEvent e) {
+            	if(restoringSliders) {
+            		return;
+            	}
+            	
             	if(isModified == false) {
             		isModified = true;
             		setTitle(getTitle() + "*");
             	}
             	
-            	if(undoStack.size() == 1) {
-            		undoButton.setEnabled(true);
-            	}
-            	
                 if (currentImage != null) {
                 	JSlider source = (JSlider) e.getSource();
-                	
-                    BufferedImage brightenedImage = ImageProcessorUtility.adjustBrightness(brightnessImage, brightnessSlider.getValue());
-                    updateImageLabel(ImageProcessorUtility.zoomImage(brightenedImage, zoomFactor));
+                	brightness = source.getValue();
                     
                     if(!source.getValueIsAdjusting()) {
-                    	updateImage(brightenedImage, type.BRIGHTNESS, (String) filterComboBox.getSelectedItem());
+                    	updateImage(type.BRIGHTNESS, brightness, (String) filterComboBox.getSelectedItem());
+                    }
+                    else {
+                    	requestPreview((String) filterComboBox.getSelectedItem());
                     }
                     
                 }
@@ -375,7 +383,7 @@ public class MainFrame extends JFrame {
         contrastLabel.setForeground(new Color(0xD4D4D4));
         horizontalBox_4.add(contrastLabel);
         
-        JSlider contrastSlider = new JSlider();
+        contrastSlider = new JSlider();
         contrastSlider.setBackground(new Color(0x2C2C2C));
         contrastSlider.setForeground(new Color(0xD4D4D4));
         contrastSlider.setUI(new BasicSliderUI(contrastSlider) {
@@ -396,23 +404,24 @@ public class MainFrame extends JFrame {
 
             @Override
             public void stateChanged(ChangeEvent e) {
+            	if(restoringSliders) {
+            		return;
+            	}
+            	
             	if(isModified == false) {
             		isModified = true;
             		setTitle(getTitle() + "*");
             	}
             	
-            	if(undoStack.size() == 1) {
-            		undoButton.setEnabled(true);
-            	}
-            	
                 if (currentImage != null) {
                     JSlider source = (JSlider) e.getSource();
-                    
-                    BufferedImage contrastedImage = ImageProcessorUtility.adjustContrast(contrastImage, source.getValue());
-                    updateImageLabel(ImageProcessorUtility.zoomImage(contrastedImage, zoomFactor));
+                    contrast = source.getValue();
 
                     if (!source.getValueIsAdjusting()) {
-                    	updateImage(contrastedImage, type.CONTRAST, (String) filterComboBox.getSelectedItem());
+                    	updateImage(type.CONTRAST, contrast, (String) filterComboBox.getSelectedItem());
+                    }
+                    else {
+                    	requestPreview((String) filterComboBox.getSelectedItem());
                     }
                 }
             }
@@ -446,25 +455,57 @@ public class MainFrame extends JFrame {
         horizontalBox_5.add(undoButton);
         undoButton.addActionListener(new ActionListener() {
         	public void actionPerformed(ActionEvent e) {
-        		if (undoStack.size() > 1) {
-                    undoStack.pop();
-                    Adjustment lastAdjustment = undoStack.peek();
+        		if (history.canUndo()) {
+                    Adjustment undone = history.undo();
 
-                    if(undoStack.size() == 1) {
+                    if(!history.canUndo()) {
                     	if(filterComboBox.getSelectedItem().toString().equals("No Filter")) {
                     		isModified = false;
                     		setTitle(getTitle().substring(0, getTitle().lastIndexOf('*')));
                     	}
-                        undoButton.setEnabled(false);
                     }
                     
-                    currentImage = lastAdjustment.getImage();
-                    brightnessImage = lastAdjustment.getImage();
-                	contrastImage  = lastAdjustment.getImage();
-                	noFilterImage = lastAdjustment.getImage();
-                	
-                	currentImage = applyFilter((String) filterComboBox.getSelectedItem());
-                    updateImageLabel(ImageProcessorUtility.zoomImage(currentImage, zoomFactor));
+                    restoreHistoryState(undone, brightnessSlider, contrastSlider, (String) filterComboBox.getSelectedItem());
+                }
+        	}
+        });
+        
+        Component verticalStrut_6 = Box.createVerticalStrut(10);
+        buttonPanel.add(verticalStrut_6);
+        
+        Box horizontalBox_6 = Box.createHorizontalBox();
+        buttonPanel.add(horizontalBox_6);
+        
+        redoButton.setFont(new Font("Open Sans", Font.TRUETYPE_FONT, 16));
+        redoButton.setPreferredSize(new Dimension(200, 50));
+        redoButton.setBackground(new Color(0x3C3F41));
+        redoButton.setForeground(new Color(0xD4D4D4));
+        redoButton.setFocusPainted(false);
+        redoButton.setBorder(BorderFactory.createLineBorder(new Color(0x1E1E1E)));
+        redoButton.setEnabled(false);
+        redoButton.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseEntered(MouseEvent e) {
+                redoButton.setBackground(new Color(0x444444));
+            }
+
+            @Override
+            public void mouseExited(MouseEvent e) {
+                redoButton.setBackground(new Color(0x3C3F41));
+            }
+        });
+        horizontalBox_6.add(redoButton);
+        redoButton.addActionListener(new ActionListener() {
+        	public void actionPerformed(ActionEvent e) {
+        		if (history.canRedo()) {
+                    Adjustment redone = history.redo();
+
+                    if(isModified == false) {
+                    	isModified = true;
+                    	setTitle(getTitle() + "*");
+                    }
+                    
+                    restoreHistoryState(redone, brightnessSlider, contrastSlider, (String) filterComboBox.getSelectedItem());
                 }
         	}
         });
@@ -486,87 +527,343 @@ public class MainFrame extends JFrame {
         saveButton.setBackground(new Color(0x3C3F41));
         saveButton.setForeground(new Color(0xD4D4D4));
         saveButton.setToolTipText("Saves image at the path of the project");
-        saveButton.addActionListener(e -> {selectedProject.setImage(currentImage);
-        								   ImageSaveUtility.saveImage(selectedProject); 
-        								   undoStack.clear(); 
-        								   undoStack.push(new Adjustment(currentImage, type.DEFAULT));
-        								   isModified = false;
-        				                   setTitle(getTitle().substring(0, getTitle().lastIndexOf('*')));
-        							});
+        saveButton.addActionListener(e -> saveProject());
         menu.add(saveButton);
+        imageControls.add(saveButton);
         
         JMenuItem saveAsButton = new JMenuItem("Save As");
         saveAsButton.setBackground(new Color(0x3C3F41));
         saveAsButton.setForeground(new Color(0xD4D4D4));
         saveAsButton.setToolTipText("Save as a different format at a specific path");
-        saveAsButton.addActionListener(e -> {ImageSaveUtility.saveAsImage(currentImage, MainFrame.this);
-        								     undoStack.clear(); 
-        								     undoStack.push(new Adjustment(currentImage, type.DEFAULT));
-        							});
+        saveAsButton.addActionListener(e -> saveAs());
         menu.add(saveAsButton);
+        imageControls.add(saveAsButton);
+        regionControls.add(saveAsButton);
+        imageControls.add(brightnessSlider);
+        imageControls.add(contrastSlider);
+        setImageControlsEnabled(currentImage != null);
         
     }
     
     /**
-     * Updates all the BufferedImages with the modified Image and pushes the Adjustment
-     * down the undoStack.
+     * Enables the filters, rotations, sliders and saving, which all need the full resolution image.
+     * They stay disabled while a project is loading. Images that are viewed by regions can only be
+     * rotated, flipped and saved to a new file, through the tile store of the project.
+     * 
+     * @param enabled True once the full resolution image is the current image.
+     */
+    private void setImageControlsEnabled(boolean enabled) {
+    	boolean regions = project.getRegionLoader() != null;
+    	for (JComponent control : imageControls) {
+    		control.setEnabled(enabled || (regions && regionControls.contains(control)));
+    	}
+    }
+    
+    /**
+     * Checks if rotations and flips can be applied: to the full resolution image, or to an image
+     * too large to decode whole, whose regions the viewport draws through the orientation.
+     * 
+     * @return True if there is an image to orient.
+     */
+    private boolean canOrient() {
+    	return currentImage != null || project.getRegionLoader() != null;
+    }
+    
+    /**
+     * Saves the rendered image at the path of the project, in the background. Once it is written,
+     * the saved state becomes the new starting point of the history, see saveListener.
+     * While the file still holds the original of the history and only rotations and flips
+     * were applied, a JPEG file is turned losslessly instead of being encoded again.
+     * fileOrientation is the orientation the file will hold once the queued saves are written,
+     * so that a save queued behind another one is composed with it; a failed save resets it.
+     */
+    private void saveProject() {
+    	if (currentImage == null) {
+    		if (project.getRegionLoader() != null) {
+    			// the file of the project is the source of its tiles, so the image is only written to a new one
+    			saveAs();
+    		}
+    		return;
+    	}
+    	boolean pixelsUnchanged = createPipeline(filterLabel).isIdentity();
+    	Orientation orientation = fileOrientation != null && pixelsUnchanged ? fileOrientation.inverse().then(history.getOrientation()) : null;
+    	ImageSaveUtility.saveImageAsync(project, orientedImage(), orientation, saveListener(true, history.getVersion()));
+    	fileOrientation = pixelsUnchanged ? history.getOrientation() : null;
+    	saveStarted();
+    }
+    
+    /**
+     * Saves the rendered image to a file chosen by the user, in the background. An image too large
+     * to decode whole is written as PNG from the tile store of the project instead.
+     */
+    private void saveAs() {
+    	boolean started = project.getRegionLoader() != null
+    			? ImageSaveUtility.saveTilesAs(project, history.getOrientation(), this, saveListener(false, history.getVersion()))
+    			: ImageSaveUtility.saveAsImage(orientedImage(), this, saveListener(false, history.getVersion()));
+    	if (started) {
+    		saveStarted();
+    	}
+    }
+    
+    /**
+     * Shows the progress bar for a save that was just started.
+     */
+    private void saveStarted() {
+    	savesInProgress++;
+    	saveProgress.setValue(0);
+    	saveProgress.setVisible(true);
+    	revalidate();
+    }
+    
+    /**
+     * Creates a listener that shows the progress of a save in the progress bar,
+     * which is hidden again once every save is written.
+     * Once the image is written, and if nothing was edited since the save started, the saved
+     * state becomes the new starting point of the history and a save of the project file clears
+     * the unsaved changes mark. A failed save leaves the history and the mark as they are.
+     * 
+     * @param projectFile True for a save of the project file, which shows a message if it fails.
+     * @param version The version of the history when the save started.
+     * @return The listener for one save.
+     */
+    private ImageSaveUtility.SaveListener saveListener(boolean projectFile, int version) {
+    	return new ImageSaveUtility.SaveListener() {
+			@Override
+			public void progress(int percent) {
+				saveProgress.setValue(percent);
+			}
+
+			@Override
+			public void saved(File file, IOException error) {
+				if (--savesInProgress == 0) {
+					saveProgress.setVisible(false);
+					revalidate();
+				}
+				if (error != null) {
+					// counted before the message, whose event loop can run a pending exit
+					failedSaves++;
+					if (projectFile) {
+						fileOrientation = null;
+						error.printStackTrace();
+						JOptionPane.showMessageDialog(MainFrame.this, "Failed to save the image!", "Error", JOptionPane.ERROR_MESSAGE);
+					}
+					return;
+				}
+				if (history.getVersion() == version) {
+					history.rebase();
+					refreshHistoryButtons();
+					if (projectFile && isModified) {
+						isModified = false;
+						setTitle(getTitle().substring(0, getTitle().lastIndexOf('*')));
+					}
+				}
+			}
+		};
+    }
+    
+    /**
+     * Exits the application once the saves that are still being written are done, if all of them
+     * succeeded. If one failed, the frame is enabled again and stays open with the edits.
+     */
+    private void exitWhenSaved() {
+    	setEnabled(false);
+    	int failedBefore = failedSaves;
+    	ImageSaveUtility.whenSaved(() -> {
+    		if (failedSaves == failedBefore) {
+    			System.exit(0);
+    		}
+    		setEnabled(true);
+    	});
+    }
+    
+    /**
+     * Shows the image of a project that is loaded in the background. The preview is only
+     * displayed, stretched to the size of the full image, and editing starts once the full
+     * resolution image replaces it. An image too large to decode whole keeps its preview, with its
+     * visible regions decoded on demand, and can only be rotated, flipped and saved to a new file.
+     * 
+     * @param image The preview or the full resolution image.
+     * @param complete True if this is the full resolution image.
+     */
+    private void imageLoaded(BufferedImage image, boolean complete) {
+    	if(!complete) {
+    		imageView.setImage(image, project.getWidth(), project.getHeight());
+    		imageView.setRegionLoader(project.getRegionLoader());
+    		setImageControlsEnabled(false);
+    		return;
+    	}
+    	currentImage = image;
+    	history = new EditHistory(image);
+    	setImageControlsEnabled(image != null && project.getRegionLoader() == null);
+    	fileOrientation = Orientation.NORMAL;
+    	imageView.setOrientation(history.getOrientation());
+    	refreshHistoryButtons();
+    	updateImageLabel(image);
+    }
+    
+    /**
+     * Records the adjustment in the edit history and renders the brightness,
+     * contrast and filter over the original image. Rotations and flips only change
+     * the orientation the viewport draws the image with, no pixel is copied.
      * 
-     * @param modifiedImage The BufferedImage after the adjustment applied.
      * @param a The type of the adjustment.
+     * @param value The parameter of the adjustment (slider value or rotation direction).
      * @param filter The current filter that is applied over the image.
      */
-    private void updateImage(BufferedImage modifiedImage, type a, String filter) {
-    	if(a != type.FILTER) {
-    		noFilterImage = modifiedImage;
-    		if(a != type.BRIGHTNESS)
-        		brightnessImage = modifiedImage;
-        	if(a != type.CONTRAST)
-        		contrastImage  = modifiedImage;
-    		undoStack.push(new Adjustment(copyImage(noFilterImage), a));
+    @SuppressWarnings("try")
+    private void updateImage(type a, int value, String filter) {
+    	try (Timing timing = MetricsRegistry.time(Area.RENDER, "updateImage", a.name())) {
+    		if(a != type.FILTER) {
+    			history.push(a, value);
+    			refreshHistoryButtons();
+    		}
+    		if(a == type.ROTATE || a == type.FLIP) {
+    			imageView.setOrientation(history.getOrientation());
+    			return;
+    		}
+    		requestRender(filter);
     	}
-    	currentImage = applyFilter(filter);
-        updateImageLabel(ImageProcessorUtility.zoomImage(currentImage, zoomFactor));
     }
     
     /**
-     * Creates a copy of a BufferedImage.
+     * Brings the brightness, contrast, sliders and displayed image in line with
+     * the current position of the edit history, after an undo or a redo.
      * 
-     * @param original The original image to be copied.
-     * @return A new BufferedImage that is a copy of the original.
+     * @param adjustment The adjustment that was undone or redone.
+     * @param brightnessSlider The slider that shows the brightness.
+     * @param contrastSlider The slider that shows the contrast.
+     * @param filter The current filter that is applied over the image.
+     */
+    private void restoreHistoryState(Adjustment adjustment, JSlider brightnessSlider, JSlider contrastSlider, String filter) {
+    	brightness = history.getBrightness();
+    	contrast = history.getContrast();
+    	restoringSliders = true;
+    	brightnessSlider.setValue(brightness);
+    	contrastSlider.setValue(contrast);
+    	restoringSliders = false;
+    	refreshHistoryButtons();
+    	
+    	imageView.setOrientation(history.getOrientation());
+    	if(!adjustment.isGeometric()) {
+    		requestRender(filter);
+    	}
+    }
+    
+    /**
+     * Enables the undo and redo buttons only when there is something to undo or redo.
      */
-    private BufferedImage copyImage(BufferedImage original) {
-    	BufferedImage copy = original.getSubimage(0, 0, original.getWidth(), original.getHeight());
-        return copy;
+    private void refreshHistoryButtons() {
+    	undoButton.setEnabled(history.canUndo());
+    	redoButton.setEnabled(history.canRedo());
     }
     
     
     /**
-     * Updates the image displayed in the JLabel with a new BufferedImage.
+     * Updates the image displayed in the viewport with a new full resolution BufferedImage.
+     * The viewport applies the zoom factor when painting, sampling from a pyramid of the image
+     * when zoomed out, and draws it through the orientation of the history. The pyramid of the
+     * project is reused if the image is the original image, otherwise a pyramid of the rendered
+     * image is generated in the background.
      * 
-     * @param image The image to be displayed in the JLabel.
+     * @param image The image to be displayed in the viewport.
      */
+    @SuppressWarnings("try")
     private void updateImageLabel(BufferedImage image) {
-        ImageIcon icon = new ImageIcon(image);
-        imageLabel.setIcon(icon);
+    	try (Timing timing = MetricsRegistry.time(Area.RENDER, "updateImageLabel", image)) {
+    		ImagePyramid pyramid = project.getPyramid();
+    		if (pyramid == null || pyramid.getImage() != image) {
+    			pyramid = image != null ? new ImagePyramid(image) : null;
+    		}
+    		if (displayPyramid != null && displayPyramid != pyramid && displayPyramid != project.getPyramid()) {
+    			displayPyramid.invalidate();
+    		}
+    		displayPyramid = pyramid;
+    		imageView.setImage(image, pyramid);
+    	}
     }
     
-    private BufferedImage applyFilter(String filter) {
-    	BufferedImage image = null;
-    	switch (filter) {
-    	case "No Filter":
-    		image = noFilterImage;
-    		break;
-        case "Grayscale":
-            image = ImageProcessorUtility.toGrayscale(noFilterImage);
-            break;
-        case "Sepia":
-            image = ImageProcessorUtility.toSepia(noFilterImage);
-            break;
-        case "Negative":
-            image = ImageProcessorUtility.toNegative(noFilterImage);
-            break;
+    /**
+     * Renders the current state in the background and, when it is done, makes it the
+     * current image and displays it. Newer requests cancel and replace older ones.
+     * 
+     * @param filter The label of the current filter.
+     */
+    private void requestRender(String filter) {
+    	filterLabel = filter;
+    	PointOperationPipeline pipeline = createPipeline(filter);
+    	BufferedImage original = history.getOriginal();
+    	renderScheduler.submit(cancelled -> pipeline.apply(original, cancelled), rendered -> {
+    		currentImage = rendered;
+    		updateImageLabel(rendered);
+    	});
+    }
+    
+    /**
+     * Renders a preview of the current state in the background while a slider is adjusting.
+     * The preview is rendered from the level of the project's pyramid nearest to the viewport size,
+     * so its cost doesn't depend on the resolution of the image, and the viewport stretches it
+     * to the display size when painting. Only the displayed image changes, the current image stays
+     * the last committed one.
+     * 
+     * @param filter The label of the current filter.
+     */
+    private void requestPreview(String filter) {
+    	PointOperationPipeline pipeline = createPipeline(filter);
+    	BufferedImage original = history.getOriginal();
+    	boolean transposed = history.getOrientation().transposes();
+    	double zoom = zoomFactor;
+    	Dimension viewport = scrollPane.getViewport().getExtentSize();
+    	double scale = Math.min(1.0, zoom);
+    	if (viewport.width > 0 && viewport.height > 0) {
+    		double displayedWidth = transposed ? original.getHeight() : original.getWidth();
+    		double displayedHeight = transposed ? original.getWidth() : original.getHeight();
+    		scale = Math.min(scale, Math.max(viewport.getWidth() / displayedWidth, viewport.getHeight() / displayedHeight));
     	}
-    	return image;
+    	
+    	ImagePyramid pyramid = project.getPyramid();
+    	BufferedImage proxy = pyramid != null && pyramid.getImage() == original ? pyramid.levelFor(scale) : original;
+    	renderScheduler.submit(cancelled -> pipeline.apply(proxy, cancelled),
+    			preview -> imageView.setImage(preview, original.getWidth(), original.getHeight()));
+    }
+    
+    /**
+     * Returns the fully rendered current image, rendering it right away if the background
+     * render isn't finished yet. Used before saving.
+     * 
+     * @return The BufferedImage with all adjustments applied.
+     */
+    private BufferedImage renderedImage() {
+    	if (!renderScheduler.isIdle()) {
+    		renderScheduler.cancel();
+    		currentImage = applyFilter(filterLabel);
+    		updateImageLabel(currentImage);
+    	}
+    	return currentImage;
+    }
+    
+    /**
+     * Returns the fully rendered current image rotated and flipped by the orientation of the
+     * history. The orientation is only applied here, in one pass, when the image is saved.
+     * 
+     * @return The BufferedImage as it is displayed.
+     */
+    private BufferedImage orientedImage() {
+    	return ImageProcessorUtility.orient(renderedImage(), history.getOrientation());
+    }
+    
+    /**
+     * Renders the original image with the current brightness, contrast and filter.
+     * All three are compiled into one PointOperationPipeline and applied in a single pass.
+     * 
+     * @param filter The label of the current filter.
+     * @return The rendered BufferedImage.
+     */
+    private BufferedImage applyFilter(String filter) {
+    	return createPipeline(filter).apply(history.getOriginal());
+    }
+    
+    private PointOperationPipeline createPipeline(String filter) {
+    	return new PointOperationPipeline(brightness, contrast, Filter.fromLabel(filter));
     }
 
 }
@@ -1,23 +1,97 @@
 package project;
 
+import java.awt.Dimension;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.imageio.ImageIO;
+import javax.swing.SwingUtilities;
+
+import Utility.ImageLoaderUtility;
+import Utility.ImagePyramid;
+import Utility.MappedTileStore;
+import Utility.MetricsRegistry;
+import Utility.MetricsRegistry.Area;
+import Utility.MetricsRegistry.Timing;
+import Utility.RegionImageLoader;
 
 public class Project {
 
+	/**
+	 * The maximum width and height of the preview shown while a project is loading.
+	 */
+	public static final int PREVIEW_SIZE = 1024;
+
+	/**
+	 * The number of pixels above which the image isn't decoded whole, only its preview and the
+	 * regions that are displayed, set by the photodite.regionThreshold system property.
+	 */
+	public static final long REGION_THRESHOLD = Long.getLong("photodite.regionThreshold", 100_000_000L);
+
+	private static final ExecutorService LOADER = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "PhotoDitE-loader");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private static final ExecutorService PREVIEWER = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "PhotoDitE-preview");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * Receives the images of a project that is loaded in the background, on the EDT.
+	 */
+	public interface ImageLoadListener {
+		/**
+		 * Called once with a preview, if the file embeds a thumbnail that arrives before the full
+		 * image or if the image is too large to decode whole, and then once with the full resolution
+		 * image, which never comes for images only viewed by regions.
+		 *
+		 * @param image The preview or the full image, null if the image couldn't be read.
+		 * @param complete True if this is the full resolution image.
+		 */
+		void imageLoaded(BufferedImage image, boolean complete);
+	}
+
 	protected String name;
 	protected String path;
 	protected String type;
 	protected BufferedImage image;
+	protected ImagePyramid pyramid;
+	protected RegionImageLoader regionLoader;
+	protected MappedTileStore tiles;
+	protected int width;
+	protected int height;
+	protected boolean loaded = true;
+	private final List<ImageLoadListener> listeners = new ArrayList<>();
 	
+	/**
+	 * Creates a project and reads its image right away.
+	 * 
+	 * @param n The name of the project.
+	 * @param p The path of the image.
+	 * @param t The file type of the image.
+	 */
 	public Project(String n, String p, String t) {
+		this(n, p, t, false);
+	}
+	
+	@SuppressWarnings("try")
+	private Project(String n, String p, String t, boolean async) {
 		name = n;
 		path = p;
 		type = t;
-		try {
+		if(async) {
+			loaded = false;
+			return;
+		}
+		try (Timing timing = MetricsRegistry.time(Area.IO, "load", path)) {
 			if(path != null) {
 				image = ImageIO.read(new File(path));
 			}
@@ -27,6 +101,159 @@ public class Project {
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
+		if(image != null) {
+			pyramid = new ImagePyramid(image);
+			width = image.getWidth();
+			height = image.getHeight();
+		}
+	}
+
+	/**
+	 * Creates a project and reads its image in the background, so that it can be opened
+	 * without waiting for the whole image to be decoded. While the full image is decoded, the
+	 * thumbnail embedded in the file, if there is one, is read on another thread and becomes the
+	 * image of the project until the full resolution image replaces it. A file without one is
+	 * decoded in a single pass: a subsampled decode reads the whole file too and would only delay it.
+	 * Listeners are notified on the EDT.
+	 * Images with more than REGION_THRESHOLD pixels are never decoded whole: the project keeps
+	 * only a subsampled preview, which is not complete, and a region loader for the parts that are displayed.
+	 * Their pixels are decoded into a tile store when they are needed, see getTileStore.
+	 * 
+	 * @param n The name of the project.
+	 * @param p The path of the image.
+	 * @param t The file type of the image.
+	 * @return The project, with no image until the preview is decoded.
+	 */
+	public static Project load(String n, String p, String t) {
+		Project project = new Project(n, p, t, true);
+		LOADER.execute(project::loadImage);
+		return project;
+	}
+
+	@SuppressWarnings("try")
+	private void loadImage() {
+		File file = new File(path);
+		Dimension size = null;
+		try {
+			size = ImageLoaderUtility.readSize(file);
+			if(size != null && (long) size.width * size.height > REGION_THRESHOLD) {
+				regionLoader = new RegionImageLoader(file);
+				BufferedImage preview;
+				try (Timing timing = MetricsRegistry.time(Area.IO, "loadPreview", path)) {
+					preview = ImageLoaderUtility.readSubsampled(file, ImageLoaderUtility.subsamplingFor(size, PREVIEW_SIZE));
+				}
+				Dimension previewSize = size;
+				SwingUtilities.invokeLater(() -> publish(preview, previewSize, false));
+			}
+			else if(size != null) {
+				Dimension previewSize = size;
+				PREVIEWER.execute(() -> loadThumbnail(file, previewSize));
+			}
+		} catch (IOException e) {
+			// the header or the preview couldn't be read, decoding the whole file may still work
+			e.printStackTrace();
+			size = null;
+			regionLoader = null;
+		}
+		if(regionLoader != null) {
+			return;
+		}
+		try {
+			BufferedImage full;
+			try (Timing timing = MetricsRegistry.time(Area.IO, "load", path)) {
+				full = ImageLoaderUtility.read(file);
+			}
+			Dimension fullSize = size;
+			SwingUtilities.invokeLater(() -> publish(full, fullSize, true));
+		} catch (IOException e) {
+			e.printStackTrace();
+			SwingUtilities.invokeLater(() -> publish(null, null, true));
+		}
+	}
+
+	/**
+	 * Helper method that reads the thumbnail embedded in the file, while the full image is decoded
+	 * on the loader thread, and publishes it as the preview.
+	 */
+	@SuppressWarnings("try")
+	private void loadThumbnail(File file, Dimension size) {
+		try (Timing timing = MetricsRegistry.time(Area.IO, "loadPreview", path)) {
+			BufferedImage thumbnail = ImageLoaderUtility.readThumbnail(file);
+			if(thumbnail != null) {
+				SwingUtilities.invokeLater(() -> publish(thumbnail, size, false));
+			}
+		} catch (IOException e) {
+			// only the preview is lost, the full image is decoded anyway
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Helper method that makes a loaded image the image of the project and notifies the listeners.
+	 * A preview is only displayed until the full image replaces it, so no pyramid is built for it,
+	 * and it is dropped if the full image is already there.
+	 */
+	private void publish(BufferedImage loadedImage, Dimension size, boolean complete) {
+		if(!complete && loaded) {
+			return;
+		}
+		if(size != null) {
+			width = size.width;
+			height = size.height;
+		}
+		if(complete) {
+			loaded = true;
+			setImage(loadedImage);
+		}
+		else {
+			image = loadedImage;
+		}
+		for(ImageLoadListener listener : new ArrayList<>(listeners)) {
+			listener.imageLoaded(loadedImage, complete);
+		}
+		if(complete) {
+			listeners.clear();
+		}
+	}
+
+	/**
+	 * Adds a listener for the images loaded in the background. Must be called on the EDT.
+	 * 
+	 * @param listener The listener, it isn't called if the project is already loaded.
+	 */
+	public void addImageLoadListener(ImageLoadListener listener) {
+		if(!loaded) {
+			listeners.add(listener);
+		}
+	}
+
+	/**
+	 * Checks if the full resolution image is available.
+	 * 
+	 * @return False while the image is being loaded in the background.
+	 */
+	public boolean isLoaded() {
+		return loaded;
+	}
+
+	/**
+	 * Returns the width of the full resolution image, known as soon as the preview
+	 * is loaded.
+	 * 
+	 * @return The width in pixels, 0 if it isn't known yet.
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Returns the height of the full resolution image, known as soon as the preview
+	 * is loaded.
+	 * 
+	 * @return The height in pixels, 0 if it isn't known yet.
+	 */
+	public int getHeight() {
+		return height;
 	}
 
 	public BufferedImage getImage() {
@@ -49,8 +276,68 @@ public class Project {
 		this.path = path;
 	}
 
+	/**
+	 * Sets the image of the project. The image pyramid of the previous image is dropped
+	 * and a new one is generated in the background.
+	 * 
+	 * @param image The new image.
+	 */
 	public void setImage(BufferedImage image) {
+		if(image != this.image) {
+			if(pyramid != null) {
+				pyramid.invalidate();
+			}
+			pyramid = image != null ? new ImagePyramid(image) : null;
+		}
 		this.image = image;
+		if(image != null && loaded) {
+			width = image.getWidth();
+			height = image.getHeight();
+		}
+	}
+
+	/**
+	 * Returns the multi-resolution pyramid of the image, used for zoomed out views,
+	 * previews and thumbnails.
+	 * 
+	 * @return The pyramid, or null if the project has no image.
+	 */
+	public ImagePyramid getPyramid() {
+		return pyramid;
+	}
+
+	/**
+	 * Returns the loader that decodes the displayed regions of an image too large to decode whole.
+	 * 
+	 * @return The loader, or null if the image is decoded whole.
+	 */
+	public RegionImageLoader getRegionLoader() {
+		return regionLoader;
+	}
+
+	/**
+	 * Returns the full resolution image of a project too large to decode whole, in a tile store outside
+	 * the heap. The file is decoded into it by the region loader the first time, which reads the whole
+	 * file, so this must not be called on the EDT. The store lives as long as the application.
+	 * 
+	 * @return The store, or null if the image is decoded whole.
+	 * @throws IOException If the file can't be decoded or the store can't be written.
+	 */
+	public synchronized MappedTileStore getTileStore() throws IOException {
+		if(tiles == null && regionLoader != null) {
+			tiles = regionLoader.readTiles();
+		}
+		return tiles;
+	}
+
+	/**
+	 * Creates a thumbnail of the image from the nearest pyramid level.
+	 * 
+	 * @param maxSize The maximum width and height of the thumbnail.
+	 * @return The thumbnail, or null if the project has no image.
+	 */
+	public BufferedImage getThumbnail(int maxSize) {
+		return pyramid != null ? pyramid.getThumbnail(maxSize) : null;
 	}
 
 	public String getType() {
@@ -0,0 +1,147 @@
+package project;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.swing.AbstractListModel;
+import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+
+import Utility.DatabaseUtility;
+import Utility.RepositoryUtility;
+
+/**
+ * ProjectListModel is a list model over the projects saved in the repository that loads them
+ * lazily, one page at a time. The first page is loaded right away and the next ones in the
+ * background, as the list is scrolled towards the last loaded project, so the start screen
+ * opens just as fast with a hundred thousand projects as with ten.
+ * Entries have the "name - path - type" format.
+ */
+public class ProjectListModel extends AbstractListModel<String> {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final int PAGE_SIZE = DatabaseUtility.PAGE_SIZE;
+	public static final String EMPTY_MESSAGE = "No projects found. Create a new project to get started!";
+
+	private static final ExecutorService LOADER = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "PhotoDitE-catalog");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final List<String> entries = new ArrayList<>();
+	private long lastId = 0;
+	private boolean complete = false;
+	private boolean loading = false;
+	private int generation = 0;
+
+	/**
+	 * Drops the loaded projects and loads the first page again. Must be called on the EDT.
+	 */
+	public void reload() {
+		int size = getSize();
+		entries.clear();
+		lastId = 0;
+		complete = false;
+		loading = false;
+		generation++;
+		if (size > 0) {
+			fireIntervalRemoved(this, 0, size - 1);
+		}
+
+		List<String> page = new ArrayList<>();
+		try {
+			long pageLastId = RepositoryUtility.getProjectRepository().loadProjectsPage(0, PAGE_SIZE, page);
+			addPage(page, pageLastId);
+		} catch (IOException e) {
+			e.printStackTrace();
+			complete = true;
+			JOptionPane.showMessageDialog(null, "Error loading projects from database!", "Database Error", JOptionPane.ERROR_MESSAGE);
+		}
+	}
+
+	/**
+	 * Makes sure the projects up to an index are loaded, or being loaded. When the index is
+	 * within half a page of the last loaded project, the next page is loaded in the background.
+	 * Must be called on the EDT.
+	 *
+	 * @param index The index of the last visible project.
+	 */
+	public void ensureLoaded(int index) {
+		if (complete || loading || index < entries.size() - PAGE_SIZE / 2) {
+			return;
+		}
+		loading = true;
+		int ticket = generation;
+		long afterId = lastId;
+		LOADER.execute(() -> {
+			List<String> page = new ArrayList<>();
+			try {
+				long pageLastId = RepositoryUtility.getProjectRepository().loadProjectsPage(afterId, PAGE_SIZE, page);
+				SwingUtilities.invokeLater(() -> {
+					if (ticket == generation) {
+						loading = false;
+						addPage(page, pageLastId);
+					}
+				});
+			} catch (IOException e) {
+				e.printStackTrace();
+				SwingUtilities.invokeLater(() -> {
+					if (ticket == generation) {
+						loading = false;
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Checks if the database holds no projects at all.
+	 *
+	 * @return True if every page was loaded and none had a project.
+	 */
+	public boolean isEmptyCatalog() {
+		return complete && entries.isEmpty();
+	}
+
+	/**
+	 * Checks if every project is loaded.
+	 *
+	 * @return True if the last page was loaded.
+	 */
+	public boolean isComplete() {
+		return complete;
+	}
+
+	@Override
+	public int getSize() {
+		return isEmptyCatalog() ? 1 : entries.size();
+	}
+
+	@Override
+	public String getElementAt(int index) {
+		return isEmptyCatalog() ? EMPTY_MESSAGE : entries.get(index);
+	}
+
+	public String get(int index) {
+		return getElementAt(index);
+	}
+
+	private void addPage(List<String> page, long pageLastId) {
+		complete = page.size() < PAGE_SIZE;
+		lastId = pageLastId;
+		if (page.isEmpty()) {
+			if (isEmptyCatalog()) {
+				fireIntervalAdded(this, 0, 0);
+			}
+			return;
+		}
+		int first = entries.size();
+		entries.addAll(page);
+		fireIntervalAdded(this, first, entries.size() - 1);
+	}
+}
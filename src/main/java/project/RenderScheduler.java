@@ -0,0 +1,103 @@
+package project;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * RenderScheduler runs image renders on a background thread instead of the Swing EDT.
+ * Requests are coalesced: while a render is running only the latest request waits,
+ * older ones are dropped. A new request also cancels the render in progress, and a
+ * result is only published (on the EDT) if no newer request was made in the meantime.
+ */
+public class RenderScheduler {
+
+	/**
+	 * A render that can stop early when it is no longer needed.
+	 *
+	 * @param <T> The type of the result.
+	 */
+	public interface RenderTask<T> {
+		/**
+		 * Computes the result. Long renders should check the cancelled flag
+		 * and throw a CancellationException when it is set.
+		 *
+		 * @param cancelled Returns true when a newer request replaced this one.
+		 * @return The result to publish.
+		 */
+		T render(BooleanSupplier cancelled);
+	}
+
+	private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "PhotoDitE-render");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private final AtomicLong generation = new AtomicLong();
+	private final AtomicReference<Runnable> pending = new AtomicReference<>();
+	private long publishedGeneration = 0;
+
+	/**
+	 * Schedules a render, replacing the request that is waiting and cancelling the one
+	 * that is running, if any.
+	 *
+	 * @param task The render to run in the background.
+	 * @param publisher Receives the result on the EDT, unless a newer request was made.
+	 */
+	public <T> void submit(RenderTask<T> task, Consumer<T> publisher) {
+		long ticket = generation.incrementAndGet();
+		BooleanSupplier cancelled = () -> generation.get() != ticket;
+
+		Runnable job = () -> {
+			if (cancelled.getAsBoolean()) {
+				return;
+			}
+			try {
+				T result = task.render(cancelled);
+				SwingUtilities.invokeLater(() -> {
+					if (!cancelled.getAsBoolean()) {
+						publishedGeneration = ticket;
+						publisher.accept(result);
+					}
+				});
+			} catch (CancellationException e) {
+				// a newer request replaced this one
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+			}
+		};
+
+		if (pending.getAndSet(job) == null) {
+			executor.execute(this::runPending);
+		}
+	}
+
+	/**
+	 * Cancels every render that is waiting or running. Must be called on the EDT.
+	 */
+	public void cancel() {
+		publishedGeneration = generation.incrementAndGet();
+	}
+
+	/**
+	 * Checks if the result of the latest request was published. Must be called on the EDT.
+	 *
+	 * @return True if there is no render waiting or running.
+	 */
+	public boolean isIdle() {
+		return publishedGeneration == generation.get();
+	}
+
+	private void runPending() {
+		Runnable job = pending.getAndSet(null);
+		if (job != null) {
+			job.run();
+		}
+	}
+}
@@ -6,14 +6,18 @@ import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
-import Utility.DatabaseUtility;
+import Utility.MetricsRegistry;
+import Utility.RepositoryUtility;
+import Utility.ThumbnailCache;
 
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.image.BufferedImage;
 import java.io.File;
-import java.sql.Connection;
-import java.sql.SQLException;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.apache.commons.io.FilenameUtils;
 
@@ -24,7 +28,8 @@ import org.apache.commons.io.FilenameUtils;
 public class StartUpFrame extends JFrame {
 
     private static final long serialVersionUID = 1L;
-    private DefaultListModel<String> projectListModel;
+    private ProjectListModel projectListModel;
+    private Set<String> requestedThumbnails = new HashSet<>();
 
     /**
      * Constructs the StartupFrame with a project list and options to create or open projects.
@@ -48,18 +53,25 @@ public class StartUpFrame extends JFrame {
         centerPanel.setBackground(new Color(0x2C2C2C));
         getContentPane().add(centerPanel, BorderLayout.CENTER);
 
-        projectListModel = new DefaultListModel<>();
+        projectListModel = new ProjectListModel();
         JList<String> projectList = new JList<>(projectListModel);
         projectList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
         projectList.setBackground(new Color(0x3C3F41));
         projectList.setForeground(new Color(0xD4D4D4));
         projectList.setFont(new Font("Arial", Font.PLAIN, 14));
+        projectList.setCellRenderer(new ProjectCellRenderer());
+        projectList.setFixedCellHeight(ThumbnailCache.THUMBNAIL_SIZE + 6);
         
         JScrollPane scrollPane = new JScrollPane(projectList);
+        scrollPane.getViewport().addChangeListener(e -> {
+        	projectListModel.ensureLoaded(projectList.getLastVisibleIndex());
+        	requestVisibleThumbnails(projectList);
+        });
         scrollPane.setBorder(BorderFactory.createTitledBorder(BorderFactory.createLineBorder(new Color(0xD4D4D4), 1), "Your Projects", TitledBorder.LEFT, TitledBorder.TOP, new Font("Arial", Font.PLAIN, 12), new Color(0xD4D4D4)));
         scrollPane.setBackground(new Color(0x3C3F41));
         centerPanel.add(scrollPane, BorderLayout.CENTER);
-        DatabaseUtility.loadProjectsFromDatabase(projectListModel, projectList);
+        reloadProjects(projectList);
+        SwingUtilities.invokeLater(() -> requestVisibleThumbnails(projectList));
 
         JPanel buttonPanel = new JPanel();
         buttonPanel.setLayout(new GridLayout(1, 2));
@@ -77,15 +89,18 @@ public class StartUpFrame extends JFrame {
             	if(!new File(projectList.getSelectedValue().substring(projectList.getSelectedValue().indexOf('-') + 1, projectList.getSelectedValue().lastIndexOf('-')).strip()).exists()) {
             		JOptionPane.showMessageDialog(StartUpFrame.this, 
                             "The selected project doesn't exist!", "Error", JOptionPane.ERROR_MESSAGE);
-            		DatabaseUtility.deleteProject(projectList.getSelectedValue().substring(projectList.getSelectedValue().indexOf('-') + 1, projectList.getSelectedValue().lastIndexOf('-')).strip());
+            		try {
+            			RepositoryUtility.getProjectRepository().deleteProject(projectList.getSelectedValue().substring(projectList.getSelectedValue().indexOf('-') + 1, projectList.getSelectedValue().lastIndexOf('-')).strip());
+            		} catch (IOException ex) {
+            			ex.printStackTrace();
+            		}
             		projectList.clearSelection();
-            		projectListModel.clear();
-            		DatabaseUtility.loadProjectsFromDatabase(projectListModel, projectList);
+            		reloadProjects(projectList);
             		openButton.setEnabled(false);
             		return;
             	}
             	else{
-            		Project project = new Project(projectList.getSelectedValue().substring(0, projectList.getSelectedValue().indexOf('-')).strip(), 
+            		Project project = Project.load(projectList.getSelectedValue().substring(0, projectList.getSelectedValue().indexOf('-')).strip(), 
                 							  	  projectList.getSelectedValue().substring(projectList.getSelectedValue().indexOf('-') + 1, projectList.getSelectedValue().lastIndexOf('-')).strip(),
                 							  	  projectList.getSelectedValue().substring(projectList.getSelectedValue().lastIndexOf('-') + 1, projectList.getSelectedValue().length()).strip());
             		MainFrame mainFrame = new MainFrame(project);
@@ -133,8 +148,12 @@ public class StartUpFrame extends JFrame {
                     "You must select an image for the project!", "Error", JOptionPane.ERROR_MESSAGE);
                     return;
                 }
-            	Project project = new Project(name, path, type);
-            	DatabaseUtility.addProject(project);
+            	Project project = Project.load(name, path, type);
+            	try {
+            		RepositoryUtility.getProjectRepository().addProject(project);
+            	} catch (IOException ex) {
+            		ex.printStackTrace();
+            	}
                 MainFrame mainFrame = new MainFrame(project);
                 mainFrame.setVisible(true);
                 dispose();
@@ -149,16 +168,117 @@ public class StartUpFrame extends JFrame {
         });
     }
 
+    /**
+     * Loads the first page of projects into the list. The list is disabled when there are
+     * no projects, so that the message shown instead can't be selected.
+     * 
+     * @param projectList The list of projects.
+     */
+    private void reloadProjects(JList<String> projectList) {
+    	projectListModel.reload();
+    	projectList.setEnabled(!projectListModel.isEmptyCatalog());
+    }
+    
+    /**
+     * Loads the thumbnails of the projects that are visible in the list, in the background.
+     * The list is repainted as each one becomes available. Scrolling calls this for every
+     * pixel moved, so only the rows that became visible since the last call are requested.
+     * 
+     * @param projectList The list of projects.
+     */
+    private void requestVisibleThumbnails(JList<String> projectList) {
+    	int first = projectList.getFirstVisibleIndex();
+    	int last = projectList.getLastVisibleIndex();
+    	if (first < 0 || !projectList.isEnabled()) {
+    		requestedThumbnails.clear();
+    		return;
+    	}
+    	Set<String> visible = new HashSet<>();
+    	for (int i = first; i <= last; i++) {
+    		String path = pathOf(projectListModel.get(i));
+    		if (path != null && visible.add(path) && !requestedThumbnails.contains(path)) {
+    			ThumbnailCache.request(path, projectList::repaint);
+    		}
+    	}
+    	requestedThumbnails = visible;
+    }
+    
+    /**
+     * Extracts the path from a "name - path - type" entry of the project list.
+     * 
+     * @param entry The entry of the list.
+     * @return The path, or null if the entry isn't a project.
+     */
+    private static String pathOf(String entry) {
+    	int first = entry.indexOf('-');
+    	int last = entry.lastIndexOf('-');
+    	if (first < 0 || first == last) {
+    		return null;
+    	}
+    	return entry.substring(first + 1, last).strip();
+    }
+    
+    /**
+     * Renders a project of the list with its thumbnail, if it is already in memory,
+     * and a blank square of the same size otherwise.
+     */
+    private static class ProjectCellRenderer extends DefaultListCellRenderer {
+    	
+    	private static final long serialVersionUID = 1L;
+    	private static final Icon PLACEHOLDER = new ImageIcon(new BufferedImage(ThumbnailCache.THUMBNAIL_SIZE, ThumbnailCache.THUMBNAIL_SIZE, BufferedImage.TYPE_INT_ARGB));
+    	
+    	@Override
+    	public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+    		super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+    		String path = pathOf(value.toString());
+    		if (path != null) {
+    			BufferedImage thumbnail = ThumbnailCache.getIfPresent(path);
+    			setIcon(thumbnail != null ? new ThumbnailIcon(thumbnail) : PLACEHOLDER);
+    			setIconTextGap(8);
+    		}
+    		return this;
+    	}
+    }
+    
+    /**
+     * A thumbnail centered in a square of THUMBNAIL_SIZE, so that every row has the same layout.
+     */
+    private static class ThumbnailIcon extends ImageIcon {
+    	
+    	private static final long serialVersionUID = 1L;
+    	
+    	ThumbnailIcon(BufferedImage thumbnail) {
+    		super(thumbnail);
+    	}
+    	
+    	@Override
+    	public int getIconWidth() {
+    		return ThumbnailCache.THUMBNAIL_SIZE;
+    	}
+    	
+    	@Override
+    	public int getIconHeight() {
+    		return ThumbnailCache.THUMBNAIL_SIZE;
+    	}
+    	
+    	@Override
+    	public synchronized void paintIcon(Component c, Graphics g, int x, int y) {
+    		Image image = getImage();
+    		g.drawImage(image, x + (ThumbnailCache.THUMBNAIL_SIZE - image.getWidth(null)) / 2,
+    				y + (ThumbnailCache.THUMBNAIL_SIZE - image.getHeight(null)) / 2, c);
+    	}
+    }
+    
     /**
      * Launches the startup window.
      */
     public static void main(String[] args) {
     	
+    	MetricsRegistry.startExportFromSystemProperties();
     	try {
-			Connection connection = DatabaseUtility.getConnection();
-			DatabaseUtility.verifyTableExistance(connection);
+			RepositoryUtility.getProjectRepository().initialize();
 		
-    	} catch (SQLException e) {
+    	} catch (IOException e) {
 			e.printStackTrace();
 		}
     	
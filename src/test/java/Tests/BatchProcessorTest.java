@@ -0,0 +1,140 @@
+package Tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import Utility.ImageProcessorUtility;
+import Utility.Orientation;
+import project.BatchProcessor;
+import project.BatchProcessor.Recipe;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import javax.imageio.ImageIO;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Unit test class for the BatchProcessor class.
+ * This class contains tests to ensure a recipe is read like the editor applies it and every image of a directory is edited.
+ */
+public class BatchProcessorTest {
+
+    private File directory;
+
+    /**
+     * Set up the test environment with a new temporary directory.
+     * This method is executed before each test method.
+     */
+    @BeforeEach
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("photodite").toFile();
+    }
+
+    /**
+     * Clean up the temporary directory after each test method.
+     */
+    @AfterEach
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    /**
+     * Test that a recipe composes its rotations and flips, keeps the last slider values,
+     * and refuses unknown adjustments and missing values.
+     */
+    @Test
+    public void testParseRecipe() {
+        Recipe recipe = Recipe.parse("filter=grayscale, BRIGHTNESS=20,CONTRAST=-10,ROTATE=1,FLIP,ROTATE=-1");
+        assertEquals(Orientation.ROTATE_RIGHT.flip().rotateLeft(), recipe.getOrientation());
+        assertEquals(6, recipe.getAdjustments().size());
+        assertEquals("FILTER=GRAYSCALE,BRIGHTNESS=20,CONTRAST=-10,ROTATE=1,FLIP,ROTATE=-1", recipe.toString());
+
+        assertThrows(IllegalArgumentException.class, () -> Recipe.parse("BLUR=3"));
+        assertThrows(IllegalArgumentException.class, () -> Recipe.parse("BRIGHTNESS"));
+        assertThrows(IllegalArgumentException.class, () -> Recipe.parse("FILTER=VINTAGE"));
+    }
+
+    /**
+     * Test that every image of the directory is edited like in the editor, that a broken file
+     * is reported without stopping the others, and that other files are skipped.
+     */
+    @Test
+    public void testRunDirectory() throws Exception {
+        File input = new File(directory, "input");
+        File output = new File(directory, "output");
+        input.mkdir();
+        BufferedImage[] images = new BufferedImage[7];
+        for (int i = 0; i < images.length; i++) {
+            images[i] = createImage(40 + i, 30);
+            ImageIO.write(images[i], "png", new File(input, "image" + i + ".png"));
+        }
+        Files.write(new File(input, "broken.png").toPath(), new byte[] { 1, 2, 3 });
+        Files.write(new File(input, "notes.txt").toPath(), new byte[] { 1, 2, 3 });
+
+        Recipe recipe = Recipe.parse("BRIGHTNESS=20,CONTRAST=10,FILTER=GRAYSCALE,ROTATE=1");
+        BatchProcessor.Result result = new BatchProcessor(recipe, 2).run(input, output);
+
+        assertEquals(images.length, result.getProcessed());
+        assertEquals(1, result.getFailures().size());
+        assertTrue(result.getFailures().get(0).startsWith("broken.png"));
+        assertTrue(result.getImagesPerSecond() > 0);
+        assertEquals(images.length, output.list().length);
+        for (int i = 0; i < images.length; i++) {
+            BufferedImage expected = ImageProcessorUtility.rotateImageRight(ImageProcessorUtility.toGrayscale(
+                    ImageProcessorUtility.adjustContrast(ImageProcessorUtility.adjustBrightness(images[i], 20), 10)));
+            BufferedImage written = ImageIO.read(new File(output, "image" + i + ".png"));
+            assertEquals(expected.getWidth(), written.getWidth());
+            assertEquals(expected.getHeight(), written.getHeight());
+            for (int y = 0; y < expected.getHeight(); y++) {
+                for (int x = 0; x < expected.getWidth(); x++) {
+                    assertEquals(expected.getRGB(x, y), written.getRGB(x, y));
+                }
+            }
+        }
+    }
+
+    /**
+     * Test that images above the tile threshold are edited in a tile store and written as PNG.
+     */
+    @Test
+    public void testRunInTiles() throws Exception {
+        File input = new File(directory, "input");
+        File output = new File(directory, "output");
+        input.mkdir();
+        BufferedImage image = createImage(300, 270);
+        ImageIO.write(image, "png", new File(input, "large.png"));
+
+        Recipe recipe = Recipe.parse("FILTER=SEPIA,CONTRAST=10,ROTATE=-1,FLIP");
+        BatchProcessor processor = new BatchProcessor(recipe, 2);
+        processor.setTileThreshold(0);
+        processor.setFormat("jpg");
+        BatchProcessor.Result result = processor.run(input, output);
+
+        assertEquals(1, result.getProcessed(), result.getFailures().toString());
+        BufferedImage expected = recipe.apply(image);
+        BufferedImage written = ImageIO.read(new File(output, "large.png"));
+        assertEquals(expected.getWidth(), written.getWidth());
+        assertEquals(expected.getHeight(), written.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals(expected.getRGB(x, y), written.getRGB(x, y));
+            }
+        }
+    }
+
+    private static BufferedImage createImage(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, ((x * 6) << 16) | ((y * 8) << 8) | ((x * y) & 0xFF));
+            }
+        }
+        return image;
+    }
+}
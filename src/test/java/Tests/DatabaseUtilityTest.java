@@ -0,0 +1,255 @@
+package Tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import Utility.ConnectionPool;
+import Utility.DatabaseUtility;
+import project.Project;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.imageio.ImageIO;
+import javax.swing.DefaultListModel;
+import javax.swing.JList;
+
+/**
+ * Unit test class for the DatabaseUtility and ConnectionPool classes.
+ * This class contains tests that run the project operations against an in-memory H2 database
+ * and check that connections and prepared statements are reused.
+ */
+public class DatabaseUtilityTest {
+
+    private static final String URL = "jdbc:h2:mem:photodite;MODE=MySQL;DB_CLOSE_DELAY=-1";
+
+    private File imageFile;
+
+    /**
+     * Set up the test environment by connecting to an empty in-memory database
+     * and writing a small image for the projects.
+     * This method is executed before each test method.
+     */
+    @BeforeEach
+    public void setUp() throws SQLException, IOException {
+        DatabaseUtility.configure(URL, "sa", "", 2);
+        try (Connection connection = DatabaseUtility.getConnection()) {
+            DatabaseUtility.verifyTableExistance(connection);
+            assertFalse(connection.isClosed());
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("DELETE FROM Projects");
+            }
+        }
+        imageFile = File.createTempFile("photodite", ".png");
+        ImageIO.write(new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB), "png", imageFile);
+    }
+
+    /**
+     * Close the pool and delete the image after each test method.
+     */
+    @AfterEach
+    public void tearDown() {
+        DatabaseUtility.shutdown();
+        imageFile.delete();
+    }
+
+    /**
+     * Test that projects are added, listed and deleted, all over a single physical connection.
+     */
+    @Test
+    public void testProjectOperations() {
+        DatabaseUtility.addProject(new Project("First", imageFile.getAbsolutePath(), "png"));
+        Project second = new Project("Second", null, "jpg");
+        second.setPath("/missing/second.jpg");
+        DatabaseUtility.addProject(second);
+
+        DefaultListModel<String> model = new DefaultListModel<>();
+        DatabaseUtility.loadProjectsFromDatabase(model, new JList<>(model));
+        assertEquals(2, model.size());
+        assertEquals("First - " + imageFile.getAbsolutePath() + " - png", model.get(0));
+
+        DatabaseUtility.deleteProject("/missing/second.jpg");
+        model.clear();
+        DatabaseUtility.loadProjectsFromDatabase(model, new JList<>(model));
+        assertEquals(1, model.size());
+
+        ConnectionPool pool = DatabaseUtility.getPool();
+        assertEquals(1, pool.getCreatedCount());
+        assertEquals(1, pool.getIdleCount());
+    }
+
+    /**
+     * Test that the table has its indexes and that adding a project at an existing path updates it.
+     */
+    @Test
+    public void testIndexes() throws SQLException {
+        Set<String> indexes = new HashSet<>();
+        try (Connection connection = DatabaseUtility.getConnection()) {
+            DatabaseUtility.verifyTableExistance(connection);
+            DatabaseMetaData metaData = connection.getMetaData();
+            try (ResultSet resultSet = metaData.getIndexInfo(null, null, "PROJECTS", false, false)) {
+                while (resultSet.next()) {
+                    indexes.add(resultSet.getString("INDEX_NAME").toLowerCase());
+                }
+            }
+        }
+        assertTrue(indexes.contains("projects_path"));
+        assertTrue(indexes.contains("projects_name"));
+
+        Project project = new Project("First", null, "png");
+        project.setPath("/images/first.png");
+        DatabaseUtility.addProject(project);
+        project.setName("Renamed");
+        DatabaseUtility.addProject(project);
+
+        List<String> entries = new ArrayList<>();
+        DatabaseUtility.loadProjectsPage(0, 10, entries);
+        assertEquals(List.of("Renamed - /images/first.png - png"), entries);
+    }
+
+    /**
+     * Test that a table created by an older version, which holds the same path twice,
+     * still gets an index on the path, without the unique constraint.
+     */
+    @Test
+    public void testIndexOverDuplicatePaths() throws SQLException {
+        DatabaseUtility.configure("jdbc:h2:mem:photodite-legacy;MODE=MySQL", "sa", "", 1);
+        try (Connection connection = DatabaseUtility.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE Projects (id INT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(255) NOT NULL, "
+                    + "path VARCHAR(255) NOT NULL, file_type VARCHAR(255) NOT NULL)");
+            statement.executeUpdate("INSERT INTO Projects (name, path, file_type) VALUES ('A', '/same.png', 'png'), ('B', '/same.png', 'png')");
+            DatabaseUtility.verifyTableExistance(connection);
+            Set<String> indexes = new HashSet<>();
+            try (ResultSet resultSet = connection.getMetaData().getIndexInfo(null, null, "PROJECTS", false, false)) {
+                while (resultSet.next()) {
+                    indexes.add(resultSet.getString("INDEX_NAME").toLowerCase());
+                }
+            }
+            assertTrue(indexes.contains("projects_path"));
+            assertTrue(indexes.contains("projects_name"));
+        }
+    }
+
+    /**
+     * Test that pages follow each other without gaps or repeats.
+     */
+    @Test
+    public void testPagination() throws SQLException {
+        for (int i = 0; i < 25; i++) {
+            Project project = new Project("Project " + i, null, "png");
+            project.setPath("/images/" + i + ".png");
+            DatabaseUtility.addProject(project);
+        }
+
+        List<String> entries = new ArrayList<>();
+        long lastId = 0;
+        int pages = 0;
+        int size;
+        do {
+            size = entries.size();
+            lastId = DatabaseUtility.loadProjectsPage(lastId, 10, entries);
+            pages++;
+        } while (entries.size() - size == 10);
+
+        assertEquals(3, pages);
+        assertEquals(25, entries.size());
+        for (int i = 0; i < 25; i++) {
+            assertEquals("Project " + i + " - /images/" + i + ".png - png", entries.get(i));
+        }
+    }
+
+    /**
+     * Test that a closed connection is given back, can't be used anymore,
+     * and that its prepared statements are reused by the next borrower.
+     */
+    @Test
+    public void testReuse() throws SQLException {
+        String query = "SELECT name FROM Projects WHERE path = ?";
+        Connection first = DatabaseUtility.getConnection();
+        PreparedStatement statement = first.prepareStatement(query);
+        PreparedStatement physical = statement.unwrap(PreparedStatement.class);
+        statement.close();
+        first.close();
+        assertTrue(first.isClosed());
+        assertThrows(SQLException.class, () -> first.createStatement());
+
+        try (Connection second = DatabaseUtility.getConnection();
+             PreparedStatement again = second.prepareStatement(query)) {
+            assertSame(physical, again.unwrap(PreparedStatement.class));
+            assertSame(second, again.getConnection());
+        }
+    }
+
+    /**
+     * Test that preparing a query again while its cached statement is still open, as a lookup
+     * nested in a loop over the results of the same query, gives an independent statement,
+     * and that the cached one is reused again once it is closed.
+     */
+    @Test
+    public void testNestedStatements() throws SQLException {
+        for (int i = 0; i < 2; i++) {
+            Project project = new Project("Project " + i, null, "png");
+            project.setPath("/images/" + i + ".png");
+            DatabaseUtility.addProject(project);
+        }
+        String query = "SELECT name FROM Projects WHERE path = ?";
+        try (Connection connection = DatabaseUtility.getConnection()) {
+            PreparedStatement outer = connection.prepareStatement(query);
+            PreparedStatement physical = outer.unwrap(PreparedStatement.class);
+            outer.setString(1, "/images/0.png");
+            try (ResultSet results = outer.executeQuery()) {
+                assertTrue(results.next());
+                try (PreparedStatement nested = connection.prepareStatement(query)) {
+                    assertNotSame(physical, nested.unwrap(PreparedStatement.class));
+                    nested.setString(1, "/images/1.png");
+                    try (ResultSet nestedResults = nested.executeQuery()) {
+                        assertTrue(nestedResults.next());
+                        assertEquals("Project 1", nestedResults.getString("name"));
+                    }
+                }
+                assertEquals("Project 0", results.getString("name"));
+                assertFalse(results.next());
+            }
+            outer.close();
+            try (PreparedStatement again = connection.prepareStatement(query)) {
+                assertSame(physical, again.unwrap(PreparedStatement.class));
+            }
+        }
+    }
+
+    /**
+     * Test that the pool opens more connections only when several are borrowed at the same time,
+     * and that a dead idle connection is replaced.
+     */
+    @Test
+    public void testPoolSize() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(URL, "sa", "", 2, 0);
+        Connection a = pool.getConnection();
+        Connection b = pool.getConnection();
+        assertEquals(2, pool.getCreatedCount());
+        a.unwrap(Connection.class).close();
+        a.close();
+        b.close();
+        assertEquals(1, pool.getIdleCount());
+
+        try (Connection c = pool.getConnection()) {
+            assertFalse(c.isClosed());
+        }
+        assertEquals(2, pool.getCreatedCount());
+        pool.close();
+    }
+}
@@ -0,0 +1,133 @@
+package Tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import Utility.ImageProcessorUtility;
+import Utility.Orientation;
+import project.Adjustment.type;
+import project.EditHistory;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+
+/**
+ * Unit test class for the EditHistory class.
+ * This class contains tests to ensure that undo and redo replay the adjustments correctly.
+ */
+public class EditHistoryTest {
+
+    private BufferedImage testImage;
+
+    /**
+     * Set up the test environment by initializing a sample image with distinct pixels.
+     * This method is executed before each test method.
+     */
+    @BeforeEach
+    public void setUp() {
+        testImage = new BufferedImage(5, 3, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < 5; x++) {
+            for (int y = 0; y < 3; y++) {
+                testImage.setRGB(x, y, new Color(x * 50, y * 100, 0).getRGB());
+            }
+        }
+    }
+
+    /**
+     * Test that rotations are composed into one orientation, that undoing every adjustment
+     * goes back to the original and that redo replays the rotations.
+     */
+    @Test
+    public void testUndoRedoRotations() {
+        EditHistory history = new EditHistory(testImage);
+        for (int i = 0; i < 20; i++) {
+            history.push(type.ROTATE, 1);
+        }
+
+        assertEquals(Orientation.NORMAL, history.getOrientation());
+        assertSame(testImage, history.getOriginal());
+
+        history.undo();
+        assertEquals(Orientation.ROTATE_LEFT, history.getOrientation());
+        assertEquals(testImage.getHeight(), oriented(history).getWidth());
+        assertEquals(testImage.getRGB(0, 0), oriented(history).getRGB(0, testImage.getWidth() - 1));
+
+        while (history.canUndo()) {
+            history.undo();
+        }
+        assertSame(testImage, history.getOriginal());
+        assertEquals(Orientation.NORMAL, history.getOrientation());
+
+        for (int i = 0; i < 17; i++) {
+            history.redo();
+        }
+        assertEquals(testImage.getRGB(0, 0), oriented(history).getRGB(testImage.getHeight() - 1, 0));
+        assertSameImage(ImageProcessorUtility.rotateImageRight(testImage), oriented(history));
+    }
+
+    /**
+     * Test that brightness and contrast are restored by undo and that a new adjustment
+     * discards the ones that could be redone.
+     */
+    @Test
+    public void testPointAdjustments() {
+        EditHistory history = new EditHistory(testImage);
+        history.push(type.BRIGHTNESS, 10);
+        history.push(type.CONTRAST, 30);
+        history.push(type.BRIGHTNESS, -5);
+
+        assertEquals(-5, history.getBrightness());
+        assertEquals(30, history.getContrast());
+        assertSame(testImage, history.getOriginal());
+        assertEquals(Orientation.NORMAL, history.getOrientation());
+
+        history.undo();
+        assertEquals(10, history.getBrightness());
+        assertTrue(history.canRedo());
+
+        history.push(type.FLIP, 0);
+        assertFalse(history.canRedo());
+        assertEquals(testImage.getRGB(0, 0), oriented(history).getRGB(4, 0));
+
+        history.rebase();
+        assertFalse(history.canUndo());
+        assertEquals(Orientation.FLIP_HORIZONTAL, history.getOrientation());
+        assertEquals(10, history.getBrightness());
+        assertEquals(30, history.getContrast());
+    }
+
+    /**
+     * Test that the version changes with every push, undo and redo, but not with a rebase,
+     * so a save can tell whether the history was edited while it was written.
+     */
+    @Test
+    public void testVersion() {
+        EditHistory history = new EditHistory(testImage);
+        int start = history.getVersion();
+        history.push(type.BRIGHTNESS, 10);
+        int pushed = history.getVersion();
+        assertNotEquals(start, pushed);
+
+        history.undo();
+        assertNotEquals(pushed, history.getVersion());
+        history.redo();
+        int redone = history.getVersion();
+        history.rebase();
+        assertEquals(redone, history.getVersion());
+    }
+
+    private static BufferedImage oriented(EditHistory history) {
+        return ImageProcessorUtility.orient(history.getOriginal(), history.getOrientation());
+    }
+
+    private void assertSameImage(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        for (int x = 0; x < expected.getWidth(); x++) {
+            for (int y = 0; y < expected.getHeight(); y++) {
+                assertEquals(expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package Tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import Utility.FileProjectRepository;
+import project.Project;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit test class for the FileProjectRepository class.
+ * This class contains tests to ensure the catalog survives a restart and is paged like the database.
+ */
+public class FileProjectRepositoryTest {
+
+    private File file;
+    private FileProjectRepository repository;
+
+    /**
+     * Set up the test environment with a repository over a new temporary file.
+     * This method is executed before each test method.
+     */
+    @BeforeEach
+    public void setUp() throws IOException {
+        file = File.createTempFile("photodite", ".log");
+        file.delete();
+        repository = new FileProjectRepository(file);
+        repository.initialize();
+    }
+
+    /**
+     * Close and delete the catalog after each test method.
+     */
+    @AfterEach
+    public void tearDown() throws IOException {
+        repository.close();
+        file.delete();
+    }
+
+    /**
+     * Test that adding, updating and deleting projects is replayed the same way after a restart.
+     */
+    @Test
+    public void testReplay() throws IOException {
+        repository.addProject(project("First", "/images/first.png", "png"));
+        repository.addProject(project("Tab\tand \\ slash", "/images/second.jpg", "jpg"));
+        repository.addProject(project("Third", "/images/third.png", "png"));
+        repository.addProject(project("Renamed", "/images/first.png", "png"));
+        repository.deleteProject("/images/third.png");
+        repository.close();
+
+        FileProjectRepository reopened = new FileProjectRepository(file);
+        List<String> entries = new ArrayList<>();
+        reopened.loadProjectsPage(0, 10, entries);
+        assertEquals(List.of("Renamed - /images/first.png - png", "Tab\tand \\ slash - /images/second.jpg - jpg"), entries);
+
+        reopened.addProject(project("Fourth", "/images/fourth.png", "png"));
+        entries.clear();
+        long lastId = reopened.loadProjectsPage(2, 10, entries);
+        assertEquals(List.of("Fourth - /images/fourth.png - png"), entries);
+        assertEquals(4, lastId);
+        reopened.close();
+    }
+
+    /**
+     * Test that pages follow each other and that a line cut short by a crash is skipped,
+     * even when it has all its fields.
+     */
+    @Test
+    public void testPaginationAndTornLine() throws IOException {
+        for (int i = 0; i < 25; i++) {
+            repository.addProject(project("Project " + i, "/images/" + i + ".png", "png"));
+        }
+        repository.close();
+        Files.write(file.toPath(), "+\t26\tBro".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        FileProjectRepository reopened = new FileProjectRepository(file);
+        List<String> entries = new ArrayList<>();
+        long lastId = reopened.loadProjectsPage(0, 10, entries);
+        lastId = reopened.loadProjectsPage(lastId, 10, entries);
+        lastId = reopened.loadProjectsPage(lastId, 10, entries);
+        assertEquals(25, entries.size());
+        assertEquals(25, lastId);
+        assertEquals("Project 24 - /images/24.png - png", entries.get(24));
+
+        reopened.addProject(project("After", "/images/after.png", "png"));
+        reopened.close();
+        assertEquals(26, sizeAfterReplay());
+
+        Files.write(file.toPath(), "+\t27\tTorn\t/images/torn.png\tjp".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        assertEquals(26, sizeAfterReplay());
+        assertEquals(26, sizeAfterReplay());
+    }
+
+    private int sizeAfterReplay() throws IOException {
+        FileProjectRepository replayed = new FileProjectRepository(file);
+        replayed.initialize();
+        int size = replayed.size();
+        replayed.close();
+        return size;
+    }
+
+    private static Project project(String name, String path, String type) {
+        Project project = new Project(name, null, type);
+        project.setPath(path);
+        return project;
+    }
+}
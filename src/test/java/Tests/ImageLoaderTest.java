@@ -0,0 +1,126 @@
+package Tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import Utility.ImageLoaderUtility;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Unit test class for the ImageLoaderUtility class.
+ * This class contains tests to ensure sizes, subsampled previews and embedded thumbnails are read correctly.
+ */
+public class ImageLoaderTest {
+
+    private File testFile;
+    private BufferedImage testImage;
+
+    /**
+     * Set up the test environment by writing an image to a temporary PNG file.
+     * This method is executed before each test method.
+     */
+    @BeforeEach
+    public void setUp() throws IOException {
+        testImage = new BufferedImage(300, 200, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < 300; x++) {
+            for (int y = 0; y < 200; y++) {
+                testImage.setRGB(x, y, new Color(x % 256, y, 50).getRGB());
+            }
+        }
+        testFile = File.createTempFile("photodite", ".png");
+        ImageIO.write(testImage, "png", testFile);
+    }
+
+    /**
+     * Delete the temporary file after each test method.
+     */
+    @AfterEach
+    public void tearDown() {
+        testFile.delete();
+    }
+
+    /**
+     * Test that the size is read from the header and that the subsampling factor fits the image.
+     */
+    @Test
+    public void testReadSize() throws IOException {
+        Dimension size = ImageLoaderUtility.readSize(testFile);
+        assertEquals(new Dimension(300, 200), size);
+        assertEquals(1, ImageLoaderUtility.subsamplingFor(size, 300));
+        assertEquals(3, ImageLoaderUtility.subsamplingFor(size, 100));
+        assertEquals(4, ImageLoaderUtility.subsamplingFor(size, 99));
+    }
+
+    /**
+     * Test that a subsampled image keeps every n-th pixel of every n-th row.
+     */
+    @Test
+    public void testReadSubsampled() throws IOException {
+        BufferedImage preview = ImageLoaderUtility.readSubsampled(testFile, 3);
+        assertEquals(100, preview.getWidth());
+        assertEquals(67, preview.getHeight());
+        assertEquals(testImage.getRGB(30, 60), preview.getRGB(10, 20));
+        assertEquals(testImage.getRGB(297, 198), preview.getRGB(99, 66));
+    }
+
+    /**
+     * Test that the thumbnail of an EXIF segment is read from a JPEG file,
+     * and that files without one have no thumbnail.
+     */
+    @Test
+    public void testReadThumbnail() throws IOException {
+        assertNull(ImageLoaderUtility.readThumbnail(testFile));
+
+        ByteArrayOutputStream thumbnail = new ByteArrayOutputStream();
+        ImageIO.write(ImageLoaderUtility.readSubsampled(testFile, 10), "jpg", thumbnail);
+        ByteArrayOutputStream full = new ByteArrayOutputStream();
+        ImageIO.write(testImage, "jpg", full);
+        byte[] jpeg = full.toByteArray();
+
+        File jpegFile = File.createTempFile("photodite", ".jpg");
+        try {
+            Files.write(jpegFile.toPath(), jpeg);
+            assertNull(ImageLoaderUtility.readThumbnail(jpegFile));
+
+            // TIFF header, an empty IFD0 and an IFD1 pointing to the thumbnail right after it
+            ByteBuffer tiff = ByteBuffer.allocate(44 + thumbnail.size()).order(ByteOrder.LITTLE_ENDIAN);
+            tiff.put((byte) 'I').put((byte) 'I').putShort((short) 42).putInt(8);
+            tiff.putShort((short) 0).putInt(14);
+            tiff.putShort((short) 2);
+            tiff.putShort((short) 0x0201).putShort((short) 4).putInt(1).putInt(44);
+            tiff.putShort((short) 0x0202).putShort((short) 4).putInt(1).putInt(thumbnail.size());
+            tiff.putInt(0);
+            tiff.put(thumbnail.toByteArray());
+
+            ByteArrayOutputStream exif = new ByteArrayOutputStream();
+            exif.write(jpeg, 0, 2);
+            int length = 2 + 6 + tiff.capacity();
+            exif.write(new byte[] { (byte) 0xFF, (byte) 0xE1, (byte) (length >> 8), (byte) length });
+            exif.write(new byte[] { 'E', 'x', 'i', 'f', 0, 0 });
+            exif.write(tiff.array());
+            exif.write(jpeg, 2, jpeg.length - 2);
+            Files.write(jpegFile.toPath(), exif.toByteArray());
+
+            BufferedImage read = ImageLoaderUtility.readThumbnail(jpegFile);
+            assertNotNull(read);
+            assertEquals(30, read.getWidth());
+            assertEquals(20, read.getHeight());
+            assertEquals(new Dimension(300, 200), ImageLoaderUtility.readSize(jpegFile));
+        } finally {
+            jpegFile.delete();
+        }
+    }
+}
@@ -5,6 +5,10 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import Utility.ImageProcessorUtility;
+import Utility.Orientation;
+import Utility.ParallelProcessingUtility;
+import Utility.PointOperationPipeline;
+import Utility.PointOperationPipeline.Filter;
 
 import java.awt.Color;
 import java.awt.image.BufferedImage;
@@ -195,4 +199,173 @@ public class ImageProcessorTest {
         assertEquals(originalImage.getRGB(2, 0), flippedImage.getRGB(0, 0)); 
     }
     
+    /**
+     * Test that the toGrayscale method keeps the alpha channel of a transparent image.
+     */
+    @Test
+    public void testToGrayscaleKeepsAlpha() {
+        BufferedImage transparentImage = new BufferedImage(4, 4, BufferedImage.TYPE_INT_ARGB);
+        for (int x = 0; x < 4; x++) {
+            for (int y = 0; y < 4; y++) {
+                transparentImage.setRGB(x, y, 0x80FF0000);
+            }
+        }
+
+        BufferedImage grayscaleImage = ImageProcessorUtility.toGrayscale(transparentImage);
+
+        for (int x = 0; x < 4; x++) {
+            for (int y = 0; y < 4; y++) {
+                assertEquals(0x80, grayscaleImage.getRGB(x, y) >>> 24);
+            }
+        }
+    }
+
+    /**
+     * Test that the filters give the same result on byte backed images as on int backed images.
+     */
+    @Test
+    public void testFiltersOnByteImage() {
+        BufferedImage byteImage = new BufferedImage(7, 5, BufferedImage.TYPE_3BYTE_BGR);
+        BufferedImage intImage = new BufferedImage(7, 5, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < 7; x++) {
+            for (int y = 0; y < 5; y++) {
+                int rgb = new Color(x * 36, y * 60, (x + y) * 20).getRGB();
+                byteImage.setRGB(x, y, rgb);
+                intImage.setRGB(x, y, rgb);
+            }
+        }
+
+        BufferedImage byteSepia = ImageProcessorUtility.toSepia(byteImage);
+        BufferedImage intSepia = ImageProcessorUtility.toSepia(intImage);
+        BufferedImage byteNegative = ImageProcessorUtility.toNegative(byteImage);
+        BufferedImage intNegative = ImageProcessorUtility.toNegative(intImage);
+
+        for (int x = 0; x < 7; x++) {
+            for (int y = 0; y < 5; y++) {
+                assertEquals(intSepia.getRGB(x, y), byteSepia.getRGB(x, y));
+                assertEquals(intNegative.getRGB(x, y), byteNegative.getRGB(x, y));
+            }
+        }
+    }
+    
+    /**
+     * Test that splitting the work into parallel bands gives the same images as the sequential path.
+     */
+    @Test
+    public void testParallelMatchesSequential() {
+        BufferedImage image = new BufferedImage(61, 47, BufferedImage.TYPE_4BYTE_ABGR);
+        for (int x = 0; x < 61; x++) {
+            for (int y = 0; y < 47; y++) {
+                image.setRGB(x, y, new Color(x * 4, y * 5, (x * y) % 256, 128 + y).getRGB());
+            }
+        }
+
+        int parallelism = ParallelProcessingUtility.getParallelism();
+        int threshold = ParallelProcessingUtility.getSequentialThreshold();
+        try {
+            ParallelProcessingUtility.setParallelism(1);
+            BufferedImage[] sequential = applyAll(image);
+            ParallelProcessingUtility.setParallelism(4);
+            ParallelProcessingUtility.setSequentialThreshold(0);
+            BufferedImage[] parallel = applyAll(image);
+
+            for (int i = 0; i < sequential.length; i++) {
+                assertEquals(sequential[i].getWidth(), parallel[i].getWidth());
+                for (int x = 0; x < sequential[i].getWidth(); x++) {
+                    for (int y = 0; y < sequential[i].getHeight(); y++) {
+                        assertEquals(sequential[i].getRGB(x, y), parallel[i].getRGB(x, y));
+                    }
+                }
+            }
+        } finally {
+            ParallelProcessingUtility.setParallelism(parallelism);
+            ParallelProcessingUtility.setSequentialThreshold(threshold);
+        }
+    }
+
+    private BufferedImage[] applyAll(BufferedImage image) {
+        return new BufferedImage[] {
+            ImageProcessorUtility.toGrayscale(image),
+            ImageProcessorUtility.toSepia(image),
+            ImageProcessorUtility.toNegative(image),
+            ImageProcessorUtility.adjustBrightness(image, 15),
+            ImageProcessorUtility.adjustContrast(image, -30),
+            ImageProcessorUtility.rotateImageLeft(image),
+            ImageProcessorUtility.rotateImageRight(image),
+            ImageProcessorUtility.flipImage(image)
+        };
+    }
+    
+    /**
+     * Test that the fused PointOperationPipeline gives the same pixels as running
+     * adjustBrightness, adjustContrast and the filter one after the other.
+     */
+    @Test
+    public void testPipelineMatchesSeparatePasses() {
+        BufferedImage image = new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < 16; x++) {
+            for (int y = 0; y < 16; y++) {
+                image.setRGB(x, y, new Color(x * 16, y * 16, 255 - x * 8).getRGB());
+            }
+        }
+
+        BufferedImage adjusted = ImageProcessorUtility.adjustContrast(ImageProcessorUtility.adjustBrightness(image, 12), -40);
+        BufferedImage[] expected = {
+            adjusted,
+            ImageProcessorUtility.toGrayscale(adjusted),
+            ImageProcessorUtility.toSepia(adjusted),
+            ImageProcessorUtility.toNegative(adjusted)
+        };
+
+        Filter[] filters = { Filter.NONE, Filter.GRAYSCALE, Filter.SEPIA, Filter.NEGATIVE };
+        for (int i = 0; i < filters.length; i++) {
+            BufferedImage fused = new PointOperationPipeline(12, -40, filters[i]).apply(image);
+            for (int x = 0; x < 16; x++) {
+                for (int y = 0; y < 16; y++) {
+                    assertEquals(expected[i].getRGB(x, y), fused.getRGB(x, y));
+                }
+            }
+        }
+    }
+    
+    /**
+     * Test that orienting an image in one pass gives the same result as the sequence of
+     * rotations and flips the orientation was composed from.
+     */
+    @Test
+    public void testOrientMatchesComposedOperations() {
+        BufferedImage image = new BufferedImage(7, 4, BufferedImage.TYPE_3BYTE_BGR);
+        for (int x = 0; x < 7; x++) {
+            for (int y = 0; y < 4; y++) {
+                image.setRGB(x, y, new Color(x * 30, y * 60, x * y).getRGB());
+            }
+        }
+
+        Orientation orientation = Orientation.NORMAL;
+        BufferedImage stepByStep = image;
+        int[] steps = { 1, 0, 1, 1, -1, 0, 1, -1, -1, 0 };
+        for (int step : steps) {
+            if (step == 0) {
+                orientation = orientation.flip();
+                stepByStep = ImageProcessorUtility.flipImage(stepByStep);
+            } else if (step > 0) {
+                orientation = orientation.rotateRight();
+                stepByStep = ImageProcessorUtility.rotateImageRight(stepByStep);
+            } else {
+                orientation = orientation.rotateLeft();
+                stepByStep = ImageProcessorUtility.rotateImageLeft(stepByStep);
+            }
+            BufferedImage oriented = ImageProcessorUtility.orient(image, orientation);
+            assertEquals(stepByStep.getWidth(), oriented.getWidth());
+            for (int x = 0; x < oriented.getWidth(); x++) {
+                for (int y = 0; y < oriented.getHeight(); y++) {
+                    assertEquals(stepByStep.getRGB(x, y), oriented.getRGB(x, y));
+                }
+            }
+            BufferedImage restored = ImageProcessorUtility.orient(oriented, orientation.inverse());
+            assertEquals(image.getRGB(6, 3), restored.getRGB(6, 3));
+            assertEquals(image.getRGB(5, 1), restored.getRGB(5, 1));
+        }
+    }
+    
 }
@@ -0,0 +1,81 @@
+package Tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import Utility.ImagePyramid;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+
+/**
+ * Unit test class for the ImagePyramid class.
+ * This class contains tests to ensure the levels are generated and chosen for the right scales.
+ */
+public class ImagePyramidTest {
+
+    private BufferedImage testImage;
+
+    /**
+     * Set up the test environment by initializing an image large enough for several levels.
+     * This method is executed before each test method.
+     */
+    @BeforeEach
+    public void setUp() {
+        testImage = new BufferedImage(512, 256, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < 512; x++) {
+            for (int y = 0; y < 256; y++) {
+                testImage.setRGB(x, y, new Color(x / 2, y, 100).getRGB());
+            }
+        }
+    }
+
+    /**
+     * Test that every level is half the size of the one before it and that
+     * the level chosen for a scale is never smaller than needed.
+     */
+    @Test
+    public void testLevels() throws InterruptedException {
+        ImagePyramid pyramid = new ImagePyramid(testImage);
+        waitForLevels(pyramid);
+
+        assertEquals(4, pyramid.getLevelCount());
+        assertSame(testImage, pyramid.getLevel(0));
+        for (int level = 1; level < pyramid.getLevelCount(); level++) {
+            assertEquals(pyramid.getLevel(level - 1).getWidth() / 2, pyramid.getLevel(level).getWidth());
+            assertEquals(pyramid.getLevel(level - 1).getHeight() / 2, pyramid.getLevel(level).getHeight());
+        }
+
+        assertSame(testImage, pyramid.levelFor(1.0));
+        assertSame(testImage, pyramid.levelFor(0.6));
+        assertSame(pyramid.getLevel(1), pyramid.levelFor(0.5));
+        assertSame(pyramid.getLevel(2), pyramid.levelFor(0.2));
+        assertSame(pyramid.getLevel(3), pyramid.levelFor(0.01));
+    }
+
+    /**
+     * Test that a level averages the pixels of the level above it and that
+     * a thumbnail fits in the requested size.
+     */
+    @Test
+    public void testDownsampling() throws InterruptedException {
+        ImagePyramid pyramid = new ImagePyramid(testImage);
+        waitForLevels(pyramid);
+
+        Color color = new Color(pyramid.getLevel(1).getRGB(10, 20));
+        assertEquals(new Color(testImage.getRGB(21, 41)).getRed(), color.getRed(), 1);
+        assertEquals(new Color(testImage.getRGB(21, 41)).getGreen(), color.getGreen(), 1);
+
+        BufferedImage thumbnail = pyramid.getThumbnail(100);
+        assertEquals(100, thumbnail.getWidth());
+        assertEquals(50, thumbnail.getHeight());
+    }
+
+    private static void waitForLevels(ImagePyramid pyramid) throws InterruptedException {
+        for (int i = 0; i < 500 && !pyramid.isComplete(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(pyramid.isComplete());
+    }
+}
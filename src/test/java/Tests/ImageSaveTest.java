@@ -0,0 +1,136 @@
+package Tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import Utility.ImageSaveUtility;
+import Utility.SaveOptions;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Unit test class for the saving methods of ImageSaveUtility.
+ * This class contains tests to ensure images are written atomically, repeated saves end with the latest image
+ * and the encoder settings change the output.
+ */
+public class ImageSaveTest {
+
+    private File directory;
+
+    /**
+     * Set up the test environment with an empty temporary directory.
+     * This method is executed before each test method.
+     */
+    @BeforeEach
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("photodite-save").toFile();
+    }
+
+    /**
+     * Delete the temporary directory after each test method.
+     */
+    @AfterEach
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    /**
+     * Test that a PNG is written losslessly, that a transparent image can be saved as a JPEG,
+     * and that no temporary file is left behind.
+     */
+    @Test
+    public void testWriteAtomically() throws IOException {
+        BufferedImage image = createImage(64, 32, Color.ORANGE);
+        File png = new File(directory, "image.png");
+        ImageSaveUtility.writeAtomically(image, "png", png, null);
+        BufferedImage read = ImageIO.read(png);
+        assertEquals(image.getRGB(10, 10), read.getRGB(10, 10));
+
+        BufferedImage transparent = new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB);
+        File jpg = new File(directory, "image.jpg");
+        ImageSaveUtility.writeAtomically(transparent, "jpg", jpg, null);
+        assertEquals(16, ImageIO.read(jpg).getWidth());
+
+        assertEquals(2, directory.list().length);
+    }
+
+    /**
+     * Test that several saves to the same file all complete and leave the latest image in it.
+     */
+    @Test
+    public void testSaveAsyncKeepsLatest() throws Exception {
+        File other = new File(directory, "other.png");
+        File target = new File(directory, "target.png");
+        CountDownLatch saved = new CountDownLatch(4);
+        AtomicInteger failures = new AtomicInteger();
+        ImageSaveUtility.SaveListener listener = new ImageSaveUtility.SaveListener() {
+            @Override
+            public void progress(int percent) {
+                assertTrue(percent >= 0 && percent <= 100);
+            }
+
+            @Override
+            public void saved(File file, IOException error) {
+                if (error != null) {
+                    failures.incrementAndGet();
+                }
+                saved.countDown();
+            }
+        };
+
+        ImageSaveUtility.saveAsync(createImage(1500, 1500, Color.GRAY), "png", other, listener);
+        ImageSaveUtility.saveAsync(createImage(40, 40, Color.RED), "png", target, listener);
+        ImageSaveUtility.saveAsync(createImage(40, 40, Color.GREEN), "png", target, listener);
+        ImageSaveUtility.saveAsync(createImage(40, 40, Color.BLUE), "png", target, listener);
+
+        assertTrue(saved.await(30, TimeUnit.SECONDS));
+        assertEquals(0, failures.get());
+        assertEquals(Color.BLUE.getRGB() ^ 10, ImageIO.read(target).getRGB(5, 5));
+        assertEquals(2, directory.list().length);
+    }
+
+    /**
+     * Test that the deflate level and the JPEG quality change the size of the file, that a progressive
+     * JPEG can be read back, and that measureEncoding reports the size of the written file.
+     */
+    @Test
+    public void testSaveOptions() throws IOException {
+        BufferedImage image = createImage(300, 200, Color.CYAN);
+        long stored = ImageSaveUtility.measureEncoding(image, "png", SaveOptions.png(0)).getBytes();
+        long deflated = ImageSaveUtility.measureEncoding(image, "png", SaveOptions.png(9)).getBytes();
+        assertTrue(stored > 2 * deflated, stored + " <= 2 * " + deflated);
+
+        long low = ImageSaveUtility.measureEncoding(image, "jpg", SaveOptions.jpeg(0.3f)).getBytes();
+        long high = ImageSaveUtility.measureEncoding(image, "jpg", SaveOptions.jpeg(0.95f)).getBytes();
+        assertTrue(low < high, low + " >= " + high);
+
+        SaveOptions progressive = SaveOptions.jpeg(0.8f).withProgressive(true);
+        File jpg = new File(directory, "progressive.jpg");
+        ImageSaveUtility.writeAtomically(image, "jpg", jpg, progressive, null);
+        assertEquals(300, ImageIO.read(jpg).getWidth());
+        assertEquals(jpg.length(), ImageSaveUtility.measureEncoding(image, "jpg", progressive).getBytes());
+    }
+
+    private static BufferedImage createImage(int width, int height, Color color) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                image.setRGB(x, y, color.getRGB() ^ ((x + y) & 0x0F));
+            }
+        }
+        return image;
+    }
+}
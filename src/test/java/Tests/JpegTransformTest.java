@@ -0,0 +1,152 @@
+package Tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import Utility.ImageSaveUtility;
+import Utility.JpegTransformUtility;
+import Utility.Orientation;
+import Utility.SaveOptions;
+import project.Project;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import javax.imageio.plugins.jpeg.JPEGImageWriteParam;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+/**
+ * Unit test class for the JpegTransformUtility class.
+ * This class contains tests to ensure JPEG files are rotated and flipped without losing quality.
+ */
+public class JpegTransformTest {
+
+    /**
+     * Test that every orientation moves the pixels where they belong and that undoing it
+     * gives back the very same file.
+     */
+    @Test
+    public void testLosslessRoundTrip() throws IOException {
+        byte[] jpeg = encode(createImage(64, 48), false);
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(jpeg));
+        for (Orientation orientation : Orientation.values()) {
+            byte[] transformed = JpegTransformUtility.transform(jpeg, orientation);
+            assertNotNull(transformed, orientation.name());
+            assertOriented(decoded, ImageIO.read(new ByteArrayInputStream(transformed)), orientation);
+            assertArrayEquals(jpeg, JpegTransformUtility.transform(transformed, orientation.inverse()), orientation.name());
+        }
+    }
+
+    /**
+     * Test that files with optimized Huffman tables are coded with new tables, that partial MCUs
+     * on a mirrored edge and progressive files are refused, and that a transposition needs no whole MCUs.
+     */
+    @Test
+    public void testUnsupportedAndOptimizedFiles() throws IOException {
+        byte[] optimized = encode(createImage(96, 64), true);
+        byte[] rotated = JpegTransformUtility.transform(optimized, Orientation.ROTATE_RIGHT);
+        assertOriented(ImageIO.read(new ByteArrayInputStream(optimized)), ImageIO.read(new ByteArrayInputStream(rotated)), Orientation.ROTATE_RIGHT);
+
+        byte[] partial = encode(createImage(70, 50), false);
+        assertNull(JpegTransformUtility.transform(partial, Orientation.ROTATE_RIGHT));
+        assertNull(JpegTransformUtility.transform(partial, Orientation.FLIP_HORIZONTAL));
+        assertNotNull(JpegTransformUtility.transform(partial, Orientation.TRANSPOSE));
+
+        ByteArrayOutputStream progressive = new ByteArrayOutputStream();
+        try (MemoryCacheImageOutputStream output = new MemoryCacheImageOutputStream(progressive)) {
+            ImageSaveUtility.encode(createImage(64, 48), "jpg", SaveOptions.jpeg(0.8f).withProgressive(true), output, null);
+        }
+        assertNull(JpegTransformUtility.transform(progressive.toByteArray(), Orientation.FLIP_VERTICAL));
+    }
+
+    /**
+     * Test that saving a rotated JPEG project transforms the file instead of encoding the image,
+     * and that two queued saves are composed.
+     */
+    @Test
+    public void testSaveTransformsFile() throws Exception {
+        File file = File.createTempFile("photodite", ".jpg");
+        try {
+            byte[] jpeg = encode(createImage(64, 48), false);
+            Files.write(file.toPath(), jpeg);
+            Project project = new Project("Rotated", null, "jpg");
+            project.setPath(file.getPath());
+
+            // the images are only used if the file can't be transformed
+            BufferedImage unused = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+            CountDownLatch saved = new CountDownLatch(2);
+            ImageSaveUtility.SaveListener listener = new ImageSaveUtility.SaveListener() {
+                @Override
+                public void progress(int percent) {
+                }
+
+                @Override
+                public void saved(File target, IOException error) {
+                    saved.countDown();
+                }
+            };
+            ImageSaveUtility.saveImageAsync(project, unused, Orientation.ROTATE_RIGHT, listener);
+            ImageSaveUtility.saveImageAsync(project, unused, Orientation.FLIP_HORIZONTAL, listener);
+            assertTrue(saved.await(30, TimeUnit.SECONDS));
+
+            byte[] expected = JpegTransformUtility.transform(jpeg, Orientation.ROTATE_RIGHT.flip());
+            assertTrue(Arrays.equals(expected, Files.readAllBytes(file.toPath())));
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static void assertOriented(BufferedImage source, BufferedImage transformed, Orientation orientation) {
+        int width = transformed.getWidth();
+        int height = transformed.getHeight();
+        assertEquals(orientation.transposes() ? source.getHeight() : source.getWidth(), width);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int mirroredX = orientation.mirrorsX() ? width - 1 - x : x;
+                int mirroredY = orientation.mirrorsY() ? height - 1 - y : y;
+                int expected = orientation.transposes() ? source.getRGB(mirroredY, mirroredX) : source.getRGB(mirroredX, mirroredY);
+                int actual = transformed.getRGB(x, y);
+                // the decoder rounds and upsamples the chroma a little differently in each direction
+                for (int shift = 0; shift < 24; shift += 8) {
+                    assertTrue(Math.abs(((expected >> shift) & 0xFF) - ((actual >> shift) & 0xFF)) <= 4,
+                            orientation + " at " + x + ", " + y);
+                }
+            }
+        }
+    }
+
+    private static byte[] encode(BufferedImage image, boolean optimizeTables) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpg").next();
+        JPEGImageWriteParam param = (JPEGImageWriteParam) writer.getDefaultWriteParam();
+        param.setOptimizeHuffmanTables(optimizeTables);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (MemoryCacheImageOutputStream output = new MemoryCacheImageOutputStream(bytes)) {
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static BufferedImage createImage(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int noise = x < width / 2 ? (x * 31 + y * 17) % 64 : 0;
+                image.setRGB(x, y, ((x * 3 + noise) << 16) | ((y * 4) << 8) | ((x * y) & 0xFF));
+            }
+        }
+        return image;
+    }
+}
@@ -0,0 +1,139 @@
+package Tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import Utility.ImageProcessorUtility;
+import Utility.MappedTileStore;
+import Utility.Orientation;
+import Utility.ParallelProcessingUtility;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+/**
+ * Unit test class for the MappedTileStore class.
+ * This class contains tests to ensure the tiles stay within their budget and the operations run tile by tile
+ * give the same pixels as on the whole image.
+ */
+public class MappedTileStoreTest {
+
+    private BufferedImage testImage;
+
+    /**
+     * Set up the test environment by initializing an image whose size isn't a multiple of the tile size.
+     * This method is executed before each test method.
+     */
+    @BeforeEach
+    public void setUp() {
+        testImage = new BufferedImage(600, 333, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < 600; x++) {
+            for (int y = 0; y < 333; y++) {
+                testImage.setRGB(x, y, new Color(x % 256, y % 256, (x * y) % 256).getRGB());
+            }
+        }
+    }
+
+    /**
+     * Test that the pixels survive tiles being written back and read again when the budget is exceeded,
+     * that they are in the file once the store is closed, and that the file of a temporary store is deleted
+     * when it is closed.
+     */
+    @Test
+    public void testBudgetAndRoundTrip() throws Exception {
+        File file = File.createTempFile("photodite-tiles", ".bin");
+        try (MappedTileStore store = MappedTileStore.open(file, 600, 333, false, 2L * MappedTileStore.TILE_SIZE * MappedTileStore.TILE_SIZE * 4)) {
+            store.setRegion(0, 0, testImage);
+            assertEquals(6, store.getTilesX() * store.getTilesY());
+            assertEquals(2, store.getResidentTiles());
+
+            assertImageEquals(testImage, store.toBufferedImage());
+            assertTrue(store.getResidentTiles() <= 2);
+
+            BufferedImage region = store.getRegion(new Rectangle(250, 250, 20, 20));
+            assertEquals(testImage.getRGB(255, 256), region.getRGB(5, 6));
+            store.setRGB(599, 332, 1, 1, new int[] { 0x123456 });
+            store.flush();
+        }
+        try (MappedTileStore reopened = MappedTileStore.open(file, 600, 333, false, MappedTileStore.getDefaultBudget())) {
+            testImage.setRGB(599, 332, 0x123456);
+            assertImageEquals(testImage, reopened.toBufferedImage());
+        } finally {
+            assertTrue(file.delete());
+        }
+
+        MappedTileStore temporary = MappedTileStore.create(10, 10, true);
+        File[] before = new File(System.getProperty("java.io.tmpdir")).listFiles((dir, name) -> name.startsWith("photodite-tiles"));
+        temporary.close();
+        File[] after = new File(System.getProperty("java.io.tmpdir")).listFiles((dir, name) -> name.startsWith("photodite-tiles"));
+        assertEquals(before.length - 1, after.length);
+    }
+
+    /**
+     * Test that the stores together keep their tiles within the default budget, each one going over it
+     * by at most a tile per thread, and that their pixels are still right.
+     */
+    @Test
+    public void testSharedBudget() throws Exception {
+        long budget = MappedTileStore.getDefaultBudget();
+        long tileBytes = 4L * MappedTileStore.TILE_SIZE * MappedTileStore.TILE_SIZE;
+        MappedTileStore.setDefaultBudget(3 * tileBytes);
+        try (MappedTileStore store = MappedTileStore.fromImage(testImage);
+                MappedTileStore sepia = store.map(ImageProcessorUtility::toSepia)) {
+            assertImageEquals(ImageProcessorUtility.toSepia(testImage), sepia.toBufferedImage());
+            assertImageEquals(testImage, store.toBufferedImage());
+            int threads = ParallelProcessingUtility.getParallelism();
+            assertTrue(store.getResidentTiles() + sepia.getResidentTiles() <= 3 + 2 * threads);
+            assertTrue(MappedTileStore.getAllocatedBytes() <= (3 + 2 * threads) * tileBytes, MappedTileStore.getAllocatedBytes() + " bytes");
+        } finally {
+            MappedTileStore.setDefaultBudget(budget);
+        }
+    }
+
+    /**
+     * Test that point operations, rotations, flips and zooming run tile by tile match the same operations on the whole image.
+     */
+    @Test
+    public void testOperationsMatchWholeImage() throws Exception {
+        try (MappedTileStore store = MappedTileStore.fromImage(testImage)) {
+            try (MappedTileStore sepia = store.map(ImageProcessorUtility::toSepia)) {
+                assertImageEquals(ImageProcessorUtility.toSepia(testImage), sepia.toBufferedImage());
+            }
+            try (MappedTileStore brighter = store.map(tile -> ImageProcessorUtility.adjustBrightness(tile, 30))) {
+                assertImageEquals(ImageProcessorUtility.adjustBrightness(testImage, 30), brighter.toBufferedImage());
+            }
+            for (Orientation orientation : Orientation.values()) {
+                try (MappedTileStore oriented = store.orient(orientation)) {
+                    assertImageEquals(ImageProcessorUtility.orient(testImage, orientation), oriented.toBufferedImage());
+                }
+            }
+            try (MappedTileStore zoomed = store.zoom(1.5)) {
+                BufferedImage expected = ImageProcessorUtility.zoomImage(testImage, 1.5);
+                BufferedImage actual = zoomed.toBufferedImage();
+                assertEquals(expected.getWidth(), actual.getWidth());
+                assertEquals(expected.getHeight(), actual.getHeight());
+                for (int y = 0; y < expected.getHeight(); y++) {
+                    for (int x = 0; x < expected.getWidth(); x++) {
+                        for (int shift = 0; shift < 24; shift += 8) {
+                            int difference = ((expected.getRGB(x, y) >> shift) & 0xFF) - ((actual.getRGB(x, y) >> shift) & 0xFF);
+                            assertTrue(Math.abs(difference) <= 2, "pixel " + x + ", " + y);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static void assertImageEquals(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals(expected.getRGB(x, y), actual.getRGB(x, y), "pixel " + x + ", " + y);
+            }
+        }
+    }
+}
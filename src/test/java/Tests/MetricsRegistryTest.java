@@ -0,0 +1,110 @@
+package Tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import Utility.ImageProcessorUtility;
+import Utility.MetricsRegistry;
+import Utility.MetricsRegistry.Area;
+import Utility.MetricsRegistry.Histogram;
+import Utility.MetricsRegistry.Timer;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Unit test class for the MetricsRegistry class.
+ * This class contains tests to ensure image operations are timed, recorded as Flight Recorder events and exported.
+ */
+public class MetricsRegistryTest {
+
+    /**
+     * Start every test method with no metrics.
+     */
+    @BeforeEach
+    public void setUp() {
+        MetricsRegistry.reset();
+    }
+
+    /**
+     * Test that the percentiles of the histogram are within the precision of its buckets.
+     */
+    @Test
+    public void testHistogramPercentiles() {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.getPercentileNanos(0.5));
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000 * 1000L, histogram.getMaxNanos());
+        assertEquals(500500 * 1000L, histogram.getTotalNanos());
+        assertEquals(500_000, histogram.getPercentileNanos(0.5), 500_000 * 0.125);
+        assertEquals(990_000, histogram.getPercentileNanos(0.99), 990_000 * 0.125);
+        assertEquals(1_000_000, histogram.getPercentileNanos(1.0));
+    }
+
+    /**
+     * Test that every call of an operation is timed once with the pixels of its image, and that
+     * the snapshot file lists the timers and the counters.
+     */
+    @Test
+    public void testOperationsAreTimedAndExported() throws Exception {
+        BufferedImage image = new BufferedImage(40, 30, BufferedImage.TYPE_INT_RGB);
+        ImageProcessorUtility.toSepia(image);
+        ImageProcessorUtility.toSepia(image);
+        ImageProcessorUtility.rotateImageLeft(image);
+        MetricsRegistry.counter("db.errors").increment();
+
+        Timer sepia = MetricsRegistry.timer(Area.IMAGE, "toSepia");
+        assertEquals(2, sepia.getLatency().getCount());
+        assertEquals(2 * 40 * 30, sepia.getPixels().get());
+        assertEquals(1, MetricsRegistry.timer(Area.IMAGE, "rotateImageLeft").getLatency().getCount());
+        assertEquals(0, MetricsRegistry.timer(Area.IMAGE, "orient").getLatency().getCount());
+
+        File file = File.createTempFile("photodite-metrics", ".json");
+        try {
+            MetricsRegistry.writeSnapshot(file);
+            String snapshot = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            assertTrue(snapshot.contains("\"db.errors\": 1"), snapshot);
+            assertTrue(snapshot.contains("\"image.toSepia\": {\"count\": 2"), snapshot);
+            assertTrue(snapshot.contains("\"image.rotateImageLeft\""), snapshot);
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Test that an operation shows up in a Flight Recorder recording with its name and pixels.
+     */
+    @Test
+    public void testFlightRecorderEvents() throws Exception {
+        BufferedImage image = new BufferedImage(20, 10, BufferedImage.TYPE_INT_RGB);
+        File file = File.createTempFile("photodite", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("photodite.ImageOperation");
+            recording.start();
+            ImageProcessorUtility.toNegative(image);
+            recording.stop();
+            recording.dump(file.toPath());
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file.toPath()).stream()
+                    .filter(event -> event.getEventType().getName().equals("photodite.ImageOperation"))
+                    .collect(Collectors.toList());
+            assertEquals(1, events.size());
+            assertEquals("toNegative", events.get(0).getString("operation"));
+            assertEquals(200, events.get(0).getLong("pixels"));
+        } finally {
+            file.delete();
+        }
+    }
+}
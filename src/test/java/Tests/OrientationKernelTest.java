@@ -0,0 +1,121 @@
+package Tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import Utility.ImageProcessorUtility;
+import Utility.OrientationKernelUtility;
+import Utility.Orientation;
+import Utility.ParallelProcessingUtility;
+
+import java.awt.Point;
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.Random;
+
+/**
+ * Unit test class for the OrientationKernelUtility class.
+ * This class contains tests to ensure images of every layout are rotated and flipped pixel for pixel.
+ */
+public class OrientationKernelTest {
+
+    /**
+     * Restore the default settings after each test method.
+     */
+    @AfterEach
+    public void tearDown() {
+        ParallelProcessingUtility.setParallelism(Runtime.getRuntime().availableProcessors());
+        ParallelProcessingUtility.setSequentialThreshold(256 * 1024);
+    }
+
+    /**
+     * Test that every orientation of images larger than a block and of every type the application
+     * loads moves each sample where it belongs, also when the rows are split into parallel bands.
+     */
+    @Test
+    public void testEveryTypeAndOrientation() {
+        ParallelProcessingUtility.setParallelism(4);
+        ParallelProcessingUtility.setSequentialThreshold(0);
+        int width = OrientationKernelUtility.BLOCK_SIZE * 2 + 13;
+        int height = OrientationKernelUtility.BLOCK_SIZE + 7;
+        int[] types = { BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_BGR,
+                BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_BYTE_GRAY,
+                BufferedImage.TYPE_USHORT_GRAY, BufferedImage.TYPE_BYTE_INDEXED, BufferedImage.TYPE_BYTE_BINARY };
+        for (int type : types) {
+            BufferedImage image = createImage(new BufferedImage(width, height, type));
+            for (Orientation orientation : Orientation.values()) {
+                assertOriented(image, ImageProcessorUtility.orient(image, orientation), orientation);
+            }
+        }
+
+        BufferedImage sixteenBit = createImage(createRgb16(width, height));
+        BufferedImage subimage = createImage(new BufferedImage(width + 9, height + 5, BufferedImage.TYPE_3BYTE_BGR))
+                .getSubimage(5, 3, width, height);
+        for (BufferedImage image : new BufferedImage[] { sixteenBit, subimage }) {
+            for (Orientation orientation : Orientation.values()) {
+                assertOriented(image, ImageProcessorUtility.orient(image, orientation), orientation);
+            }
+        }
+    }
+
+    /**
+     * Test that the kernels refuse images they can't copy and destinations of the wrong size.
+     */
+    @Test
+    public void testUnsupportedImages() {
+        BufferedImage binary = new BufferedImage(10, 10, BufferedImage.TYPE_BYTE_BINARY);
+        BufferedImage rgb = new BufferedImage(10, 20, BufferedImage.TYPE_INT_RGB);
+        assertFalse(OrientationKernelUtility.isSupported(binary, binary));
+        assertFalse(OrientationKernelUtility.isSupported(rgb, new BufferedImage(20, 10, BufferedImage.TYPE_3BYTE_BGR)));
+        assertThrows(IllegalArgumentException.class,
+                () -> OrientationKernelUtility.orient(rgb, new BufferedImage(10, 20, BufferedImage.TYPE_INT_RGB), Orientation.ROTATE_RIGHT));
+    }
+
+    private static void assertOriented(BufferedImage source, BufferedImage oriented, Orientation orientation) {
+        int width = oriented.getWidth();
+        int height = oriented.getHeight();
+        assertEquals(orientation.transposes() ? source.getHeight() : source.getWidth(), width);
+        assertEquals(source.getType(), oriented.getType());
+        Raster in = source.getRaster();
+        Raster out = oriented.getRaster();
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int mirroredX = orientation.mirrorsX() ? width - 1 - x : x;
+                int mirroredY = orientation.mirrorsY() ? height - 1 - y : y;
+                int sourceX = orientation.transposes() ? mirroredY : mirroredX;
+                int sourceY = orientation.transposes() ? mirroredX : mirroredY;
+                for (int band = 0; band < in.getNumBands(); band++) {
+                    assertEquals(in.getSample(sourceX, sourceY, band), out.getSample(x, y, band),
+                            source.getType() + " " + orientation + " at " + x + ", " + y);
+                }
+            }
+        }
+    }
+
+    private static BufferedImage createRgb16(int width, int height) {
+        ComponentColorModel colorModel = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB), false, false,
+                Transparency.OPAQUE, DataBuffer.TYPE_USHORT);
+        WritableRaster raster = Raster.createInterleavedRaster(DataBuffer.TYPE_USHORT, width, height, 3, new Point());
+        return new BufferedImage(colorModel, raster, false, null);
+    }
+
+    private static BufferedImage createImage(BufferedImage image) {
+        Random random = new Random(42);
+        WritableRaster raster = image.getRaster();
+        int bits = image.getSampleModel().getSampleSize(0);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                for (int band = 0; band < raster.getNumBands(); band++) {
+                    raster.setSample(x, y, band, random.nextInt(1 << bits));
+                }
+            }
+        }
+        return image;
+    }
+}
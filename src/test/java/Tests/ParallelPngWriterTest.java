@@ -0,0 +1,167 @@
+package Tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import Utility.ImageSaveUtility;
+import Utility.MappedTileStore;
+import Utility.ParallelPngWriter;
+import Utility.ParallelProcessingUtility;
+import Utility.SaveOptions;
+
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Unit test class for the ParallelPngWriter class.
+ * This class contains tests to ensure the PNG files written in parallel decode to the original pixels.
+ */
+public class ParallelPngWriterTest {
+
+    /**
+     * Restore the default settings after each test method.
+     */
+    @AfterEach
+    public void tearDown() {
+        ParallelProcessingUtility.setParallelism(Runtime.getRuntime().availableProcessors());
+        ImageSaveUtility.setParallelPngPixels(1024 * 1024);
+    }
+
+    /**
+     * Test that RGB and RGBA images split into many bands are read back unchanged at every deflate level.
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        ParallelProcessingUtility.setParallelism(4);
+        for (int type : new int[] { BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB }) {
+            BufferedImage image = createImage(301, 157, type);
+            for (int level : new int[] { 0, 1, 6, 9 }) {
+                ParallelPngWriter writer = new ParallelPngWriter(level);
+                writer.setBandSize(5000);
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                writer.write(image, bytes, null);
+                assertSamePixels(image, ImageIO.read(new ByteArrayInputStream(bytes.toByteArray())));
+            }
+        }
+    }
+
+    /**
+     * Test that ImageSaveUtility writes large PNG images with the parallel writer and that
+     * the deflate level still makes a difference.
+     */
+    @Test
+    public void testSavedThroughImageSaveUtility() throws IOException {
+        ParallelProcessingUtility.setParallelism(4);
+        ImageSaveUtility.setParallelPngPixels(0);
+        BufferedImage image = createImage(640, 480, BufferedImage.TYPE_INT_RGB);
+        File file = File.createTempFile("photodite", ".png");
+        try {
+            ImageSaveUtility.writeAtomically(image, "png", file, SaveOptions.png(6), null);
+            assertSamePixels(image, ImageIO.read(file));
+        } finally {
+            file.delete();
+        }
+        long stored = ImageSaveUtility.measureEncoding(image, "png", SaveOptions.png(0)).getBytes();
+        long deflated = ImageSaveUtility.measureEncoding(image, "png", SaveOptions.png(9)).getBytes();
+        assertTrue(stored > 2 * deflated, stored + " <= 2 * " + deflated);
+    }
+
+    /**
+     * Test that an image held in a tile store is written with its rows read from the store.
+     */
+    @Test
+    public void testWrittenFromTileStore() throws IOException {
+        ParallelProcessingUtility.setParallelism(4);
+        BufferedImage image = createImage(700, 300, BufferedImage.TYPE_INT_ARGB);
+        File file = File.createTempFile("photodite", ".png");
+        try (MappedTileStore tiles = MappedTileStore.fromImage(image)) {
+            ImageSaveUtility.writeAtomically(tiles, file, SaveOptions.png(6), null);
+            assertSamePixels(image, ImageIO.read(file));
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Test that large 16-bit and gray images are not written by the parallel writer, which would
+     * reduce them to 8-bit RGB, and keep their samples.
+     */
+    @Test
+    public void testDeepImagesKeepTheirLayout() throws IOException {
+        ParallelProcessingUtility.setParallelism(4);
+        ImageSaveUtility.setParallelPngPixels(0);
+        ComponentColorModel rgb16 = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB), new int[] { 16, 16, 16 },
+                false, false, Transparency.OPAQUE, DataBuffer.TYPE_USHORT);
+        BufferedImage[] images = {
+            new BufferedImage(rgb16, rgb16.createCompatibleWritableRaster(320, 240), false, null),
+            new BufferedImage(320, 240, BufferedImage.TYPE_USHORT_GRAY),
+            new BufferedImage(320, 240, BufferedImage.TYPE_BYTE_GRAY)
+        };
+        assertTrue(ParallelPngWriter.canEncode(createImage(10, 10, BufferedImage.TYPE_INT_ARGB)));
+        assertTrue(ParallelPngWriter.canEncode(createImage(10, 10, BufferedImage.TYPE_3BYTE_BGR)));
+        File file = File.createTempFile("photodite", ".png");
+        try {
+            for (BufferedImage image : images) {
+                assertFalse(ParallelPngWriter.canEncode(image));
+                WritableRaster raster = image.getRaster();
+                int maximum = (1 << image.getColorModel().getComponentSize(0)) - 1;
+                for (int y = 0; y < 240; y++) {
+                    for (int x = 0; x < 320; x++) {
+                        for (int band = 0; band < raster.getNumBands(); band++) {
+                            raster.setSample(x, y, band, (x * 997 + y * 131 + band * 4099) % (maximum + 1));
+                        }
+                    }
+                }
+                ImageSaveUtility.writeAtomically(image, "png", file, SaveOptions.png(6), null);
+                BufferedImage written = ImageIO.read(file);
+                assertEquals(raster.getNumBands(), written.getRaster().getNumBands());
+                assertEquals(image.getColorModel().getComponentSize(0), written.getColorModel().getComponentSize(0));
+                for (int band = 0; band < raster.getNumBands(); band++) {
+                    assertArrayEquals(raster.getSamples(0, 0, 320, 240, band, (int[]) null),
+                            written.getRaster().getSamples(0, 0, 320, 240, band, (int[]) null));
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static void assertSamePixels(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        assertEquals(expected.getColorModel().hasAlpha(), actual.getColorModel().hasAlpha());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals(expected.getRGB(x, y), actual.getRGB(x, y), "pixel " + x + ", " + y);
+            }
+        }
+    }
+
+    /**
+     * Helper method that creates an image with gradients, which compress well, and a noisy corner.
+     */
+    private static BufferedImage createImage(int width, int height, int type) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        Random random = new Random(42);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int alpha = type == BufferedImage.TYPE_INT_ARGB ? (x * 255 / width) : 255;
+                int rgb = (x < 40 && y < 40) ? random.nextInt() : ((x & 0xFF) << 16) | ((y & 0xFF) << 8) | ((x + y) & 0xFF);
+                image.setRGB(x, y, (alpha << 24) | (rgb & 0xFFFFFF));
+            }
+        }
+        return image;
+    }
+}
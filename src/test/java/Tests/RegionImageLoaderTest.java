@@ -0,0 +1,162 @@
+package Tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import Utility.MappedTileStore;
+import Utility.RegionImageLoader;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Unit test class for the RegionImageLoader class.
+ * This class contains tests to ensure tiles are decoded from the right part of the file at every level
+ * and are cached within the budget.
+ */
+public class RegionImageLoaderTest {
+
+    private BufferedImage testImage;
+    private File file;
+
+    /**
+     * Set up the test environment by writing an image that spans several tiles to a PNG file.
+     * This method is executed before each test method.
+     */
+    @BeforeEach
+    public void setUp() throws IOException {
+        testImage = new BufferedImage(1300, 700, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < 1300; x++) {
+            for (int y = 0; y < 700; y++) {
+                testImage.setRGB(x, y, new Color(x % 256, y % 256, (x * y) % 256).getRGB());
+            }
+        }
+        file = File.createTempFile("photodite-region", ".png");
+        ImageIO.write(testImage, "png", file);
+    }
+
+    /**
+     * Delete the image file after each test method.
+     */
+    @AfterEach
+    public void tearDown() {
+        file.delete();
+    }
+
+    /**
+     * Test that a tile holds the pixels of its part of the image, every 2^n-th one at level n,
+     * and that it is decoded only once.
+     */
+    @Test
+    public void testTilesAtLevels() throws Exception {
+        RegionImageLoader loader = new RegionImageLoader(file);
+        assertEquals(1300, loader.getWidth());
+        assertEquals(700, loader.getHeight());
+        assertEquals(3, loader.getTilesX(0));
+        assertEquals(2, loader.getTilesY(0));
+        assertEquals(0, RegionImageLoader.levelFor(1.5));
+        assertEquals(0, RegionImageLoader.levelFor(0.6));
+        assertEquals(2, RegionImageLoader.levelFor(0.25));
+
+        assertNull(loader.getCachedTile(0, 2, 1));
+        BufferedImage corner = loader.getTile(0, 2, 1);
+        assertEquals(new Rectangle(1024, 512, 276, 188), loader.getTileBounds(0, 2, 1));
+        assertEquals(276, corner.getWidth());
+        assertEquals(188, corner.getHeight());
+        assertEquals(testImage.getRGB(1024 + 100, 512 + 50), corner.getRGB(100, 50));
+        assertSame(corner, loader.getTile(0, 2, 1));
+
+        BufferedImage subsampled = loader.getTile(1, 1, 0);
+        assertEquals(new Rectangle(1024, 0, 276, 700), loader.getTileBounds(1, 1, 0));
+        assertEquals(138, subsampled.getWidth());
+        assertEquals(350, subsampled.getHeight());
+        assertEquals(testImage.getRGB(1024 + 2 * 37, 2 * 201), subsampled.getRGB(37, 201));
+    }
+
+    /**
+     * Test that the whole image is decoded into a tile store, in several bands when the budget is small.
+     */
+    @Test
+    public void testReadTiles() throws Exception {
+        RegionImageLoader loader = new RegionImageLoader(file, 1300L * 4 * MappedTileStore.TILE_SIZE);
+        try (MappedTileStore tiles = loader.readTiles()) {
+            assertEquals(1300, tiles.getWidth());
+            assertEquals(700, tiles.getHeight());
+            assertFalse(tiles.hasAlpha());
+            BufferedImage read = tiles.toBufferedImage();
+            for (int y = 0; y < 700; y++) {
+                for (int x = 0; x < 1300; x++) {
+                    assertEquals(testImage.getRGB(x, y), read.getRGB(x, y), "pixel " + x + ", " + y);
+                }
+            }
+        }
+    }
+
+    /**
+     * Test that the tiles of a request are decoded together in the background and stay cached
+     * while they are on screen, even beyond the budget, and that the least recently used tiles
+     * are dropped when another range is requested.
+     */
+    @Test
+    public void testRequestAndBudget() throws Exception {
+        long tileBytes = (long) RegionImageLoader.TILE_SIZE * RegionImageLoader.TILE_SIZE * 3;
+        RegionImageLoader loader = new RegionImageLoader(file, 2 * tileBytes);
+        CountDownLatch loaded = new CountDownLatch(1);
+        loader.requestTiles(0, new Rectangle(0, 0, 2, 2), loaded::countDown);
+        assertTrue(loaded.await(30, TimeUnit.SECONDS));
+
+        assertTrue(loader.getCachedBytes() > 2 * tileBytes);
+        assertNotNull(loader.getCachedTile(0, 0, 0));
+        BufferedImage tile = loader.getCachedTile(0, 1, 1);
+        assertNotNull(tile);
+        assertEquals(testImage.getRGB(512 + 300, 512 + 150), tile.getRGB(300, 150));
+
+        CountDownLatch panned = new CountDownLatch(1);
+        loader.requestTiles(0, new Rectangle(2, 0, 1, 2), panned::countDown);
+        assertTrue(panned.await(30, TimeUnit.SECONDS));
+        assertTrue(loader.getCachedBytes() <= 2 * tileBytes);
+        assertNull(loader.getCachedTile(0, 0, 0));
+        assertNotNull(loader.getCachedTile(0, 2, 0));
+        assertNotNull(loader.getCachedTile(0, 2, 1));
+    }
+
+    /**
+     * Test that a range still waiting for the decoder is dropped when another range of the same level
+     * is requested, as when panning, and that only the latest one is decoded.
+     */
+    @Test
+    public void testWaitingRequestIsReplaced() throws Exception {
+        RegionImageLoader loader = new RegionImageLoader(file);
+        CountDownLatch busy = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        loader.requestTiles(1, new Rectangle(0, 0, 1, 1), () -> {
+            busy.countDown();
+            try {
+                release.await(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(busy.await(30, TimeUnit.SECONDS));
+
+        CountDownLatch passed = new CountDownLatch(1);
+        CountDownLatch latest = new CountDownLatch(1);
+        loader.requestTiles(0, new Rectangle(0, 0, 1, 1), passed::countDown);
+        loader.requestTiles(0, new Rectangle(2, 1, 1, 1), latest::countDown);
+        release.countDown();
+        assertTrue(latest.await(30, TimeUnit.SECONDS));
+
+        assertNotNull(loader.getCachedTile(0, 2, 1));
+        assertNull(loader.getCachedTile(0, 0, 0));
+        assertEquals(1, passed.getCount());
+    }
+}
@@ -0,0 +1,145 @@
+package Tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import Utility.ThumbnailCache;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Unit test class for the ThumbnailCache class.
+ * This class contains tests to ensure thumbnails are generated, stored on disk and keyed by file version.
+ */
+public class ThumbnailCacheTest {
+
+    private File cacheDirectory;
+    private File testFile;
+
+    /**
+     * Set up the test environment with an empty cache directory and an image file.
+     * This method is executed before each test method.
+     */
+    @BeforeEach
+    public void setUp() throws IOException {
+        cacheDirectory = Files.createTempDirectory("photodite-thumbnails").toFile();
+        ThumbnailCache.setDirectory(cacheDirectory);
+        BufferedImage image = new BufferedImage(400, 200, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < 400; x++) {
+            for (int y = 0; y < 200; y++) {
+                image.setRGB(x, y, new Color(x % 256, y, 120).getRGB());
+            }
+        }
+        testFile = new File(cacheDirectory, "image.png");
+        ImageIO.write(image, "png", testFile);
+    }
+
+    /**
+     * Delete the cache directory after each test method.
+     */
+    @AfterEach
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(cacheDirectory);
+    }
+
+    /**
+     * Test that a requested thumbnail fits the thumbnail size and is stored in memory and on disk.
+     */
+    @Test
+    public void testRequest() throws InterruptedException {
+        String path = testFile.getAbsolutePath();
+        assertNull(ThumbnailCache.getIfPresent(path));
+
+        CountDownLatch loaded = new CountDownLatch(1);
+        ThumbnailCache.request(path, loaded::countDown);
+        assertTrue(loaded.await(10, TimeUnit.SECONDS));
+
+        BufferedImage thumbnail = ThumbnailCache.getIfPresent(path);
+        assertNotNull(thumbnail);
+        assertEquals(ThumbnailCache.THUMBNAIL_SIZE, thumbnail.getWidth());
+        assertEquals(ThumbnailCache.THUMBNAIL_SIZE / 2, thumbnail.getHeight());
+        assertTrue(ThumbnailCache.cacheFileOf(path).isFile());
+    }
+
+    /**
+     * Test that changing the file makes its cached thumbnail outdated: the old thumbnail is
+     * shown until the next request finds the change in the background and generates a new one.
+     */
+    @Test
+    public void testKeyedByModification() throws Exception {
+        String path = testFile.getAbsolutePath();
+        CountDownLatch loaded = new CountDownLatch(1);
+        ThumbnailCache.request(path, loaded::countDown);
+        assertTrue(loaded.await(10, TimeUnit.SECONDS));
+        File cached = ThumbnailCache.cacheFileOf(path);
+        BufferedImage first = ThumbnailCache.getIfPresent(path);
+
+        assertTrue(testFile.setLastModified(testFile.lastModified() - 60000));
+        assertSame(first, ThumbnailCache.getIfPresent(path));
+        assertNotEquals(cached, ThumbnailCache.cacheFileOf(path));
+
+        CountDownLatch reloaded = new CountDownLatch(1);
+        ThumbnailCache.request(path, reloaded::countDown);
+        assertTrue(reloaded.await(10, TimeUnit.SECONDS));
+        assertNotSame(first, ThumbnailCache.getIfPresent(path));
+        assertTrue(ThumbnailCache.cacheFileOf(path).isFile());
+    }
+
+    /**
+     * Test that the disk cache is trimmed to its limit by deleting the thumbnails used least recently,
+     * and that the thumbnail of a file that is gone is deleted when it is requested again.
+     */
+    @Test
+    public void testDiskLimit() throws Exception {
+        long limit = ThumbnailCache.getDiskLimit();
+        try {
+            String[] paths = new String[4];
+            for (int i = 0; i < paths.length; i++) {
+                File file = new File(cacheDirectory, "image" + i + ".png");
+                Files.copy(testFile.toPath(), file.toPath());
+                paths[i] = file.getAbsolutePath();
+            }
+            CountDownLatch loaded = new CountDownLatch(1);
+            ThumbnailCache.request(paths[0], loaded::countDown);
+            assertTrue(loaded.await(10, TimeUnit.SECONDS));
+            File first = ThumbnailCache.cacheFileOf(paths[0]);
+            long thumbnailBytes = first.length();
+            assertTrue(first.setLastModified(System.currentTimeMillis() - 60000));
+            ThumbnailCache.setDiskLimit(thumbnailBytes * 5 / 2);
+
+            for (int i = 1; i < paths.length; i++) {
+                CountDownLatch next = new CountDownLatch(1);
+                ThumbnailCache.request(paths[i], next::countDown);
+                assertTrue(next.await(10, TimeUnit.SECONDS));
+            }
+            assertFalse(first.exists());
+            assertTrue(ThumbnailCache.cacheFileOf(paths[3]).isFile());
+            File[] thumbnails = cacheDirectory.listFiles((dir, name) -> name.length() == 40);
+            assertTrue(Arrays.stream(thumbnails).mapToLong(File::length).sum() <= thumbnailBytes * 5 / 2);
+
+            File last = ThumbnailCache.cacheFileOf(paths[3]);
+            assertTrue(new File(paths[3]).delete());
+            ThumbnailCache.request(paths[3], () -> { });
+            for (int i = 0; i < 100 && last.exists(); i++) {
+                Thread.sleep(50);
+            }
+            assertFalse(last.exists());
+            assertNull(ThumbnailCache.getIfPresent(paths[3]));
+        } finally {
+            ThumbnailCache.setDiskLimit(limit);
+        }
+    }
+}